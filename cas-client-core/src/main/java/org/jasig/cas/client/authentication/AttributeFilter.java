@@ -0,0 +1,115 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.authentication;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.jasig.cas.client.util.CommonUtils;
+
+/**
+ * Decides which released attributes a validator keeps, and how many values of each.
+ * <p>
+ * The response parsers consult the filter as they meet each attribute, so that skipped attributes and values past
+ * the cap never become Strings.  An allow-list, when present, takes precedence over the deny-list.
+ *
+ * @since 3.6.2
+ */
+public final class AttributeFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Keeps every attribute and every value. */
+    public static final AttributeFilter ACCEPT_ALL = new AttributeFilter(null, null, 0);
+
+    /** Names of the attributes to keep, or null to keep any that is not denied. */
+    private final Set<String> allowed;
+
+    private final Set<String> denied;
+
+    private final int maxValues;
+
+    /**
+     * @param allowed the attributes to keep, or null to keep every attribute that is not denied.
+     * @param denied the attributes to skip, may be null.
+     * @param maxValues the maximum number of values kept per attribute; 0 for no limit.
+     */
+    public AttributeFilter(final Collection<String> allowed, final Collection<String> denied, final int maxValues) {
+        CommonUtils.assertTrue(maxValues >= 0, "maxValues cannot be negative.");
+        this.allowed = allowed == null ? null : new HashSet<String>(allowed);
+        this.denied = denied == null || denied.isEmpty() ? Collections.<String>emptySet() : new HashSet<String>(denied);
+        this.maxValues = maxValues;
+    }
+
+    /**
+     * Creates a filter from comma-separated lists of attribute names.
+     *
+     * @param allowed the attributes to keep; blank to keep every attribute that is not denied.
+     * @param denied the attributes to skip; may be blank.
+     * @param maxValues the maximum number of values kept per attribute; 0 for no limit.
+     * @return the filter.
+     */
+    public static AttributeFilter parse(final String allowed, final String denied, final int maxValues) {
+        if (CommonUtils.isBlank(allowed) && CommonUtils.isBlank(denied) && maxValues == 0) {
+            return ACCEPT_ALL;
+        }
+        return new AttributeFilter(CommonUtils.isBlank(allowed) ? null : split(allowed), split(denied), maxValues);
+    }
+
+    private static Set<String> split(final String names) {
+        final Set<String> result = new HashSet<String>();
+        if (names != null) {
+            for (final String name : names.split(",")) {
+                if (CommonUtils.isNotBlank(name)) {
+                    result.add(name.trim());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param name the attribute name.
+     * @return whether the attribute is kept.
+     */
+    public boolean accepts(final String name) {
+        if (this.allowed != null) {
+            return this.allowed.contains(name);
+        }
+        return !this.denied.contains(name);
+    }
+
+    /**
+     * @param name the attribute name.
+     * @param count the number of values of the attribute kept so far.
+     * @return whether another value of the attribute is kept.
+     */
+    public boolean accepts(final String name, final int count) {
+        return (this.maxValues == 0 || count < this.maxValues) && accepts(name);
+    }
+
+    /**
+     * @return the maximum number of values kept per attribute; 0 for no limit.
+     */
+    public int getMaxValues() {
+        return this.maxValues;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.authentication;
+
+import org.jasig.cas.client.util.CommonUtils;
+
+/**
+ * Bounded canonicalisation pool for attribute names and values.
+ * <p>
+ * Attribute names and many values, such as group and role DNs, are the same for most principals, yet every
+ * validation response produces fresh copies of them that then live as long as the session.  Passing them through
+ * the pool makes equal strings share a single instance.
+ * <p>
+ * The pool is a fixed-size, direct-mapped table: a string either finds an equal one in its slot or takes the slot
+ * over.  Memory is therefore bounded by the capacity, lookups take no locks, and values that stop being used are
+ * eventually displaced by others.  Races between threads only cost a missed deduplication.
+ *
+ * @since 3.6.2
+ */
+public final class AttributeValuePool {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /** Longer strings are rarely shared between principals and are not pooled. */
+    public static final int MAX_POOLED_LENGTH = 512;
+
+    private static volatile AttributeValuePool defaultPool;
+
+    private final String[] table;
+
+    private final int mask;
+
+    /**
+     * @param capacity the number of slots; rounded up to a power of two.
+     */
+    public AttributeValuePool(final int capacity) {
+        CommonUtils.assertTrue(capacity > 0 && capacity <= 1 << 30, "capacity must be between 1 and 2^30.");
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.table = new String[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return the pool used by the response parsers of validators without a pool of their own, or null if their
+     * attribute values are not pooled.
+     */
+    public static AttributeValuePool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * Sets the pool used by the response parsers when they build principal attributes for a validator that has
+     * no pool of its own.  The setting is shared by every web application loaded by the same class loader; prefer
+     * {@link org.jasig.cas.client.validation.AbstractUrlBasedTicketValidator#setAttributeValuePool(AttributeValuePool)}.
+     *
+     * @param pool the pool, or null to stop pooling.
+     */
+    public static void setDefault(final AttributeValuePool pool) {
+        defaultPool = pool;
+    }
+
+    /**
+     * @param value the string to canonicalise; may be null.
+     * @return an equal string from the pool, or the value itself.
+     */
+    public String canonicalize(final String value) {
+        if (value == null || value.length() > MAX_POOLED_LENGTH) {
+            return value;
+        }
+        final int h = value.hashCode();
+        final int index = (h ^ (h >>> 16)) & this.mask;
+        final String pooled = this.table[index];
+        if (pooled != null && pooled.hashCode() == h && pooled.equals(value)) {
+            return pooled;
+        }
+        this.table[index] = value;
+        return value;
+    }
+
+    /**
+     * @param value the value to canonicalise.
+     * @return the canonical string if the value is a string, otherwise the value itself.
+     */
+    public Object canonicalizeValue(final Object value) {
+        return value instanceof String ? canonicalize((String) value) : value;
+    }
+
+    /**
+     * @return the number of slots in the pool.
+     */
+    public int getCapacity() {
+        return this.table.length;
+    }
+}
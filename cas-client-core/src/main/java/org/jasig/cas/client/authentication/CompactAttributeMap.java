@@ -0,0 +1,389 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.authentication;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import org.jasig.cas.client.util.CommonUtils;
+
+/**
+ * Immutable, array-backed map of principal attributes.
+ * <p>
+ * Principals are kept in the HTTP session for its whole life, so the attributes are stored as two parallel arrays
+ * rather than a hash table: the map costs a few words plus its names and values.  Multi-valued attributes are
+ * immutable {@link List} views over a single array.  Lookups scan the names, comparing their cached hash codes
+ * first, which for the handful of attributes a CAS server releases is as fast as a hash lookup.  Entries keep the
+ * order in which they were added.
+ *
+ * @since 3.6.2
+ */
+public final class CompactAttributeMap extends AbstractMap<String, Object> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] NO_NAMES = new String[0];
+
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private static final CompactAttributeMap EMPTY = new CompactAttributeMap(NO_NAMES, NO_VALUES);
+
+    private final String[] names;
+
+    private final Object[] values;
+
+    private CompactAttributeMap(final String[] names, final Object[] values) {
+        this.names = names;
+        this.values = values;
+    }
+
+    /**
+     * @return the empty attribute map.
+     */
+    public static CompactAttributeMap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return a builder for a new attribute map that canonicalises names and values through the
+     * {@link AttributeValuePool#getDefault() default pool}, if there is one.
+     */
+    public static Builder builder() {
+        return new Builder(AttributeValuePool.getDefault());
+    }
+
+    /**
+     * @param pool the pool to canonicalise names and string values through; null not to pool them.
+     * @return a builder for a new attribute map.
+     */
+    public static Builder builder(final AttributeValuePool pool) {
+        return new Builder(pool);
+    }
+
+    /**
+     * Copies the supplied attributes into a compact map.  Collection values are copied into immutable lists.
+     *
+     * @param attributes the attributes to copy, may be null.
+     * @return the compact map; the argument itself if it already is one.
+     */
+    public static CompactAttributeMap copyOf(final Map<String, ?> attributes) {
+        return copyOf(attributes, AttributeValuePool.getDefault());
+    }
+
+    /**
+     * Copies the supplied attributes into a compact map.  Collection values are copied into immutable lists.
+     *
+     * @param attributes the attributes to copy, may be null.
+     * @param pool the pool to canonicalise names and string values through; null not to pool them.
+     * @return the compact map; the argument itself if it already is one.
+     */
+    public static CompactAttributeMap copyOf(final Map<String, ?> attributes, final AttributeValuePool pool) {
+        if (attributes instanceof CompactAttributeMap) {
+            return (CompactAttributeMap) attributes;
+        }
+        if (attributes == null || attributes.isEmpty()) {
+            return EMPTY;
+        }
+        final Builder builder = builder(pool);
+        for (final Map.Entry<String, ?> entry : attributes.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param name the attribute to leave out.
+     * @return a map with every attribute of this one but the named one; this map if it has no such attribute.
+     */
+    public CompactAttributeMap without(final String name) {
+        final int index = indexOf(name);
+        if (index < 0) {
+            return this;
+        }
+        final int size = this.names.length - 1;
+        if (size == 0) {
+            return EMPTY;
+        }
+        final String[] newNames = new String[size];
+        final Object[] newValues = new Object[size];
+        System.arraycopy(this.names, 0, newNames, 0, index);
+        System.arraycopy(this.values, 0, newValues, 0, index);
+        System.arraycopy(this.names, index + 1, newNames, index, size - index);
+        System.arraycopy(this.values, index + 1, newValues, index, size - index);
+        return new CompactAttributeMap(newNames, newValues);
+    }
+
+    @Override
+    public int size() {
+        return this.names.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return this.names.length == 0;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : this.values[index];
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                return new Iterator<Map.Entry<String, Object>>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.index < names.length;
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        final int i = this.index++;
+                        return new AbstractMap.SimpleImmutableEntry<String, Object>(names[i], values[i]);
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return names.length;
+            }
+        };
+    }
+
+    private int indexOf(final Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        final int hash = key.hashCode();
+        for (int i = 0; i < this.names.length; i++) {
+            final String name = this.names[i];
+            if (name == key || name.hashCode() == hash && name.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collects attributes for a {@link CompactAttributeMap}.  Not thread-safe.
+     */
+    public static final class Builder {
+
+        private final List<String> names = new ArrayList<String>();
+
+        private final List<Object> values = new ArrayList<Object>();
+
+        private final AttributeValuePool pool;
+
+        private AttributeFilter filter = AttributeFilter.ACCEPT_ALL;
+
+        private Builder(final AttributeValuePool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Restricts the attributes and values this builder keeps.
+         *
+         * @param filter the filter to apply.
+         * @return this builder.
+         */
+        public Builder filter(final AttributeFilter filter) {
+            CommonUtils.assertNotNull(filter, "filter cannot be null.");
+            this.filter = filter;
+            return this;
+        }
+
+        /**
+         * Lets a parser skip a value before it builds it.
+         *
+         * @param name the attribute name.
+         * @return whether {@link #add(String, Object)} would keep another value of the attribute.
+         */
+        public boolean accepts(final String name) {
+            final int index = this.names.indexOf(name);
+            final int count;
+            if (index < 0) {
+                count = 0;
+            } else {
+                final Object existing = this.values.get(index);
+                count = existing instanceof Values ? ((Values) existing).size() : 1;
+            }
+            return this.filter.accepts(name, count);
+        }
+
+        /**
+         * Adds a value to an attribute.  The first value is kept as is; repeated values turn the attribute into a
+         * multi-valued one.  Values the filter does not accept are dropped.
+         *
+         * @param name the attribute name.
+         * @param value the value to add.
+         * @return this builder.
+         */
+        public Builder add(final String name, final Object value) {
+            if (!accepts(name)) {
+                return this;
+            }
+            final Object canonicalValue = canonicalizeValue(value);
+            final int index = this.names.indexOf(name);
+            if (index < 0) {
+                this.names.add(canonicalize(name));
+                this.values.add(canonicalValue);
+            } else {
+                final Object existing = this.values.get(index);
+                if (existing instanceof Values) {
+                    ((Values) existing).add(canonicalValue);
+                } else {
+                    final Values items = new Values();
+                    items.add(existing);
+                    items.add(canonicalValue);
+                    this.values.set(index, items);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Sets an attribute, replacing any value it has.  Collection values become immutable lists, cut down to
+         * the value cap of the filter.  Attributes the filter does not accept are dropped.
+         *
+         * @param name the attribute name.
+         * @param value the value.
+         * @return this builder.
+         */
+        public Builder put(final String name, final Object value) {
+            if (!this.filter.accepts(name)) {
+                return this;
+            }
+            final int index = this.names.indexOf(name);
+            if (index < 0) {
+                this.names.add(canonicalize(name));
+                this.values.add(canonicalizeValue(value));
+            } else {
+                this.values.set(index, canonicalizeValue(value));
+            }
+            return this;
+        }
+
+        /**
+         * @return the number of attributes collected so far.
+         */
+        public int size() {
+            return this.names.size();
+        }
+
+        /**
+         * @return the immutable map of the attributes collected so far.
+         */
+        public CompactAttributeMap build() {
+            if (this.names.isEmpty()) {
+                return EMPTY;
+            }
+            final int maxValues = this.filter.getMaxValues();
+            final Object[] compactValues = new Object[this.values.size()];
+            for (int i = 0; i < compactValues.length; i++) {
+                final Object value = this.values.get(i);
+                if (value instanceof Collection && (!(value instanceof ValueList)
+                        || maxValues > 0 && ((Collection<?>) value).size() > maxValues)) {
+                    Object[] items = ((Collection<?>) value).toArray();
+                    if (maxValues > 0 && items.length > maxValues) {
+                        items = Arrays.copyOf(items, maxValues);
+                    }
+                    if (!(value instanceof Values)) {
+                        for (int j = 0; j < items.length; j++) {
+                            items[j] = canonicalizeValue(items[j]);
+                        }
+                    }
+                    compactValues[i] = new ValueList(items);
+                } else {
+                    compactValues[i] = value;
+                }
+            }
+            return new CompactAttributeMap(this.names.toArray(NO_NAMES), compactValues);
+        }
+
+        private String canonicalize(final String value) {
+            return this.pool == null ? value : this.pool.canonicalize(value);
+        }
+
+        private Object canonicalizeValue(final Object value) {
+            return this.pool == null ? value : this.pool.canonicalizeValue(value);
+        }
+    }
+
+    /** Values accumulated by {@link Builder#add(String, Object)}, told apart from collection values put as is. */
+    private static final class Values extends ArrayList<Object> {
+        private static final long serialVersionUID = 1L;
+
+        Values() {
+            super(2);
+        }
+    }
+
+    /** Immutable list over the values of a multi-valued attribute. */
+    private static final class ValueList extends AbstractList<Object> implements RandomAccess, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] items;
+
+        ValueList(final Object[] items) {
+            this.items = items;
+        }
+
+        @Override
+        public Object get(final int index) {
+            return this.items[index];
+        }
+
+        @Override
+        public int size() {
+            return this.items.length;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.authentication;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jasig.cas.client.util.CommonUtils;
+
+/**
+ * Attribute map that keeps the attributes of a validation response encoded as UTF-8 bytes and decodes them into a
+ * {@link CompactAttributeMap} the first time they are read.
+ * <p>
+ * Applications that only look at the principal name never pay for the attribute Strings, and a principal whose
+ * attributes were never read is serialized with the session as a single byte array.  The map is immutable.
+ *
+ * @since 3.6.2
+ */
+public final class LazyAttributeMap extends AbstractMap<String, Object> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Records of (name, value) in the order they were added, each string prefixed with its length plus one. */
+    private final byte[] encoded;
+
+    /** Attribute left out when decoding, or null. */
+    private final String excluded;
+
+    /** Pool the decoded names and values are canonicalised through; lost with serialization. */
+    private final transient AttributeValuePool pool;
+
+    private transient volatile CompactAttributeMap decoded;
+
+    private LazyAttributeMap(final byte[] encoded, final String excluded, final AttributeValuePool pool) {
+        this.encoded = encoded;
+        this.excluded = excluded;
+        this.pool = pool;
+    }
+
+    /**
+     * @return an encoder for a new map.
+     */
+    public static Encoder encoder() {
+        return new Encoder();
+    }
+
+    /**
+     * @param name the attribute to leave out.
+     * @return a map with every attribute of this one but the named one.  Nothing is decoded unless another
+     * attribute has already been left out.
+     */
+    public Map<String, Object> without(final String name) {
+        if (this.excluded == null || this.excluded.equals(name)) {
+            return new LazyAttributeMap(this.encoded, name, this.pool);
+        }
+        return attributes().without(name);
+    }
+
+    /**
+     * @return whether the attributes have been decoded yet.
+     */
+    public boolean isDecoded() {
+        return this.decoded != null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        // the encoder never produces an empty map, so only an exclusion can empty it
+        return this.excluded != null && attributes().isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return attributes().size();
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return attributes().containsKey(key);
+    }
+
+    @Override
+    public Object get(final Object key) {
+        return attributes().get(key);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return attributes().entrySet();
+    }
+
+    private CompactAttributeMap attributes() {
+        CompactAttributeMap attributes = this.decoded;
+        if (attributes == null) {
+            attributes = decode();
+            this.decoded = attributes;
+        }
+        return attributes;
+    }
+
+    private CompactAttributeMap decode() {
+        final CompactAttributeMap.Builder builder = this.pool != null ? CompactAttributeMap.builder(this.pool)
+                : CompactAttributeMap.builder();
+        final int[] position = new int[1];
+        while (position[0] < this.encoded.length) {
+            final String name = readString(position);
+            final String value = readString(position);
+            if (!name.equals(this.excluded)) {
+                builder.add(name, value);
+            }
+        }
+        return builder.build();
+    }
+
+    private String readString(final int[] position) {
+        int length = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = this.encoded[position[0]++];
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        if (length == 0) {
+            return null;
+        }
+        final String value = new String(this.encoded, position[0], length - 1, UTF_8);
+        position[0] += length - 1;
+        return value;
+    }
+
+    /**
+     * Encodes attribute values as they are parsed.  Repeated names become multi-valued attributes when decoded,
+     * the same way as with {@link CompactAttributeMap.Builder#add(String, Object)}.  Not thread-safe.
+     */
+    public static final class Encoder {
+
+        private byte[] buffer = new byte[256];
+
+        private int count;
+
+        private AttributeFilter filter = AttributeFilter.ACCEPT_ALL;
+
+        private AttributeValuePool pool;
+
+        /** Names and value counts of the attributes added so far; only tracked when values are capped. */
+        private List<String> names;
+
+        private int[] valueCounts;
+
+        private Encoder() {
+            // use LazyAttributeMap.encoder()
+        }
+
+        /**
+         * Restricts the attributes and values this encoder keeps.
+         *
+         * @param filter the filter to apply.
+         * @return this encoder.
+         */
+        public Encoder filter(final AttributeFilter filter) {
+            CommonUtils.assertNotNull(filter, "filter cannot be null.");
+            this.filter = filter;
+            if (filter.getMaxValues() > 0) {
+                this.names = new ArrayList<String>();
+                this.valueCounts = new int[8];
+            }
+            return this;
+        }
+
+        /**
+         * Sets the pool the names and values are canonicalised through when the map is decoded.  Without one, or
+         * once the map has been serialized, the {@link AttributeValuePool#getDefault() default pool} is used.
+         *
+         * @param pool the pool, or null.
+         * @return this encoder.
+         */
+        public Encoder pool(final AttributeValuePool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * Lets a parser skip a value before it builds it.
+         *
+         * @param name the attribute name.
+         * @return whether {@link #add(String, CharSequence)} would keep another value of the attribute.
+         */
+        public boolean accepts(final String name) {
+            if (this.names == null) {
+                return this.filter.accepts(name);
+            }
+            final int index = this.names.indexOf(name);
+            return this.filter.accepts(name, index < 0 ? 0 : this.valueCounts[index]);
+        }
+
+        /**
+         * Adds a value, unless the filter does not accept it.
+         *
+         * @param name the attribute name.
+         * @param value the value, may be null.
+         * @return this encoder.
+         */
+        public Encoder add(final String name, final CharSequence value) {
+            if (!accepts(name)) {
+                return this;
+            }
+            if (this.names != null) {
+                countValue(name);
+            }
+            write(name);
+            write(value);
+            return this;
+        }
+
+        private void countValue(final String name) {
+            int index = this.names.indexOf(name);
+            if (index < 0) {
+                index = this.names.size();
+                this.names.add(name);
+                if (index == this.valueCounts.length) {
+                    this.valueCounts = Arrays.copyOf(this.valueCounts, index << 1);
+                }
+            }
+            this.valueCounts[index]++;
+        }
+
+        /**
+         * @return whether no attribute has been added.
+         */
+        public boolean isEmpty() {
+            return this.count == 0;
+        }
+
+        /**
+         * @return the map of the attributes added so far.
+         */
+        public Map<String, Object> build() {
+            if (this.count == 0) {
+                return CompactAttributeMap.empty();
+            }
+            return new LazyAttributeMap(Arrays.copyOf(this.buffer, this.count), null, this.pool);
+        }
+
+        private void write(final CharSequence value) {
+            if (value == null) {
+                writeLength(0);
+                return;
+            }
+            final int length = value.length();
+            int bytes = 0;
+            for (int i = 0; i < length; i++) {
+                final char c = value.charAt(i);
+                if (c < 0x80) {
+                    bytes++;
+                } else if (c < 0x800) {
+                    bytes += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 4;
+                    i++;
+                } else {
+                    bytes += 3;
+                }
+            }
+            writeLength(bytes + 1);
+            ensureCapacity(bytes);
+            for (int i = 0; i < length; i++) {
+                final char c = value.charAt(i);
+                if (c < 0x80) {
+                    this.buffer[this.count++] = (byte) c;
+                } else if (c < 0x800) {
+                    this.buffer[this.count++] = (byte) (0xC0 | c >> 6);
+                    this.buffer[this.count++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    this.buffer[this.count++] = (byte) (0xF0 | codePoint >> 18);
+                    this.buffer[this.count++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    this.buffer[this.count++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    this.buffer[this.count++] = (byte) (0x80 | codePoint & 0x3F);
+                } else {
+                    // unpaired surrogates are replaced with U+FFFD
+                    final char ch = Character.isSurrogate(c) ? '\uFFFD' : c;
+                    this.buffer[this.count++] = (byte) (0xE0 | ch >> 12);
+                    this.buffer[this.count++] = (byte) (0x80 | ch >> 6 & 0x3F);
+                    this.buffer[this.count++] = (byte) (0x80 | ch & 0x3F);
+                }
+            }
+        }
+
+        private void writeLength(final int length) {
+            ensureCapacity(5);
+            int value = length;
+            while ((value & ~0x7F) != 0) {
+                this.buffer[this.count++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            this.buffer[this.count++] = (byte) value;
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (this.count + extra > this.buffer.length) {
+                this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length << 1, this.count + extra));
+            }
+        }
+    }
+}
@@ -24,7 +24,12 @@ import org.jasig.cas.client.authentication.DefaultGatewayResolverImpl;
 import org.jasig.cas.client.authentication.GatewayResolver;
 import org.jasig.cas.client.proxy.ProxyGrantingTicketStorage;
 import org.jasig.cas.client.proxy.ProxyGrantingTicketStorageImpl;
+import org.jasig.cas.client.ssl.HttpURLConnectionFactory;
+import org.jasig.cas.client.ssl.PooledHttpURLConnectionFactory;
+import org.jasig.cas.client.util.ServerCallGuard;
+import org.jasig.cas.client.validation.CasServerPool;
 import org.jasig.cas.client.validation.Cas20ServiceTicketValidator;
+import org.jasig.cas.client.validation.SingleFlightTicketValidator;
 
 import javax.net.ssl.HostnameVerifier;
 
@@ -82,4 +87,30 @@ public interface ConfigurationKeys {
     ConfigurationKey<String> PROXY_CALLBACK_URL = new ConfigurationKey<String>("proxyCallbackUrl", null);
     ConfigurationKey<String> RELAY_STATE_PARAMETER_NAME = new ConfigurationKey<String>("relayStateParameterName", "RelayState");
     ConfigurationKey<String> LOGOUT_CALLBACK_PATH = new ConfigurationKey<String>("logoutCallbackPath", null);
+    ConfigurationKey<Integer> CONNECTION_POOL_MAX_PER_HOST = new ConfigurationKey<Integer>("connectionPoolMaxPerHost", 0);
+    ConfigurationKey<Long> CONNECTION_POOL_ACQUIRE_TIMEOUT = new ConfigurationKey<Long>("connectionPoolAcquireTimeout", PooledHttpURLConnectionFactory.DEFAULT_ACQUIRE_TIMEOUT);
+    ConfigurationKey<Long> MAX_RESPONSE_SIZE = new ConfigurationKey<Long>("maxResponseSize", 0L);
+    ConfigurationKey<Boolean> STREAM_VALIDATION_RESPONSE = new ConfigurationKey<Boolean>("streamValidationResponse", Boolean.FALSE);
+    ConfigurationKey<Boolean> ASYNC_VALIDATION = new ConfigurationKey<Boolean>("asyncValidation", Boolean.FALSE);
+    ConfigurationKey<Integer> ASYNC_VALIDATION_THREADS = new ConfigurationKey<Integer>("asyncValidationThreads", 10);
+    ConfigurationKey<Integer> ASYNC_VALIDATION_QUEUE_SIZE = new ConfigurationKey<Integer>("asyncValidationQueueSize", 100);
+    ConfigurationKey<Integer> BULKHEAD_MAX_CONCURRENT_CALLS = new ConfigurationKey<Integer>("bulkheadMaxConcurrentCalls", 0);
+    ConfigurationKey<Long> BULKHEAD_ACQUIRE_TIMEOUT = new ConfigurationKey<Long>("bulkheadAcquireTimeout", 0L);
+    ConfigurationKey<Integer> CIRCUIT_BREAKER_FAILURE_THRESHOLD = new ConfigurationKey<Integer>("circuitBreakerFailureThreshold", 0);
+    ConfigurationKey<Long> CIRCUIT_BREAKER_OPEN_DURATION = new ConfigurationKey<Long>("circuitBreakerOpenDuration", ServerCallGuard.DEFAULT_OPEN_DURATION);
+    ConfigurationKey<String> CAS_SERVER_URL_PREFIXES = new ConfigurationKey<String>("casServerUrlPrefixes", null);
+    ConfigurationKey<String> SERVER_SELECTION_POLICY = new ConfigurationKey<String>("serverSelectionPolicy", "ROUND_ROBIN");
+    ConfigurationKey<Integer> SERVER_EJECTION_FAILURE_THRESHOLD = new ConfigurationKey<Integer>("serverEjectionFailureThreshold", CasServerPool.DEFAULT_EJECTION_FAILURE_THRESHOLD);
+    ConfigurationKey<Long> SERVER_EJECTION_TIME = new ConfigurationKey<Long>("serverEjectionTime", CasServerPool.DEFAULT_EJECTION_TIME);
+    ConfigurationKey<Long> SERVER_SLOW_CALL_THRESHOLD = new ConfigurationKey<Long>("serverSlowCallThreshold", 0L);
+    ConfigurationKey<Long> REQUEST_DEADLINE = new ConfigurationKey<Long>("requestDeadline", 0L);
+    ConfigurationKey<Class<? extends HttpURLConnectionFactory>> URL_CONNECTION_FACTORY_CLASS = new ConfigurationKey<Class<? extends HttpURLConnectionFactory>>("urlConnectionFactoryClass", null);
+    ConfigurationKey<Boolean> ACCEPT_COMPRESSED_RESPONSE = new ConfigurationKey<Boolean>("acceptCompressedResponse", Boolean.FALSE);
+    ConfigurationKey<Boolean> COALESCE_TICKET_VALIDATION = new ConfigurationKey<Boolean>("coalesceTicketValidation", Boolean.FALSE);
+    ConfigurationKey<Long> COALESCED_VALIDATION_RETENTION = new ConfigurationKey<Long>("coalescedValidationRetention", SingleFlightTicketValidator.DEFAULT_RETENTION);
+    ConfigurationKey<Integer> ATTRIBUTE_POOL_SIZE = new ConfigurationKey<Integer>("attributePoolSize", 0);
+    ConfigurationKey<Boolean> LAZY_ATTRIBUTES = new ConfigurationKey<Boolean>("lazyAttributes", Boolean.FALSE);
+    ConfigurationKey<String> ALLOWED_ATTRIBUTES = new ConfigurationKey<String>("allowedAttributes", null);
+    ConfigurationKey<String> DENIED_ATTRIBUTES = new ConfigurationKey<String>("deniedAttributes", null);
+    ConfigurationKey<Integer> MAX_ATTRIBUTE_VALUES = new ConfigurationKey<Integer>("maxAttributeValues", 0);
 }
@@ -19,9 +19,10 @@
 package org.jasig.cas.client.proxy;
 
 import java.net.URL;
-import java.net.URLEncoder;
 import org.jasig.cas.client.ssl.HttpURLConnectionFactory;
 import org.jasig.cas.client.util.CommonUtils;
+import org.jasig.cas.client.util.ServerCallGuard;
+import org.jasig.cas.client.util.UrlCodec;
 import org.jasig.cas.client.util.XmlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,6 +56,9 @@ public final class Cas20ProxyRetriever implements ProxyRetriever {
     /** Url connection factory to use when communicating with the server **/
     private final HttpURLConnectionFactory urlConnectionFactory;
 
+    /** Bulkhead and circuit breaker for calls to the server; may be null. **/
+    private final ServerCallGuard serverCallGuard;
+
     @Deprecated
     public Cas20ProxyRetriever(final String casServerUrl, final String encoding) {
         this(casServerUrl, encoding, null);
@@ -69,10 +73,24 @@ public final class Cas20ProxyRetriever implements ProxyRetriever {
      */
     public Cas20ProxyRetriever(final String casServerUrl, final String encoding,
             final HttpURLConnectionFactory urlFactory) {
+        this(casServerUrl, encoding, urlFactory, null);
+    }
+
+    /**
+     * Constructor for a retriever whose calls are guarded by a bulkhead and circuit breaker.
+     *
+     * @param casServerUrl the URL to the CAS server (i.e. http://localhost/cas/)
+     * @param encoding the encoding to use.
+     * @param urlFactory url connection factory use when retrieving proxy responses from the server
+     * @param serverCallGuard guard for calls to the server, or null to leave them unguarded.
+     */
+    public Cas20ProxyRetriever(final String casServerUrl, final String encoding,
+            final HttpURLConnectionFactory urlFactory, final ServerCallGuard serverCallGuard) {
         CommonUtils.assertNotNull(casServerUrl, "casServerUrl cannot be null.");
         this.casServerUrl = casServerUrl;
         this.encoding = encoding;
         this.urlConnectionFactory = urlFactory;
+        this.serverCallGuard = serverCallGuard;
     }
 
     @Override
@@ -83,10 +101,18 @@ public final class Cas20ProxyRetriever implements ProxyRetriever {
         final URL url = constructUrl(proxyGrantingTicketId, targetService);
         final String response;
 
-        if (this.urlConnectionFactory != null) {
-            response = CommonUtils.getResponseFromServer(url, this.urlConnectionFactory, this.encoding);
+        if (this.serverCallGuard == null) {
+            response = retrieveResponseFromServer(url);
         } else {
-            response = CommonUtils.getResponseFromServer(url, this.encoding);
+            final ServerCallGuard.Permit permit = this.serverCallGuard.acquire(
+                    CommonUtils.addTrailingSlash(this.casServerUrl));
+            boolean succeeded = false;
+            try {
+                response = retrieveResponseFromServer(url);
+                succeeded = true;
+            } finally {
+                permit.release(succeeded);
+            }
         }
         final String error = XmlUtils.getTextForElement(response, "proxyFailure");
 
@@ -100,10 +126,17 @@ public final class Cas20ProxyRetriever implements ProxyRetriever {
         return ticket;
     }
 
+    private String retrieveResponseFromServer(final URL url) {
+        if (this.urlConnectionFactory != null) {
+            return CommonUtils.getResponseFromServer(url, this.urlConnectionFactory, this.encoding);
+        }
+        return CommonUtils.getResponseFromServer(url, this.encoding);
+    }
+
     private URL constructUrl(final String proxyGrantingTicketId, final String targetService) {
         try {
             return new URL(this.casServerUrl + (this.casServerUrl.endsWith("/") ? "" : "/") + "proxy" + "?pgt="
-                    + proxyGrantingTicketId + "&targetService=" + URLEncoder.encode(targetService, "UTF-8"));
+                    + proxyGrantingTicketId + "&targetService=" + UrlCodec.encode(targetService));
         } catch (final Exception e) {
             throw new RuntimeException(e);
         }
@@ -32,6 +32,9 @@ import org.slf4j.LoggerFactory;
  * An implementation of the {@link HttpURLConnectionFactory} whose responsible to configure
  * the underlying <i>https</i> connection, if needed, with a given hostname and SSL socket factory based on the
  * configuration provided. 
+ * <p>
+ * The SSL socket factory is built once and shared by all connections so that TLS sessions can be resumed.
+ * It is rebuilt when the configured key store file changes on disk.
  * 
  * @author Misagh Moayyed
  * @since 3.3
@@ -55,6 +58,17 @@ public final class HttpsURLConnectionFactory implements HttpURLConnectionFactory
      */
     private Properties sslConfiguration = new Properties();
 
+    /** Shared socket factory built from {@link #sslConfiguration}, or null to use the JVM default. */
+    private transient volatile SSLSocketFactory sslSocketFactory;
+
+    private transient volatile boolean sslSocketFactoryInitialized;
+
+    /** Last modification time of the key store file the current socket factory was built from. */
+    private transient long keyStoreLastModified;
+
+    /** Earliest time at which the key store file is checked for changes again. */
+    private transient volatile long nextKeyStoreCheck;
+
     public HttpsURLConnectionFactory() {
     }
 
@@ -65,6 +79,7 @@ public final class HttpsURLConnectionFactory implements HttpURLConnectionFactory
 
     public final void setSSLConfiguration(final Properties config) {
         this.sslConfiguration = config;
+        this.sslSocketFactoryInitialized = false;
     }
 
     /**
@@ -93,7 +108,7 @@ public final class HttpsURLConnectionFactory implements HttpURLConnectionFactory
     private HttpURLConnection configureHttpsConnectionIfNeeded(final URLConnection conn) {
         if (conn instanceof HttpsURLConnection) {
             final HttpsURLConnection httpsConnection = (HttpsURLConnection) conn;
-            final SSLSocketFactory socketFactory = this.createSSLSocketFactory();
+            final SSLSocketFactory socketFactory = this.getSSLSocketFactory();
             if (socketFactory != null) {
                 httpsConnection.setSSLSocketFactory(socketFactory);
             }
@@ -105,6 +120,43 @@ public final class HttpsURLConnectionFactory implements HttpURLConnectionFactory
         return (HttpURLConnection) conn;
     }
 
+    /**
+     * Returns the shared {@link SSLSocketFactory}, building it on first use and rebuilding it when the key store
+     * file has been modified. The key store file is checked at most once per <code>keyStoreCheckInterval</code>
+     * milliseconds (default 5000). If a rebuild fails, the previous socket factory is kept.
+     *
+     * @return the {@link SSLSocketFactory}, or null if none is configured.
+     */
+    private SSLSocketFactory getSSLSocketFactory() {
+        if (!this.sslSocketFactoryInitialized
+                || (this.sslConfiguration.getProperty("keyStorePath") != null
+                    && System.currentTimeMillis() >= this.nextKeyStoreCheck)) {
+            refreshSSLSocketFactory();
+        }
+        return this.sslSocketFactory;
+    }
+
+    private synchronized void refreshSSLSocketFactory() {
+        final String keyStorePath = this.sslConfiguration.getProperty("keyStorePath");
+        final long lastModified = keyStorePath != null ? new File(keyStorePath).lastModified() : 0L;
+        this.nextKeyStoreCheck = System.currentTimeMillis()
+                + CommonUtils.toLong(this.sslConfiguration.getProperty("keyStoreCheckInterval"), 5000L);
+
+        if (this.sslSocketFactoryInitialized && lastModified == this.keyStoreLastModified) {
+            return;
+        }
+
+        final SSLSocketFactory socketFactory = createSSLSocketFactory();
+        if (socketFactory != null || !this.sslSocketFactoryInitialized) {
+            if (this.sslSocketFactoryInitialized) {
+                LOGGER.info("Key store {} has changed; reloaded SSL socket factory", keyStorePath);
+            }
+            this.sslSocketFactory = socketFactory;
+            this.keyStoreLastModified = lastModified;
+            this.sslSocketFactoryInitialized = true;
+        }
+    }
+
     /**
      * Creates a {@link SSLSocketFactory} based on the configuration specified
      * <p>
@@ -115,7 +167,12 @@ public final class HttpsURLConnectionFactory implements HttpURLConnectionFactory
      * keyStorePath=/var/secure/location/.keystore
      * keyStorePass=changeit
      * certificatePassword=aGoodPass
+     * sessionCacheSize=1000
+     * sessionTimeout=3600
+     * keyStoreCheckInterval=5000
      * </pre>
+     * <code>sessionCacheSize</code> and <code>sessionTimeout</code> (in seconds) tune the client TLS session cache
+     * of the created {@link SSLContext}.
      * @return the {@link SSLSocketFactory}
      */
     private SSLSocketFactory createSSLSocketFactory() {
@@ -135,6 +192,7 @@ public final class HttpsURLConnectionFactory implements HttpURLConnectionFactory
                         keyManager.init(keyStore, this.sslConfiguration.getProperty("certificatePassword")
                                 .toCharArray());
                         sslContext.init(keyManager.getKeyManagers(), null, null);
+                        configureSessionContext(sslContext.getClientSessionContext());
                         return sslContext.getSocketFactory();
                     }
                 }
@@ -148,6 +206,17 @@ public final class HttpsURLConnectionFactory implements HttpURLConnectionFactory
         return null;
     }
 
+    private void configureSessionContext(final SSLSessionContext sessionContext) {
+        final int sessionCacheSize = CommonUtils.toInt(this.sslConfiguration.getProperty("sessionCacheSize"), -1);
+        if (sessionCacheSize >= 0) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+        }
+        final int sessionTimeout = CommonUtils.toInt(this.sslConfiguration.getProperty("sessionTimeout"), -1);
+        if (sessionTimeout >= 0) {
+            sessionContext.setSessionTimeout(sessionTimeout);
+        }
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) return true;
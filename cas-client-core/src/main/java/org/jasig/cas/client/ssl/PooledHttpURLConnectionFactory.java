@@ -0,0 +1,476 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.ssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.jasig.cas.client.util.CommonUtils;
+import org.jasig.cas.client.util.Deadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection factory that keeps back-channel connections to the CAS server alive between requests.
+ * <p>
+ * {@link HttpURLConnection#disconnect()} closes the underlying socket, which forces a new TCP (and TLS) handshake
+ * on every ticket validation. Connections built by this factory instead treat <code>disconnect()</code> as a
+ * release: the remainder of the response is drained and the stream closed, which hands the socket back to the
+ * JVM keep-alive cache so the next request to the same host can reuse it. Idle eviction of pooled sockets is
+ * governed by the keep-alive timeout the server advertises (or the <code>http.keepAlive</code> and
+ * <code>http.maxConnections</code> system properties).
+ * <p>
+ * The number of concurrently open connections per host is capped by {@link #setMaxConnectionsPerHost(int)}; a
+ * request that cannot obtain a connection within {@link #setAcquireTimeout(long)} milliseconds fails with an
+ * {@link IOException}.
+ *
+ * @since 3.6.2
+ */
+public final class PooledHttpURLConnectionFactory implements HttpURLConnectionFactory {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PooledHttpURLConnectionFactory.class);
+
+    /** Default maximum number of concurrent connections per host. */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+    /** Default time in milliseconds to wait for a free connection. */
+    public static final long DEFAULT_ACQUIRE_TIMEOUT = 5000L;
+
+    /** Factory that configures the underlying connections, i.e. for SSL. */
+    private final HttpURLConnectionFactory delegate;
+
+    private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+    private long acquireTimeout = DEFAULT_ACQUIRE_TIMEOUT;
+
+    /** Connection permits keyed by scheme, host and port. */
+    private transient ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<String, Semaphore>();
+
+    public PooledHttpURLConnectionFactory() {
+        this(new HttpsURLConnectionFactory());
+    }
+
+    public PooledHttpURLConnectionFactory(final HttpURLConnectionFactory delegate) {
+        CommonUtils.assertNotNull(delegate, "delegate cannot be null.");
+        this.delegate = delegate;
+    }
+
+    public PooledHttpURLConnectionFactory(final HttpURLConnectionFactory delegate, final int maxConnectionsPerHost) {
+        this(delegate);
+        setMaxConnectionsPerHost(maxConnectionsPerHost);
+    }
+
+    public void setMaxConnectionsPerHost(final int maxConnectionsPerHost) {
+        CommonUtils.assertTrue(maxConnectionsPerHost > 0, "maxConnectionsPerHost must be greater than zero.");
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public void setAcquireTimeout(final long acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return this.maxConnectionsPerHost;
+    }
+
+    public long getAcquireTimeout() {
+        return this.acquireTimeout;
+    }
+
+    public HttpURLConnectionFactory getDelegate() {
+        return this.delegate;
+    }
+
+    /**
+     * Number of connections currently checked out for the host of the given URL.
+     *
+     * @param url any URL on the host.
+     * @return the number of connections in use.
+     */
+    public int getActiveConnections(final URL url) {
+        final Semaphore semaphore = this.permits.get(hostKey(url));
+        return semaphore == null ? 0 : this.maxConnectionsPerHost - semaphore.availablePermits();
+    }
+
+    @Override
+    public HttpURLConnection buildHttpURLConnection(final URLConnection url) {
+        final HttpURLConnection conn = this.delegate.buildHttpURLConnection(url);
+        conn.setRequestProperty("Connection", "keep-alive");
+        return new PooledHttpURLConnection(conn, getPermits(conn.getURL()));
+    }
+
+    private Semaphore getPermits(final URL url) {
+        final String key = hostKey(url);
+        Semaphore semaphore = this.permits.get(key);
+        if (semaphore == null) {
+            final Semaphore created = new Semaphore(this.maxConnectionsPerHost, true);
+            semaphore = this.permits.putIfAbsent(key, created);
+            if (semaphore == null) {
+                semaphore = created;
+            }
+        }
+        return semaphore;
+    }
+
+    private static String hostKey(final URL url) {
+        final int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return url.getProtocol() + "://" + url.getHost().toLowerCase() + ":" + port;
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.permits = new ConcurrentHashMap<String, Semaphore>();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final PooledHttpURLConnectionFactory that = (PooledHttpURLConnectionFactory) o;
+
+        if (maxConnectionsPerHost != that.maxConnectionsPerHost) return false;
+        if (acquireTimeout != that.acquireTimeout) return false;
+        return delegate.equals(that.delegate);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = delegate.hashCode();
+        result = 31 * result + maxConnectionsPerHost;
+        result = 31 * result + (int) (acquireTimeout ^ (acquireTimeout >>> 32));
+        return result;
+    }
+
+    /**
+     * Connection that holds a per-host permit while in use and returns its socket to the keep-alive cache
+     * on {@link #disconnect()}.
+     */
+    private final class PooledHttpURLConnection extends HttpURLConnection {
+
+        private final HttpURLConnection conn;
+
+        private final Semaphore permits;
+
+        private boolean acquired;
+
+        private boolean released;
+
+        private boolean failed;
+
+        PooledHttpURLConnection(final HttpURLConnection conn, final Semaphore permits) {
+            super(conn.getURL());
+            this.conn = conn;
+            this.permits = permits;
+        }
+
+        private synchronized void acquire() throws IOException {
+            if (this.acquired) {
+                return;
+            }
+            if (this.released) {
+                throw new IOException("Connection to " + this.url + " has already been released.");
+            }
+            final long timeout = Deadline.capTimeout(acquireTimeout);
+            try {
+                if (!this.permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Timed out after " + timeout + " ms waiting for a connection to "
+                            + hostKey(this.url));
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a connection to " + hostKey(this.url));
+            }
+            this.acquired = true;
+        }
+
+        private boolean acquireQuietly() {
+            try {
+                acquire();
+                return true;
+            } catch (final IOException e) {
+                LOGGER.debug(e.getMessage(), e);
+                return false;
+            }
+        }
+
+        @Override
+        public void connect() throws IOException {
+            acquire();
+            try {
+                this.conn.connect();
+            } catch (final IOException e) {
+                this.failed = true;
+                throw e;
+            }
+            this.connected = true;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            acquire();
+            this.connected = true;
+            return this.conn.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            acquire();
+            this.connected = true;
+            try {
+                return this.conn.getOutputStream();
+            } catch (final IOException e) {
+                this.failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return this.conn.getErrorStream();
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            acquire();
+            this.connected = true;
+            return this.conn.getResponseCode();
+        }
+
+        @Override
+        public String getResponseMessage() throws IOException {
+            acquire();
+            this.connected = true;
+            return this.conn.getResponseMessage();
+        }
+
+        @Override
+        public String getHeaderField(final String name) {
+            return acquireQuietly() ? this.conn.getHeaderField(name) : null;
+        }
+
+        @Override
+        public String getHeaderField(final int n) {
+            return acquireQuietly() ? this.conn.getHeaderField(n) : null;
+        }
+
+        @Override
+        public String getHeaderFieldKey(final int n) {
+            return acquireQuietly() ? this.conn.getHeaderFieldKey(n) : null;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            return acquireQuietly() ? this.conn.getHeaderFields() : super.getHeaderFields();
+        }
+
+        /**
+         * Drains and closes the response so the socket can be reused, then releases the per-host permit.
+         * Falls back to closing the socket if the response cannot be consumed.
+         */
+        @Override
+        public synchronized void disconnect() {
+            if (this.released) {
+                return;
+            }
+            this.released = true;
+            try {
+                if (this.connected && !this.failed && !drain()) {
+                    this.conn.disconnect();
+                }
+            } finally {
+                if (this.acquired) {
+                    this.permits.release();
+                }
+            }
+        }
+
+        private boolean drain() {
+            InputStream in = null;
+            try {
+                try {
+                    in = this.conn.getInputStream();
+                } catch (final IOException e) {
+                    in = this.conn.getErrorStream();
+                }
+                if (in != null) {
+                    final byte[] buffer = new byte[512];
+                    while (in.read(buffer) != -1) {
+                        // discard
+                    }
+                }
+                return true;
+            } catch (final IOException e) {
+                LOGGER.debug("Unable to drain response from {}; closing connection", this.url, e);
+                return false;
+            } finally {
+                CommonUtils.closeQuietly(in);
+            }
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return this.conn.usingProxy();
+        }
+
+        @Override
+        public void setRequestMethod(final String method) throws ProtocolException {
+            this.conn.setRequestMethod(method);
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return this.conn.getRequestMethod();
+        }
+
+        @Override
+        public void setInstanceFollowRedirects(final boolean followRedirects) {
+            this.conn.setInstanceFollowRedirects(followRedirects);
+        }
+
+        @Override
+        public boolean getInstanceFollowRedirects() {
+            return this.conn.getInstanceFollowRedirects();
+        }
+
+        @Override
+        public void setChunkedStreamingMode(final int chunklen) {
+            this.conn.setChunkedStreamingMode(chunklen);
+        }
+
+        @Override
+        public void setFixedLengthStreamingMode(final int contentLength) {
+            this.conn.setFixedLengthStreamingMode(contentLength);
+        }
+
+        @Override
+        public void setFixedLengthStreamingMode(final long contentLength) {
+            this.conn.setFixedLengthStreamingMode(contentLength);
+        }
+
+        @Override
+        public void setRequestProperty(final String key, final String value) {
+            this.conn.setRequestProperty(key, value);
+        }
+
+        @Override
+        public void addRequestProperty(final String key, final String value) {
+            this.conn.addRequestProperty(key, value);
+        }
+
+        @Override
+        public String getRequestProperty(final String key) {
+            return this.conn.getRequestProperty(key);
+        }
+
+        @Override
+        public Map<String, List<String>> getRequestProperties() {
+            return this.conn.getRequestProperties();
+        }
+
+        @Override
+        public void setConnectTimeout(final int timeout) {
+            this.conn.setConnectTimeout(timeout);
+        }
+
+        @Override
+        public int getConnectTimeout() {
+            return this.conn.getConnectTimeout();
+        }
+
+        @Override
+        public void setReadTimeout(final int timeout) {
+            this.conn.setReadTimeout(timeout);
+        }
+
+        @Override
+        public int getReadTimeout() {
+            return this.conn.getReadTimeout();
+        }
+
+        @Override
+        public void setDoInput(final boolean doInput) {
+            this.conn.setDoInput(doInput);
+        }
+
+        @Override
+        public boolean getDoInput() {
+            return this.conn.getDoInput();
+        }
+
+        @Override
+        public void setDoOutput(final boolean doOutput) {
+            this.conn.setDoOutput(doOutput);
+        }
+
+        @Override
+        public boolean getDoOutput() {
+            return this.conn.getDoOutput();
+        }
+
+        @Override
+        public void setUseCaches(final boolean useCaches) {
+            this.conn.setUseCaches(useCaches);
+        }
+
+        @Override
+        public boolean getUseCaches() {
+            return this.conn.getUseCaches();
+        }
+
+        @Override
+        public void setIfModifiedSince(final long ifModifiedSince) {
+            this.conn.setIfModifiedSince(ifModifiedSince);
+        }
+
+        @Override
+        public long getIfModifiedSince() {
+            return this.conn.getIfModifiedSince();
+        }
+
+        @Override
+        public void setAllowUserInteraction(final boolean allowUserInteraction) {
+            this.conn.setAllowUserInteraction(allowUserInteraction);
+        }
+
+        @Override
+        public boolean getAllowUserInteraction() {
+            return this.conn.getAllowUserInteraction();
+        }
+
+        @Override
+        public String toString() {
+            return "Pooled" + this.conn.toString();
+        }
+    }
+}
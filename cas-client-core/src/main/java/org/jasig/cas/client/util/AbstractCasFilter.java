@@ -59,6 +59,9 @@ public abstract class AbstractCasFilter extends AbstractConfigurationFilter {
     /** The exact url of the service. */
     private String service;
 
+    /** Compiled from the settings above on first use; reset whenever one of them changes. */
+    private volatile ServiceUrlTemplate serviceUrlTemplate;
+
     protected AbstractCasFilter(final Protocol protocol) {
         this.protocol = protocol;
     }
@@ -104,9 +107,13 @@ public abstract class AbstractCasFilter extends AbstractConfigurationFilter {
     }
 
     protected final String constructServiceUrl(final HttpServletRequest request, final HttpServletResponse response) {
-        return CommonUtils.constructServiceUrl(request, response, this.service, this.serverName,
-                this.protocol.getServiceParameterName(),
-                this.protocol.getArtifactParameterName(), this.encodeServiceUrl);
+        ServiceUrlTemplate template = this.serviceUrlTemplate;
+        if (template == null) {
+            template = new ServiceUrlTemplate(this.service, this.serverName, this.protocol.getServiceParameterName(),
+                    this.protocol.getArtifactParameterName(), this.encodeServiceUrl);
+            this.serviceUrlTemplate = template;
+        }
+        return template.constructServiceUrl(request, response);
     }
 
     /**
@@ -122,14 +129,17 @@ public abstract class AbstractCasFilter extends AbstractConfigurationFilter {
         } else {
             this.serverName = serverName;
         }
+        this.serviceUrlTemplate = null;
     }
 
     public final void setService(final String service) {
         this.service = service;
+        this.serviceUrlTemplate = null;
     }
 
     public final void setEncodeServiceUrl(final boolean encodeServiceUrl) {
         this.encodeServiceUrl = encodeServiceUrl;
+        this.serviceUrlTemplate = null;
     }
 
     protected Protocol getProtocol() {
@@ -32,17 +32,22 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.net.URLEncoder;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Common utilities so that we don't need to include Commons Lang.
@@ -66,6 +71,13 @@ public final class CommonUtils {
 
     private static final HttpURLConnectionFactory DEFAULT_URL_CONNECTION_FACTORY = new HttpsURLConnectionFactory();
 
+    /**
+     * Content codings offered to the server when compressed responses are accepted.
+     */
+    private static final String ACCEPTED_CONTENT_ENCODINGS = "gzip, deflate";
+
+    private static final int DECODE_BUFFER_SIZE = 8192;
+
     private static final String SERVICE_PARAMETER_NAMES;
 
     static {
@@ -192,9 +204,20 @@ public final class CommonUtils {
      */
     public static String constructRedirectUrl(final String casServerLoginUrl, final String serviceParameterName,
                                               final String serviceUrl, final boolean renew, final boolean gateway, final String method) {
-        return casServerLoginUrl + (casServerLoginUrl.contains("?") ? "&" : "?") + serviceParameterName + "="
-            + urlEncode(serviceUrl) + (renew ? "&renew=true" : "") + (gateway ? "&gateway=true" : "")
-            + (method != null ? "&method=" + method : "");
+        final StringBuilder builder = new StringBuilder(casServerLoginUrl.length() + serviceUrl.length() + 64)
+            .append(casServerLoginUrl).append(casServerLoginUrl.contains("?") ? '&' : '?')
+            .append(serviceParameterName).append('=');
+        UrlCodec.encode(serviceUrl, builder);
+        if (renew) {
+            builder.append("&renew=true");
+        }
+        if (gateway) {
+            builder.append("&gateway=true");
+        }
+        if (method != null) {
+            builder.append("&method=").append(method);
+        }
+        return builder.toString();
     }
 
     /**
@@ -219,11 +242,7 @@ public final class CommonUtils {
      * @return the encoded value.
      */
     public static String urlEncode(final String value) {
-        try {
-            return URLEncoder.encode(value, "UTF-8");
-        } catch (final UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
-        }
+        return UrlCodec.encode(value);
     }
 
     public static void readAndRespondToProxyReceptorRequest(final HttpServletRequest request,
@@ -250,6 +269,14 @@ public final class CommonUtils {
         response.getWriter().write("<casClient:proxySuccess xmlns:casClient=\"http://www.yale.edu/tp/casClient\" />");
     }
 
+    /**
+     * Finds the server name matching the host of the request.  Filters resolve server names through a
+     * {@link ServerNameIndex}, which gives the same result without splitting and scanning the list on every request.
+     *
+     * @param request the HTTP request.
+     * @param serverName the space-separated server names.
+     * @return the matching server name.
+     */
     protected static String findMatchingServerName(final HttpServletRequest request, final String serverName) {
         final String[] serverNames = serverName.split(" ");
 
@@ -278,11 +305,6 @@ public final class CommonUtils {
         return serverNames[0];
     }
 
-    private static boolean requestIsOnStandardPort(final HttpServletRequest request) {
-        final int serverPort = request.getServerPort();
-        return serverPort == 80 || serverPort == 443;
-    }
-
     /**
      * Constructs a service url from the HttpServletRequest or from the given
      * serviceUrl. Prefers the serviceUrl provided if both a serviceUrl and a
@@ -311,6 +333,9 @@ public final class CommonUtils {
      * Constructs a service url from the HttpServletRequest or from the given
      * serviceUrl. Prefers the serviceUrl provided if both a serviceUrl and a
      * serviceName.
+     * <p>
+     * Callers that build service urls for the same configuration over and over should keep a
+     * {@link ServiceUrlTemplate} instead.
      *
      * @param request the HttpServletRequest
      * @param response the HttpServletResponse
@@ -326,53 +351,8 @@ public final class CommonUtils {
     public static String constructServiceUrl(final HttpServletRequest request, final HttpServletResponse response,
                                              final String service, final String serverNames, final String serviceParameterName,
                                              final String artifactParameterName, final boolean encode) {
-        if (CommonUtils.isNotBlank(service)) {
-            return encode ? response.encodeURL(service) : service;
-        }
-
-        final String serverName = findMatchingServerName(request, serverNames);
-        final URIBuilder originalRequestUrl = new URIBuilder(request.getRequestURL().toString(), encode);
-        originalRequestUrl.setParameters(request.getQueryString());
-
-        final URIBuilder builder;
-        if (!serverName.startsWith("https://") && !serverName.startsWith("http://")) {
-            final String scheme = request.isSecure() ? "https://" : "http://";
-            builder = new URIBuilder(scheme + serverName, encode);
-        } else {
-            builder = new URIBuilder(serverName, encode);
-        }
-
-        if (builder.getPort() == -1 && !requestIsOnStandardPort(request)) {
-            builder.setPort(request.getServerPort());
-        }
-
-        builder.setEncodedPath(builder.getEncodedPath() + request.getRequestURI());
-
-        final List<String> serviceParameterNames = Arrays.asList(serviceParameterName.split(","));
-        if (!serviceParameterNames.isEmpty() && !originalRequestUrl.getQueryParams().isEmpty()) {
-            for (final URIBuilder.BasicNameValuePair pair : originalRequestUrl.getQueryParams()) {
-                final String name = pair.getName();
-                if (!name.equals(artifactParameterName) && !serviceParameterNames.contains(name)) {
-                    if (name.contains("&") || name.contains("=")) {
-                        final URIBuilder encodedParamBuilder = new URIBuilder();
-                        encodedParamBuilder.setParameters(name);
-                        for (final URIBuilder.BasicNameValuePair pair2 : encodedParamBuilder.getQueryParams()) {
-                            final String name2 = pair2.getName();
-                            if (!name2.equals(artifactParameterName) && !serviceParameterNames.contains(name2)) {
-                                builder.addParameter(name2, pair2.getValue());
-                            }
-                        }
-                    } else {
-                        builder.addParameter(name, pair.getValue());
-                    }
-                }
-            }
-        }
-
-        final String result = builder.toString();
-        final String returnValue = encode ? response.encodeURL(result) : result;
-        LOGGER.debug("serviceUrl generated: {}", returnValue);
-        return returnValue;
+        return new ServiceUrlTemplate(service, serverNames, serviceParameterName, artifactParameterName, encode)
+            .constructServiceUrl(request, response);
     }
 
     /**
@@ -386,6 +366,11 @@ public final class CommonUtils {
      * <p>
      *     Note, that as of 3.3.0, we've made it more generic.
      * </p>
+     * <p>
+     * The query string is scanned with {@link QueryStringScanner} for a parameter with exactly that name, so that
+     * parameters that merely contain the name (i.e. <code>ticketId</code>) do not make the container parse the
+     * request parameters.
+     * </p>
      *
      * @param request the request to check.
      * @param parameter the parameter to look for.
@@ -397,8 +382,8 @@ public final class CommonUtils {
             LOGGER.debug("safeGetParameter called on a POST HttpServletRequest for Restricted Parameters.  Cannot complete check safely.  Reverting to standard behavior for this Parameter");
             return request.getParameter(parameter);
         }
-        return request.getQueryString() == null || !request.getQueryString().contains(parameter) ? null : request
-            .getParameter(parameter);
+        return QueryStringScanner.contains(request.getQueryString(), parameter) ? request.getParameter(parameter)
+            : null;
     }
 
     public static String safeGetParameter(final HttpServletRequest request, final String parameter) {
@@ -437,38 +422,226 @@ public final class CommonUtils {
      */
     public static String getResponseFromServer(final URL constructedUrl, final HttpURLConnectionFactory factory,
                                                final String encoding) {
+        return getResponseFromServer(constructedUrl, factory, encoding, 0);
+    }
+
+    /**
+     * Contacts the remote URL and returns the response.
+     *
+     * @param constructedUrl the url to contact.
+     * @param factory connection factory to prepare the URL connection instance
+     * @param encoding the encoding to use.
+     * @param maxResponseSize the maximum number of bytes to accept from the server, or 0 for no limit.
+     * @return the response.
+     */
+    public static String getResponseFromServer(final URL constructedUrl, final HttpURLConnectionFactory factory,
+                                               final String encoding, final long maxResponseSize) {
+        return getResponseFromServer(constructedUrl, factory, encoding, maxResponseSize, false);
+    }
+
+    /**
+     * Contacts the remote URL and returns the response.
+     *
+     * @param constructedUrl the url to contact.
+     * @param factory connection factory to prepare the URL connection instance
+     * @param encoding the encoding to use.
+     * @param maxResponseSize the maximum number of bytes to accept from the server, or 0 for no limit.
+     * @param acceptCompression whether to ask the server for a gzip or deflate compressed response.
+     * @return the response.
+     */
+    public static String getResponseFromServer(final URL constructedUrl, final HttpURLConnectionFactory factory,
+                                               final String encoding, final long maxResponseSize,
+                                               final boolean acceptCompression) {
+        final InputStream in = getResponseStreamFromServer(constructedUrl, factory, maxResponseSize,
+                acceptCompression);
+        try {
+            final Charset charset = CommonUtils.isEmpty(encoding) ? Charset.defaultCharset() : Charset.forName(encoding);
+            return IOUtils.readString(in, charset);
+        } catch (final IOException e) {
+            throw handleResponseException(constructedUrl, e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Contacts the remote URL and returns the response body as a stream, so that it can be handed directly to a
+     * parser. The stream MUST be closed by the caller, which releases the underlying connection.
+     *
+     * @param constructedUrl the url to contact.
+     * @param factory connection factory to prepare the URL connection instance
+     * @param maxResponseSize the maximum number of bytes to accept from the server, or 0 for no limit. Reading past
+     *                        the limit fails with an {@link IOException}.
+     * @return the response stream.
+     */
+    public static InputStream getResponseStreamFromServer(final URL constructedUrl,
+                                                          final HttpURLConnectionFactory factory,
+                                                          final long maxResponseSize) {
+        return getResponseStreamFromServer(constructedUrl, factory, maxResponseSize, false);
+    }
 
+    /**
+     * Contacts the remote URL and returns the response body as a stream, so that it can be handed directly to a
+     * parser. The stream MUST be closed by the caller, which releases the underlying connection.
+     *
+     * @param constructedUrl the url to contact.
+     * @param factory connection factory to prepare the URL connection instance
+     * @param maxResponseSize the maximum number of bytes to accept from the server, or 0 for no limit. The limit
+     *                        applies to the decompressed response.
+     * @param acceptCompression whether to ask the server for a gzip or deflate compressed response.  Compressed
+     *                          responses are decompressed as they are read.
+     * @return the response stream.
+     */
+    public static InputStream getResponseStreamFromServer(final URL constructedUrl,
+                                                          final HttpURLConnectionFactory factory,
+                                                          final long maxResponseSize,
+                                                          final boolean acceptCompression) {
         HttpURLConnection conn = null;
-        InputStreamReader in = null;
         try {
+            Deadline.check();
             conn = factory.buildHttpURLConnection(constructedUrl.openConnection());
-
-            if (CommonUtils.isEmpty(encoding)) {
-                in = new InputStreamReader(conn.getInputStream());
-            } else {
-                in = new InputStreamReader(conn.getInputStream(), encoding);
+            Deadline.applyTo(conn);
+            if (acceptCompression) {
+                acceptCompressedResponse(conn);
             }
+            return new ConnectionInputStream(conn, new LimitedInputStream(getDecodedInputStream(conn),
+                    maxResponseSize), Deadline.getCurrent());
+        } catch (final RuntimeException e) {
+            disconnectQuietly(conn);
+            throw e;
+        } catch (final IOException e) {
+            disconnectQuietly(conn);
+            throw handleResponseException(constructedUrl, e);
+        }
+    }
+
+    /**
+     * Asks the server to compress its response with gzip or deflate.  Must be called before the connection is
+     * opened; read the response with {@link #getDecodedInputStream(HttpURLConnection)}.
+     *
+     * @param conn the connection to the server.
+     */
+    public static void acceptCompressedResponse(final HttpURLConnection conn) {
+        conn.setRequestProperty("Accept-Encoding", ACCEPTED_CONTENT_ENCODINGS);
+    }
 
-            final StringBuilder builder = new StringBuilder(255);
-            int byteRead;
-            while ((byteRead = in.read()) != -1) {
-                builder.append((char) byteRead);
+    /**
+     * Gets the response body of the connection, decompressing it as it is read when the server sent it with a
+     * gzip or deflate <code>Content-Encoding</code>.
+     *
+     * @param conn the connection to the server.
+     * @return the decoded response body.
+     * @throws IOException if the response cannot be read.
+     */
+    public static InputStream getDecodedInputStream(final HttpURLConnection conn) throws IOException {
+        final InputStream in = conn.getInputStream();
+        final String contentEncoding = conn.getContentEncoding();
+        if (contentEncoding == null) {
+            return in;
+        }
+        final String coding = contentEncoding.trim().toLowerCase();
+        if ("gzip".equals(coding) || "x-gzip".equals(coding)) {
+            return new GZIPInputStream(in, DECODE_BUFFER_SIZE);
+        }
+        if ("deflate".equals(coding)) {
+            return newDeflateInputStream(in);
+        }
+        if (!"identity".equals(coding)) {
+            LOGGER.warn("Unsupported content encoding [{}] in response from [{}]", contentEncoding, conn.getURL());
+        }
+        return in;
+    }
+
+    /**
+     * "deflate" is meant to be zlib-wrapped, but some servers send raw deflate data; tell them apart from the zlib
+     * header.
+     */
+    private static InputStream newDeflateInputStream(final InputStream in) throws IOException {
+        final PushbackInputStream pushback = new PushbackInputStream(in, 2);
+        final int cmf = pushback.read();
+        final int flg = cmf == -1 ? -1 : pushback.read();
+        if (flg != -1) {
+            pushback.unread(flg);
+        }
+        if (cmf != -1) {
+            pushback.unread(cmf);
+        }
+        final boolean zlibWrapped = flg != -1 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+        final Inflater inflater = new Inflater(!zlibWrapped);
+        return new InflaterInputStream(pushback, inflater, DECODE_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
             }
+        };
+    }
 
-            return builder.toString();
-        } catch (final RuntimeException e) {
-            throw e;
-        } catch (final SSLException e) {
+    private static RuntimeException handleResponseException(final URL constructedUrl, final IOException e) {
+        if (e instanceof SSLException) {
             LOGGER.error("SSL error getting response from host: {} : Error Message: {}", constructedUrl.getHost(), e.getMessage(), e);
-            throw new RuntimeException(e);
-        } catch (final IOException e) {
+        } else {
             LOGGER.error("Error getting response from host: [{}] with path: [{}] and protocol: [{}] Error Message: {}",
                 constructedUrl.getHost(), constructedUrl.getPath(), constructedUrl.getProtocol(), e.getMessage(), e);
-            throw new RuntimeException(e);
-        } finally {
-            closeQuietly(in);
-            if (conn != null) {
-                conn.disconnect();
+        }
+        return new RuntimeException(e);
+    }
+
+    private static void disconnectQuietly(final HttpURLConnection conn) {
+        if (conn != null) {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Response stream that releases its connection when closed, and fails once the deadline of the request that
+     * opened it has passed.
+     */
+    private static final class ConnectionInputStream extends FilterInputStream {
+
+        private final HttpURLConnection conn;
+
+        private final Deadline deadline;
+
+        ConnectionInputStream(final HttpURLConnection conn, final InputStream in, final Deadline deadline) {
+            super(in);
+            this.conn = conn;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline();
+            return super.read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            checkDeadline();
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            checkDeadline();
+            return super.skip(n);
+        }
+
+        private void checkDeadline() throws SocketTimeoutException {
+            if (this.deadline != null && this.deadline.isExpired()) {
+                throw new SocketTimeoutException("Deadline exceeded while reading the response");
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                this.conn.disconnect();
             }
         }
     }
@@ -0,0 +1,131 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import java.net.SocketTimeoutException;
+import java.net.URLConnection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which all calls to the CAS server made on behalf of a request must complete.
+ * <p>
+ * The deadline of the request being processed is held in a ThreadLocal.  Back-channel connections opened while a
+ * deadline is current get the remaining budget as their connect and read timeouts, waits for bulkhead slots and
+ * pooled connections are capped by it, and calls started after it has passed fail immediately with a
+ * {@link SocketTimeoutException}.  Without a current deadline nothing changes.
+ *
+ * @since 3.6.2
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+    private final long expiresAt;
+
+    private Deadline(final long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @param budget the time budget in milliseconds.
+     * @return a deadline the given number of milliseconds from now.
+     */
+    public static Deadline after(final long budget) {
+        return new Deadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budget));
+    }
+
+    /**
+     * @return the remaining time in milliseconds, rounded up; 0 if the deadline has passed.
+     */
+    public long getRemaining() {
+        final long remaining = this.expiresAt - System.nanoTime();
+        return remaining <= 0 ? 0 : (remaining + 999999) / 1000000;
+    }
+
+    public boolean isExpired() {
+        return this.expiresAt - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @return the deadline of the current thread, or null if there is none.
+     */
+    public static Deadline getCurrent() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Sets the deadline of the current thread.
+     *
+     * @param deadline the deadline, or null to clear it.
+     */
+    public static void setCurrent(final Deadline deadline) {
+        if (deadline == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+    }
+
+    /**
+     * Caps a wait time by the current deadline.
+     *
+     * @param timeout the time in milliseconds a caller is prepared to wait.
+     * @return the smaller of the timeout and the time remaining before the current deadline.
+     */
+    public static long capTimeout(final long timeout) {
+        final Deadline deadline = CURRENT.get();
+        return deadline == null ? timeout : Math.min(timeout, deadline.getRemaining());
+    }
+
+    /**
+     * Fails if the current deadline has passed.
+     *
+     * @throws SocketTimeoutException if the current deadline has passed.
+     */
+    public static void check() throws SocketTimeoutException {
+        final Deadline deadline = CURRENT.get();
+        if (deadline != null && deadline.isExpired()) {
+            throw new SocketTimeoutException("Deadline exceeded");
+        }
+    }
+
+    /**
+     * Limits the connect and read timeouts of a connection to the time remaining before the current deadline.
+     *
+     * @param conn the connection, not yet connected.
+     * @throws SocketTimeoutException if the current deadline has passed.
+     */
+    public static void applyTo(final URLConnection conn) throws SocketTimeoutException {
+        final Deadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return;
+        }
+        final long remaining = deadline.getRemaining();
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Deadline exceeded");
+        }
+        final int timeout = (int) Math.min(remaining, Integer.MAX_VALUE);
+        if (conn.getConnectTimeout() == 0 || conn.getConnectTimeout() > timeout) {
+            conn.setConnectTimeout(timeout);
+        }
+        if (conn.getReadTimeout() == 0 || conn.getReadTimeout() > timeout) {
+            conn.setReadTimeout(timeout);
+        }
+    }
+}
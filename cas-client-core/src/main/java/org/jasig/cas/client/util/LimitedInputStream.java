@@ -0,0 +1,82 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that fails with an {@link IOException} once more than a fixed number of bytes has been read
+ * from the underlying stream. Used to bound the size of responses read from the CAS server.
+ *
+ * @since 3.6.2
+ */
+public final class LimitedInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+
+    private long count;
+
+    /**
+     * @param in the stream to read from.
+     * @param maxBytes the maximum number of bytes to read; values less than or equal to zero disable the limit.
+     */
+    public LimitedInputStream(final InputStream in, final long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b != -1) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void count(final long n) throws IOException {
+        this.count += n;
+        if (this.maxBytes > 0 && this.count > this.maxBytes) {
+            throw new IOException("Response exceeds the maximum allowed size of " + this.maxBytes + " bytes");
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+/**
+ * Finds parameters in a raw, still encoded query string without parsing it into parameters.
+ * <p>
+ * Parameters are separated by <code>&amp;</code> and a parameter name is compared in its decoded form, so
+ * <code>tick%65t=1</code> is a <code>ticket</code> parameter while <code>ticketId=1</code> and
+ * <code>myticket=1</code> are not.  Names made of ASCII characters are compared without creating any objects.
+ *
+ * @since 3.6.2
+ */
+public final class QueryStringScanner {
+
+    private QueryStringScanner() {
+        // static utility class
+    }
+
+    /**
+     * @param query the raw query string; may be null.
+     * @param name the decoded parameter name.
+     * @return whether the query string has the parameter, with or without a value.
+     */
+    public static boolean contains(final String query, final String name) {
+        return indexOfValue(query, name) >= 0;
+    }
+
+    /**
+     * Finds the raw value of the first occurrence of a parameter.
+     *
+     * @param query the raw query string; may be null.
+     * @param name the decoded parameter name.
+     * @return the raw, still encoded, value; an empty string if the parameter has no value, null if the query string
+     * does not have the parameter.
+     */
+    public static String getRawValue(final String query, final String name) {
+        final int start = indexOfValue(query, name);
+        if (start < 0) {
+            return null;
+        }
+        final int end = query.indexOf('&', start);
+        return query.substring(start, end < 0 ? query.length() : end);
+    }
+
+    /**
+     * @param query the raw query string; may be null.
+     * @param name the decoded parameter name.
+     * @return the index in the query string where the value of the first occurrence of the parameter starts, or -1
+     * if the query string does not have the parameter.
+     */
+    public static int indexOfValue(final String query, final String name) {
+        if (query == null) {
+            return -1;
+        }
+        final int length = query.length();
+        int start = 0;
+        while (start <= length) {
+            int separator = -1;
+            int end = start;
+            for (; end < length; end++) {
+                final char c = query.charAt(end);
+                if (c == '&') {
+                    break;
+                }
+                if (c == '=' && separator < 0) {
+                    separator = end;
+                }
+            }
+            final int nameEnd = separator < 0 ? end : separator;
+            if (nameEnd > start && nameEquals(query, start, nameEnd, name)) {
+                return separator < 0 ? end : separator + 1;
+            }
+            start = end + 1;
+        }
+        return -1;
+    }
+
+    /** Compares the raw name from <code>start</code> to <code>end</code> with the decoded name. */
+    private static boolean nameEquals(final String query, final int start, final int end, final String name) {
+        final int nameLength = name.length();
+        int i = start;
+        int j = 0;
+        while (i < end) {
+            if (j == nameLength) {
+                return false;
+            }
+            final char c = query.charAt(i);
+            final int decoded;
+            if (c == '%') {
+                final int value = i + 2 < end ? hexValue(query.charAt(i + 1), query.charAt(i + 2)) : -1;
+                if (value < 0) {
+                    return false;
+                }
+                if (value >= 0x80) {
+                    // multi-byte characters are rare in parameter names; decode the rest of the name instead
+                    return decodeEquals(query, i, end, name, j);
+                }
+                decoded = value;
+                i += 3;
+            } else {
+                decoded = c == '+' ? ' ' : c;
+                i++;
+            }
+            if (decoded != name.charAt(j++)) {
+                return false;
+            }
+        }
+        return j == nameLength;
+    }
+
+    private static boolean decodeEquals(final String query, final int start, final int end, final String name,
+                                        final int offset) {
+        try {
+            return name.substring(offset).equals(UrlCodec.decode(query.substring(start, end)));
+        } catch (final IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static int hexValue(final char high, final char low) {
+        final int highValue = Character.digit(high, 16);
+        final int lowValue = Character.digit(low, 16);
+        return highValue < 0 || lowValue < 0 ? -1 : highValue << 4 | lowValue;
+    }
+}
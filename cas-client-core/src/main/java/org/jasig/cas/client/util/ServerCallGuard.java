@@ -0,0 +1,355 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bulkhead and circuit breaker for calls to CAS servers, tracked separately for each server.
+ * <p>
+ * The bulkhead caps the number of in-flight calls to a server at {@link #getMaxConcurrentCalls()}; a caller that
+ * cannot get a slot within {@link #setAcquireTimeout(long)} milliseconds is refused.  The circuit breaker opens
+ * after {@link #setFailureThreshold(int)} consecutive failures and refuses every call for
+ * {@link #setOpenDuration(long)} milliseconds.  It then lets a single probe through: the circuit closes if the
+ * probe succeeds and opens again if it fails.  Refused calls fail immediately with a
+ * {@link ServerUnavailableException}.
+ * <p>
+ * Each call must obtain a {@link Permit} from {@link #acquire(String)} and report its outcome exactly once:
+ * <pre>
+ * final ServerCallGuard.Permit permit = guard.acquire(server);
+ * boolean succeeded = false;
+ * try {
+ *     // call the server
+ *     succeeded = true;
+ * } finally {
+ *     permit.release(succeeded);
+ * }
+ * </pre>
+ *
+ * @since 3.6.2
+ */
+public final class ServerCallGuard implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerCallGuard.class);
+
+    public static final long DEFAULT_OPEN_DURATION = 30000L;
+
+    /** State of the circuit for a server. */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /** Maximum concurrent calls per server; zero or less disables the bulkhead. */
+    private final int maxConcurrentCalls;
+
+    private long acquireTimeout;
+
+    /** Consecutive failures that open the circuit; zero or less disables the circuit breaker. */
+    private int failureThreshold;
+
+    private long openDuration = DEFAULT_OPEN_DURATION;
+
+    private transient ConcurrentMap<String, ServerState> servers = new ConcurrentHashMap<String, ServerState>();
+
+    private final AtomicLong permittedCalls = new AtomicLong();
+
+    private final AtomicLong failedCalls = new AtomicLong();
+
+    private final AtomicLong bulkheadRejections = new AtomicLong();
+
+    private final AtomicLong circuitRejections = new AtomicLong();
+
+    private final AtomicLong circuitOpenings = new AtomicLong();
+
+    /**
+     * Creates a guard.
+     *
+     * @param maxConcurrentCalls the maximum number of in-flight calls per server, or zero for no limit.
+     * @param failureThreshold the number of consecutive failures that open the circuit, or zero to disable the
+     *                         circuit breaker.
+     */
+    public ServerCallGuard(final int maxConcurrentCalls, final int failureThreshold) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * Obtains permission to call the given server.
+     *
+     * @param server the server to call, typically its URL prefix.
+     * @return the permit, which must be released once the call completes.
+     * @throws ServerUnavailableException if the circuit is open or the bulkhead is full.
+     */
+    public Permit acquire(final String server) {
+        final ServerState state = getServerState(server);
+        final boolean probe = state.admit();
+
+        if (state.bulkhead != null) {
+            boolean acquired = false;
+            try {
+                acquired = state.bulkhead.tryAcquire(Deadline.capTimeout(this.acquireTimeout), TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!acquired) {
+                if (probe) {
+                    state.abandonProbe();
+                }
+                this.bulkheadRejections.incrementAndGet();
+                throw new ServerUnavailableException("Too many concurrent calls to " + server);
+            }
+        }
+        this.permittedCalls.incrementAndGet();
+        return new Permit(state, probe);
+    }
+
+    /**
+     * @param server the server.
+     * @return the state of the circuit for the server.
+     */
+    public State getState(final String server) {
+        return getServerState(server).getState();
+    }
+
+    /**
+     * @param server the server.
+     * @return the number of calls to the server currently in flight, or -1 if the bulkhead is disabled.
+     */
+    public int getActiveCalls(final String server) {
+        final Semaphore bulkhead = getServerState(server).bulkhead;
+        return bulkhead == null ? -1 : this.maxConcurrentCalls - bulkhead.availablePermits();
+    }
+
+    /**
+     * @return the number of calls let through.
+     */
+    public long getPermittedCalls() {
+        return this.permittedCalls.get();
+    }
+
+    /**
+     * @return the number of permitted calls that were reported as failed.
+     */
+    public long getFailedCalls() {
+        return this.failedCalls.get();
+    }
+
+    /**
+     * @return the number of calls refused because the bulkhead was full.
+     */
+    public long getBulkheadRejections() {
+        return this.bulkheadRejections.get();
+    }
+
+    /**
+     * @return the number of calls refused because the circuit was open.
+     */
+    public long getCircuitRejections() {
+        return this.circuitRejections.get();
+    }
+
+    /**
+     * @return the number of times a circuit has opened.
+     */
+    public long getCircuitOpenings() {
+        return this.circuitOpenings.get();
+    }
+
+    public int getMaxConcurrentCalls() {
+        return this.maxConcurrentCalls;
+    }
+
+    /**
+     * Sets the time in milliseconds to wait for a free slot in a full bulkhead.  Defaults to 0, which fails
+     * immediately.
+     *
+     * @param acquireTimeout the timeout in milliseconds.
+     */
+    public void setAcquireTimeout(final long acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    public long getAcquireTimeout() {
+        return this.acquireTimeout;
+    }
+
+    public void setFailureThreshold(final int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    public int getFailureThreshold() {
+        return this.failureThreshold;
+    }
+
+    /**
+     * Sets the time in milliseconds an open circuit refuses calls before letting a probe through.
+     *
+     * @param openDuration the duration in milliseconds.
+     */
+    public void setOpenDuration(final long openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    public long getOpenDuration() {
+        return this.openDuration;
+    }
+
+    private ServerState getServerState(final String server) {
+        ServerState state = this.servers.get(server);
+        if (state == null) {
+            state = new ServerState(server);
+            final ServerState existing = this.servers.putIfAbsent(server, state);
+            if (existing != null) {
+                state = existing;
+            }
+        }
+        return state;
+    }
+
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.servers = new ConcurrentHashMap<String, ServerState>();
+    }
+
+    /**
+     * Permission to make a single call.  Release it exactly once; further releases are ignored.
+     */
+    public final class Permit {
+
+        private final ServerState state;
+
+        private final boolean probe;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(final ServerState state, final boolean probe) {
+            this.state = state;
+            this.probe = probe;
+        }
+
+        /**
+         * Releases the permit and records the outcome of the call.
+         *
+         * @param succeeded true if the server answered, false if the call failed.
+         */
+        public void release(final boolean succeeded) {
+            if (!this.released.compareAndSet(false, true)) {
+                return;
+            }
+            if (this.state.bulkhead != null) {
+                this.state.bulkhead.release();
+            }
+            if (succeeded) {
+                this.state.recordSuccess(this.probe);
+            } else {
+                failedCalls.incrementAndGet();
+                this.state.recordFailure(this.probe);
+            }
+        }
+    }
+
+    private final class ServerState {
+
+        private final String server;
+
+        private final Semaphore bulkhead = maxConcurrentCalls > 0 ? new Semaphore(maxConcurrentCalls, true) : null;
+
+        private State state = State.CLOSED;
+
+        private int consecutiveFailures;
+
+        private long openedAt;
+
+        private boolean probeInFlight;
+
+        ServerState(final String server) {
+            this.server = server;
+        }
+
+        /**
+         * @return true if the caller is the half-open probe.
+         */
+        synchronized boolean admit() {
+            if (this.state == State.OPEN) {
+                if (System.currentTimeMillis() - this.openedAt < openDuration) {
+                    circuitRejections.incrementAndGet();
+                    throw new ServerUnavailableException("Circuit is open for " + this.server);
+                }
+                LOGGER.info("Circuit for {} is half-open; probing", this.server);
+                this.state = State.HALF_OPEN;
+            }
+            if (this.state == State.HALF_OPEN) {
+                if (this.probeInFlight) {
+                    circuitRejections.incrementAndGet();
+                    throw new ServerUnavailableException("Circuit is half-open for " + this.server);
+                }
+                this.probeInFlight = true;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized void abandonProbe() {
+            this.probeInFlight = false;
+        }
+
+        synchronized void recordSuccess(final boolean probe) {
+            this.consecutiveFailures = 0;
+            if (probe) {
+                this.probeInFlight = false;
+                this.state = State.CLOSED;
+                LOGGER.info("Circuit for {} closed after a successful probe", this.server);
+            }
+        }
+
+        synchronized void recordFailure(final boolean probe) {
+            this.consecutiveFailures++;
+            if (probe) {
+                this.probeInFlight = false;
+                open();
+            } else if (this.state == State.CLOSED && failureThreshold > 0
+                    && this.consecutiveFailures >= failureThreshold) {
+                open();
+            }
+        }
+
+        private void open() {
+            this.state = State.OPEN;
+            this.openedAt = System.currentTimeMillis();
+            circuitOpenings.incrementAndGet();
+            LOGGER.warn("Circuit for {} opened after {} consecutive failures", this.server, this.consecutiveFailures);
+        }
+
+        synchronized State getState() {
+            return this.state;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Resolves the server name to use for a request from a space-separated list of server names, with the same result
+ * as {@link CommonUtils#findMatchingServerName(HttpServletRequest, String)}: the first server name that contains the
+ * <code>X-Forwarded-Host</code> header, or else the <code>Host</code> header, otherwise the first server name.
+ * <p>
+ * The list is split and indexed once.  The host, host and port, and parent domains of every server name are kept in
+ * a hash index, so the usual request resolves with a single lookup.  Other host headers fall back to one substring
+ * search over all server names.
+ * <p>
+ * Instances are safe for concurrent use.
+ *
+ * @since 3.6.2
+ */
+public final class ServerNameIndex {
+
+    /** Separates the server names in {@link #joined}; never part of a configured server name. */
+    private static final char SEPARATOR = '\0';
+
+    private final String serverNames;
+
+    private final String[] names;
+
+    /** The lower-cased server names, separated by {@link #SEPARATOR}. */
+    private final String joined;
+
+    /** Offset of each server name in {@link #joined}. */
+    private final int[] offsets;
+
+    private final Map<String, Slot> index = new HashMap<String, Slot>();
+
+    /**
+     * @param serverNames the space-separated server names.
+     */
+    public ServerNameIndex(final String serverNames) {
+        CommonUtils.assertNotNull(serverNames, "serverNames cannot be null.");
+        this.serverNames = serverNames;
+        this.names = serverNames.split(" ");
+        this.offsets = new int[this.names.length];
+
+        final StringBuilder builder = new StringBuilder(serverNames.length() + this.names.length);
+        for (int i = 0; i < this.names.length; i++) {
+            final String lowerCaseName = this.names[i].toLowerCase();
+            if (i > 0) {
+                builder.append(SEPARATOR);
+            }
+            this.offsets[i] = builder.length();
+            builder.append(lowerCaseName);
+            addKeys(lowerCaseName);
+        }
+        this.joined = builder.toString();
+    }
+
+    /**
+     * Indexes the server name itself, its host and port, its host, and each parent domain of its host.
+     */
+    private void addKeys(final String lowerCaseName) {
+        addKey(lowerCaseName);
+
+        final int schemeEnd = lowerCaseName.indexOf("://");
+        final int authorityStart = schemeEnd >= 0 ? schemeEnd + 3 : 0;
+        int authorityEnd = lowerCaseName.indexOf('/', authorityStart);
+        if (authorityEnd < 0) {
+            authorityEnd = lowerCaseName.length();
+        }
+        final String authority = lowerCaseName.substring(authorityStart, authorityEnd);
+        addKey(authority);
+
+        final int portStart = authority.lastIndexOf(':');
+        final String host = portStart > authority.lastIndexOf(']') ? authority.substring(0, portStart) : authority;
+        addKey(host);
+
+        int dot = host.indexOf('.');
+        while (dot >= 0 && host.indexOf('.', dot + 1) >= 0) {
+            addKey(host.substring(dot + 1));
+            dot = host.indexOf('.', dot + 1);
+        }
+    }
+
+    private void addKey(final String key) {
+        if (!key.isEmpty() && !this.index.containsKey(key)) {
+            this.index.put(key, new Slot());
+        }
+    }
+
+    /**
+     * Finds the server name to use for the request.
+     *
+     * @param request the HTTP request.
+     * @return the matching server name; the full list of server names if it holds a single name or the request has
+     * no host header.
+     */
+    public String findMatchingServerName(final HttpServletRequest request) {
+        final int i = indexOf(request);
+        return i >= 0 ? this.names[i] : this.serverNames;
+    }
+
+    /**
+     * @return the index of the server name to use for the request, or -1 if the full list of server names is to be
+     * used as is.
+     */
+    int indexOf(final HttpServletRequest request) {
+        if (this.names.length <= 1) {
+            return -1;
+        }
+
+        final String xHost = request.getHeader("X-Forwarded-Host");
+        final String comparisonHost = (xHost != null) ? xHost : request.getHeader("Host");
+        if (comparisonHost == null) {
+            return -1;
+        }
+
+        final Slot slot = this.index.get(comparisonHost);
+        if (slot == null) {
+            return search(comparisonHost);
+        }
+        int match = slot.match;
+        if (match < 0) {
+            match = search(comparisonHost);
+            slot.match = match;
+        }
+        return match;
+    }
+
+    /** Index of the first server name containing the host, or zero if none does. */
+    private int search(final String host) {
+        if (host.indexOf(SEPARATOR) >= 0) {
+            for (int i = 0; i < this.names.length; i++) {
+                if (this.names[i].toLowerCase().contains(host)) {
+                    return i;
+                }
+            }
+            return 0;
+        }
+        final int position = this.joined.indexOf(host);
+        if (position < 0) {
+            return 0;
+        }
+        final int i = Arrays.binarySearch(this.offsets, position);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    /** The resolved server name for an indexed host; resolved on first use. */
+    private static final class Slot {
+
+        private volatile int match = -1;
+    }
+}
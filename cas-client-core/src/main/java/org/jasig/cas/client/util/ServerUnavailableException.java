@@ -0,0 +1,34 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+/**
+ * Thrown when a call to the CAS server is refused locally, either because the circuit for the server is open or
+ * because the maximum number of concurrent calls to it has been reached.
+ *
+ * @since 3.6.2
+ */
+public final class ServerUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ServerUnavailableException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Precompiled form of {@link CommonUtils#constructServiceUrl(HttpServletRequest, HttpServletResponse, String, String,
+ * String, String, boolean)} for a fixed filter configuration.
+ * <p>
+ * The server names and service parameter names are split once, server names are resolved through a
+ * {@link ServerNameIndex}, the scheme, host and port prefix is cached per server name, and the artifact and service
+ * parameters are stripped in a single scan of the raw query string.
+ * Parameters that need neither decoding nor encoding are copied straight from the query string.  The service url
+ * built is identical to the one built by {@link URIBuilder}.
+ * <p>
+ * Instances are immutable apart from their prefix caches and are safe for concurrent use.
+ *
+ * @since 3.6.2
+ */
+public final class ServiceUrlTemplate {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceUrlTemplate.class);
+
+    private final String service;
+
+    private final ServerNameIndex serverNameIndex;
+
+    /** One per server name, followed by one for the full list of server names. */
+    private final Server[] servers;
+
+    private final String artifactParameterName;
+
+    private final String[] serviceParameterNames;
+
+    private final boolean encode;
+
+    /**
+     * @param service the configured service url; if not blank it is always used as is.
+     * @param serverNames the space-separated server names to build the service url from.
+     * @param serviceParameterName the comma-separated service parameter names to remove (i.e. service)
+     * @param artifactParameterName the artifact parameter name to remove (i.e. ticket)
+     * @param encode whether to encode the url or not (i.e. Jsession).
+     */
+    public ServiceUrlTemplate(final String service, final String serverNames, final String serviceParameterName,
+                              final String artifactParameterName, final boolean encode) {
+        this.service = CommonUtils.isNotBlank(service) ? service : null;
+        if (serverNames != null) {
+            this.serverNameIndex = new ServerNameIndex(serverNames);
+            final String[] names = serverNames.split(" ");
+            this.servers = new Server[names.length + 1];
+            for (int i = 0; i < names.length; i++) {
+                this.servers[i] = new Server(names[i]);
+            }
+            this.servers[names.length] = new Server(serverNames);
+        } else {
+            this.serverNameIndex = null;
+            this.servers = null;
+        }
+        this.serviceParameterNames = serviceParameterName != null ? serviceParameterName.split(",") : new String[0];
+        this.artifactParameterName = artifactParameterName;
+        this.encode = encode;
+    }
+
+    /**
+     * Constructs the service url for the given request.
+     *
+     * @param request the HttpServletRequest
+     * @param response the HttpServletResponse
+     * @return the service url to use.
+     */
+    public String constructServiceUrl(final HttpServletRequest request, final HttpServletResponse response) {
+        if (this.service != null) {
+            return this.encode ? response.encodeURL(this.service) : this.service;
+        }
+
+        final Prefix prefix = findMatchingServer(request).getPrefix(request);
+        final StringBuilder builder = new StringBuilder(128);
+        builder.append(prefix.authority);
+        appendPath(builder, prefix.path, request.getRequestURI());
+
+        final int queryStart = builder.length();
+        builder.append('?').append(prefix.query);
+        final int count = appendQuery(builder, request.getQueryString(), prefix.parameterCount, false);
+        if (count == prefix.parameterCount) {
+            builder.setLength(queryStart);
+            if (prefix.rawQuery != null) {
+                builder.append('?').append(prefix.rawQuery);
+            }
+        }
+        builder.append(prefix.fragment);
+
+        final String result = builder.toString();
+        final String returnValue = this.encode ? response.encodeURL(result) : result;
+        LOGGER.debug("serviceUrl generated: {}", returnValue);
+        return returnValue;
+    }
+
+    private Server findMatchingServer(final HttpServletRequest request) {
+        final int i = this.serverNameIndex.indexOf(request);
+        return this.servers[i >= 0 ? i : this.servers.length - 1];
+    }
+
+    /** Appends the path, collapsing leading slashes the way {@link URIBuilder} does. */
+    private static void appendPath(final StringBuilder builder, final String basePath, final String requestUri) {
+        final String path = basePath.isEmpty() ? String.valueOf(requestUri) : basePath + requestUri;
+        int n = 0;
+        while (n < path.length() && path.charAt(n) == '/') {
+            n++;
+        }
+        builder.append(path, n > 1 ? n - 1 : 0, path.length());
+    }
+
+    /**
+     * Appends the parameters of the query string that are not artifact or service parameters, splitting and
+     * decoding them the way {@link URIBuilder} does.  A decoded parameter name that itself contains a query string
+     * is expanded into its parameters once.
+     *
+     * @return the number of parameters in the query built so far.
+     */
+    private int appendQuery(final StringBuilder builder, final String query, final int count, final boolean nested) {
+        if (query == null) {
+            return count;
+        }
+        int written = count;
+        int pendingEmpty = 0;
+        int start = 0;
+        final int length = query.length();
+        while (start < length) {
+            int end = query.indexOf('&', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end == start) {
+                // String.split drops trailing empty parameters, so only write these once a non-empty one follows
+                pendingEmpty++;
+            } else {
+                for (; pendingEmpty > 0; pendingEmpty--) {
+                    if (!isExcluded("", 0, 0)) {
+                        written = appendParameter(builder, written, "", "");
+                    }
+                }
+                written = appendParameter(builder, written, query, start, end, nested);
+            }
+            start = end + 1;
+        }
+        return written;
+    }
+
+    private int appendParameter(final StringBuilder builder, final int count, final String query, final int start,
+                                final int end, final boolean nested) {
+        int separator = query.indexOf('=', start);
+        if (separator < 0 || separator > end) {
+            separator = end;
+        }
+
+        if (!UrlCodec.needsDecoding(query, start, end)) {
+            if (isExcluded(query, start, separator)) {
+                return count;
+            }
+            appendSeparator(builder, count);
+            appendEncoded(builder, query, start, separator);
+            builder.append('=');
+            if (separator < end) {
+                appendEncoded(builder, query, separator + 1, end);
+            }
+            return count + 1;
+        }
+
+        final String name = UrlCodec.decode(query.substring(start, separator));
+        final String value = separator < end ? UrlCodec.decode(query.substring(separator + 1, end)) : "";
+        if (isExcluded(name, 0, name.length())) {
+            return count;
+        }
+        if (!nested && (name.indexOf('&') >= 0 || name.indexOf('=') >= 0)) {
+            return appendQuery(builder, name, count, true);
+        }
+        return appendParameter(builder, count, name, value);
+    }
+
+    private int appendParameter(final StringBuilder builder, final int count, final String name, final String value) {
+        appendSeparator(builder, count);
+        appendEncoded(builder, name, 0, name.length());
+        builder.append('=');
+        appendEncoded(builder, value, 0, value.length());
+        return count + 1;
+    }
+
+    private static void appendSeparator(final StringBuilder builder, final int count) {
+        if (count > 0) {
+            builder.append('&');
+        }
+    }
+
+    private void appendEncoded(final StringBuilder builder, final String value, final int start, final int end) {
+        if (this.encode) {
+            UrlCodec.encode(value, start, end, builder);
+        } else {
+            builder.append(value, start, end);
+        }
+    }
+
+    private boolean isExcluded(final String value, final int start, final int end) {
+        final int length = end - start;
+        if (this.artifactParameterName != null && this.artifactParameterName.length() == length
+                && value.regionMatches(start, this.artifactParameterName, 0, length)) {
+            return true;
+        }
+        for (final String name : this.serviceParameterNames) {
+            if (name.length() == length && value.regionMatches(start, name, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** A configured server name and the prefix last built from it. */
+    private final class Server {
+
+        private final String name;
+
+        private final boolean hasScheme;
+
+        private volatile Prefix prefix;
+
+        Server(final String name) {
+            this.name = name;
+            this.hasScheme = name.startsWith("https://") || name.startsWith("http://");
+        }
+
+        Prefix getPrefix(final HttpServletRequest request) {
+            final int serverPort = request.getServerPort();
+            final int port = serverPort == 80 || serverPort == 443 ? -1 : serverPort;
+            final boolean secure = !this.hasScheme && request.isSecure();
+            final Prefix current = this.prefix;
+            if (current != null && current.port == port && current.secure == secure) {
+                return current;
+            }
+            final Prefix built = new Prefix(this.hasScheme ? this.name
+                    : (secure ? "https://" : "http://") + this.name, port, secure);
+            this.prefix = built;
+            return built;
+        }
+    }
+
+    /** Everything in a service url that depends only on the server name, the scheme and the port. */
+    private final class Prefix {
+
+        private final int port;
+
+        private final boolean secure;
+
+        /** Scheme, user info, host and port. */
+        private final String authority;
+
+        private final String path;
+
+        /** The encoded parameters of the server name, followed by the request's. */
+        private final String query;
+
+        private final int parameterCount;
+
+        /** The query of the server name, used as is when the request adds no parameters. */
+        private final String rawQuery;
+
+        private final String fragment;
+
+        Prefix(final String url, final int port, final boolean secure) {
+            this.port = port;
+            this.secure = secure;
+
+            final int hash = url.indexOf('#');
+            final String beforeFragment = hash >= 0 ? url.substring(0, hash) : url;
+            this.fragment = hash >= 0 ? url.substring(hash) : "";
+            final int question = beforeFragment.indexOf('?');
+            this.rawQuery = question >= 0 ? beforeFragment.substring(question + 1) : null;
+
+            final URIBuilder builder = new URIBuilder(question >= 0
+                    ? beforeFragment.substring(0, question) : beforeFragment, ServiceUrlTemplate.this.encode);
+            if (builder.getPort() == -1 && port != -1) {
+                builder.setPort(port);
+            }
+            this.path = builder.getEncodedPath();
+            builder.setEncodedPath("");
+            this.authority = builder.toString();
+
+            final StringBuilder query = new StringBuilder();
+            int count = 0;
+            if (this.rawQuery != null) {
+                final List<URIBuilder.BasicNameValuePair> pairs =
+                        new URIBuilder(url, ServiceUrlTemplate.this.encode).getQueryParams();
+                for (final URIBuilder.BasicNameValuePair pair : pairs) {
+                    count = appendParameter(query, count, pair.getName(), pair.getValue());
+                }
+            }
+            this.query = query.toString();
+            this.parameterCount = count;
+        }
+    }
+}
@@ -18,15 +18,9 @@
  */
 package org.jasig.cas.client.util;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URLDecoder;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -39,7 +33,6 @@ import java.util.regex.Pattern;
  * @since 3.4
  */
 public final class URIBuilder {
-    private static final Logger LOGGER = LoggerFactory.getLogger(URIBuilder.class);
     private static final Pattern IPV6_STD_PATTERN = Pattern.compile("^[0-9a-fA-F]{1,4}(:[0-9a-fA-F]{1,4}){7}$");
 
     private String scheme;
@@ -108,37 +101,26 @@ public final class URIBuilder {
     }
 
     private List<BasicNameValuePair> parseQuery(final String query) {
+        if (query != null && !query.isEmpty()) {
+            final List<BasicNameValuePair> list = new ArrayList<BasicNameValuePair>();
+            final String[] parametersArray = query.split("&");
 
-        try {
-            final Charset utf8 = Charset.forName("UTF-8");
-            if (query != null && !query.isEmpty()) {
-                final List<BasicNameValuePair> list = new ArrayList<BasicNameValuePair>();
-                final String[] parametersArray = query.split("&");
-
-                for (final String parameter : parametersArray) {
-                    final int firstIndex = parameter.indexOf("=");
-                    if (firstIndex != -1) {
-                        final String paramName = parameter.substring(0, firstIndex);
-                        final String decodedParamName = URLDecoder.decode(paramName, utf8.name());
-
-                        final String paramVal = parameter.substring(firstIndex + 1);
-                        final String decodedParamVal = URLDecoder.decode(paramVal, utf8.name());
-
-                        list.add(new BasicNameValuePair(decodedParamName, decodedParamVal));
-                    } else {
-                        // Either we do not have a query parameter, or it might be encoded; take it verbaitm
-                        final String[] parameterCombo = parameter.split("=");
-                        if (parameterCombo.length >= 1) {
-                            final String key = URLDecoder.decode(parameterCombo[0], utf8.name());
-                            final String val = parameterCombo.length == 2 ? URLDecoder.decode(parameterCombo[1], utf8.name()) : "";
-                            list.add(new BasicNameValuePair(key, val));
-                        }
-                    }
+            for (final String parameter : parametersArray) {
+                final int firstIndex = parameter.indexOf("=");
+                if (firstIndex != -1) {
+                    final String paramName = parameter.substring(0, firstIndex);
+                    final String decodedParamName = UrlCodec.decode(paramName);
+
+                    final String paramVal = parameter.substring(firstIndex + 1);
+                    final String decodedParamVal = UrlCodec.decode(paramVal);
+
+                    list.add(new BasicNameValuePair(decodedParamName, decodedParamVal));
+                } else {
+                    // Either we do not have a query parameter, or it might be encoded; take it verbaitm
+                    list.add(new BasicNameValuePair(UrlCodec.decode(parameter), ""));
                 }
-                return list;
             }
-        } catch (final UnsupportedEncodingException e) {
-            LOGGER.error(e.getMessage(), e);
+            return list;
         }
         return new ArrayList<BasicNameValuePair>();
     }
@@ -223,33 +205,38 @@ public final class URIBuilder {
     }
 
     private String encodeUserInfo(final String userInfo) {
-        return this.encode ? CommonUtils.urlEncode(userInfo) : userInfo;
+        return this.encode ? UrlCodec.encode(userInfo) : userInfo;
     }
 
     private String encodePath(final String path) {
-        return this.encode ? CommonUtils.urlEncode(path) : path;
+        return this.encode ? UrlCodec.encode(path) : path;
     }
 
     private String encodeUrlForm(final List<BasicNameValuePair> params) {
         final StringBuilder result = new StringBuilder();
         for (final BasicNameValuePair parameter : params) {
-            final String encodedName = this.encode ? CommonUtils.urlEncode(parameter.getName()) : parameter.getName();
-            final String encodedValue = this.encode ? CommonUtils.urlEncode(parameter.getValue()) : parameter.getValue();
-
             if (result.length() > 0) {
                 result.append("&");
             }
-            result.append(encodedName);
-            if (encodedValue != null) {
+            appendEncoded(result, parameter.getName());
+            if (parameter.getValue() != null) {
                 result.append("=");
-                result.append(encodedValue);
+                appendEncoded(result, parameter.getValue());
             }
         }
         return result.toString();
     }
 
+    private void appendEncoded(final StringBuilder builder, final String value) {
+        if (this.encode) {
+            UrlCodec.encode(value, builder);
+        } else {
+            builder.append(value);
+        }
+    }
+
     private String encodeUric(final String fragment) {
-        return this.encode ? CommonUtils.urlEncode(fragment) : fragment;
+        return this.encode ? UrlCodec.encode(fragment) : fragment;
     }
 
     public URIBuilder setEncode(final boolean encode) {
@@ -0,0 +1,271 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import java.nio.charset.Charset;
+
+/**
+ * Table-driven UTF-8 encoder and decoder for the <code>application/x-www-form-urlencoded</code> format, producing
+ * the same results as {@link java.net.URLEncoder} and {@link java.net.URLDecoder} with UTF-8.
+ * <p>
+ * Values that need no escaping are returned as the same instance, and the range methods append to a caller-supplied
+ * {@link StringBuilder}, so that url builders do not create intermediate strings.
+ *
+ * @since 3.6.2
+ */
+public final class UrlCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /** ASCII characters that are written as is; everything else but the space is percent-encoded. */
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    /** Value of each ASCII hexadecimal digit; -1 for other characters. */
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+            UNRESERVED[Character.toUpperCase(c)] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['.'] = true;
+        UNRESERVED['-'] = true;
+        UNRESERVED['*'] = true;
+        UNRESERVED['_'] = true;
+
+        for (int i = 0; i < HEX_VALUES.length; i++) {
+            HEX_VALUES[i] = (byte) Character.digit((char) i, 16);
+        }
+    }
+
+    private UrlCodec() {
+        // static utility class
+    }
+
+    /**
+     * Encodes a value.
+     *
+     * @param value the value to encode.
+     * @return the encoded value; the value itself if nothing needs escaping.
+     */
+    public static String encode(final String value) {
+        final int length = value.length();
+        final int first = firstToEncode(value, 0, length);
+        if (first == length) {
+            return value;
+        }
+        final StringBuilder builder = new StringBuilder(length + 16);
+        builder.append(value, 0, first);
+        return appendEncoded(value, first, length, builder).toString();
+    }
+
+    /**
+     * Appends the encoded value to the builder.
+     *
+     * @param value the value to encode.
+     * @param builder the builder to append to.
+     * @return the builder.
+     */
+    public static StringBuilder encode(final CharSequence value, final StringBuilder builder) {
+        return encode(value, 0, value.length(), builder);
+    }
+
+    /**
+     * Appends the encoded characters from <code>start</code> (inclusive) to <code>end</code> (exclusive) of the value
+     * to the builder.
+     *
+     * @param value the value to encode.
+     * @param start index of the first character to encode.
+     * @param end index after the last character to encode.
+     * @param builder the builder to append to.
+     * @return the builder.
+     */
+    public static StringBuilder encode(final CharSequence value, final int start, final int end,
+                                       final StringBuilder builder) {
+        final int first = firstToEncode(value, start, end);
+        builder.append(value, start, first);
+        return first == end ? builder : appendEncoded(value, first, end, builder);
+    }
+
+    /**
+     * @return whether encoding the characters in the range changes them.
+     */
+    public static boolean needsEncoding(final CharSequence value, final int start, final int end) {
+        return firstToEncode(value, start, end) != end;
+    }
+
+    private static int firstToEncode(final CharSequence value, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c >= 128 || !UNRESERVED[c]) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static StringBuilder appendEncoded(final CharSequence value, final int start, final int end,
+                                               final StringBuilder builder) {
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c < 128) {
+                if (UNRESERVED[c]) {
+                    builder.append(c);
+                } else if (c == ' ') {
+                    builder.append('+');
+                } else {
+                    appendByte(builder, c);
+                }
+            } else if (c < 0x800) {
+                appendByte(builder, 0xC0 | (c >> 6));
+                appendByte(builder, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                appendByte(builder, 0xF0 | (codePoint >> 18));
+                appendByte(builder, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendByte(builder, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendByte(builder, 0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates cannot be encoded in UTF-8 and are replaced, as String.getBytes does
+                appendByte(builder, '?');
+            } else {
+                appendByte(builder, 0xE0 | (c >> 12));
+                appendByte(builder, 0x80 | ((c >> 6) & 0x3F));
+                appendByte(builder, 0x80 | (c & 0x3F));
+            }
+        }
+        return builder;
+    }
+
+    private static void appendByte(final StringBuilder builder, final int b) {
+        builder.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+    }
+
+    /**
+     * Decodes a value.
+     *
+     * @param value the value to decode.
+     * @return the decoded value; the value itself if it contains no escapes.
+     * @throws IllegalArgumentException if the value contains an invalid escape.
+     */
+    public static String decode(final String value) {
+        final int length = value.length();
+        final int first = firstToDecode(value, 0, length);
+        if (first == length) {
+            return value;
+        }
+        final StringBuilder builder = new StringBuilder(length);
+        builder.append(value, 0, first);
+        return appendDecoded(value, first, length, builder).toString();
+    }
+
+    /**
+     * Appends the decoded characters from <code>start</code> (inclusive) to <code>end</code> (exclusive) of the value
+     * to the builder.
+     *
+     * @param value the value to decode.
+     * @param start index of the first character to decode.
+     * @param end index after the last character to decode.
+     * @param builder the builder to append to.
+     * @return the builder.
+     * @throws IllegalArgumentException if the value contains an invalid escape.
+     */
+    public static StringBuilder decode(final CharSequence value, final int start, final int end,
+                                       final StringBuilder builder) {
+        final int first = firstToDecode(value, start, end);
+        builder.append(value, start, first);
+        return first == end ? builder : appendDecoded(value, first, end, builder);
+    }
+
+    /**
+     * @return whether decoding the characters in the range changes them.
+     */
+    public static boolean needsDecoding(final CharSequence value, final int start, final int end) {
+        return firstToDecode(value, start, end) != end;
+    }
+
+    private static int firstToDecode(final CharSequence value, final int start, final int end) {
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c == '%' || c == '+') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static StringBuilder appendDecoded(final CharSequence value, final int start, final int end,
+                                               final StringBuilder builder) {
+        byte[] bytes = null;
+        int i = start;
+        while (i < end) {
+            final char c = value.charAt(i);
+            if (c == '+') {
+                builder.append(' ');
+                i++;
+            } else if (c == '%') {
+                if (bytes == null) {
+                    bytes = new byte[(end - i) / 3];
+                }
+                int count = 0;
+                while (i + 2 < end && value.charAt(i) == '%') {
+                    bytes[count++] = (byte) hexValue(value.charAt(i + 1), value.charAt(i + 2));
+                    i += 3;
+                }
+                if (i < end && value.charAt(i) == '%') {
+                    throw new IllegalArgumentException("URLDecoder: Incomplete trailing escape (%) pattern");
+                }
+                builder.append(new String(bytes, 0, count, UTF_8));
+            } else {
+                builder.append(c);
+                i++;
+            }
+        }
+        return builder;
+    }
+
+    /** Parses two characters the way <code>Integer.parseInt(s, 16)</code> does, sign included. */
+    private static int hexValue(final char high, final char low) {
+        final int lowValue = digit(low);
+        if (lowValue >= 0) {
+            if (high == '-' && lowValue != 0) {
+                throw new IllegalArgumentException(
+                        "URLDecoder: Illegal hex characters in escape (%) pattern - negative value");
+            }
+            if (high == '+' || high == '-') {
+                return lowValue;
+            }
+            final int highValue = digit(high);
+            if (highValue >= 0) {
+                return highValue << 4 | lowValue;
+            }
+        }
+        throw new IllegalArgumentException("URLDecoder: Illegal hex characters in escape (%) pattern - For input "
+                + "string: \"" + high + low + "\"");
+    }
+
+    private static int digit(final char c) {
+        return c < 128 ? HEX_VALUES[c] : Character.digit(c, 16);
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Bounded pool of hardened SAX parsers and DOM document builders.
+ * <p>
+ * The factories are looked up and configured once; parsers are created from them only when the pool is empty and
+ * are reset before they are returned to it.  A parser whose parse failed, or that cannot be reset, is discarded.
+ *
+ * @since 3.6.2
+ */
+public final class XmlParserPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(XmlParserPool.class);
+
+    public static final int DEFAULT_CAPACITY = 32;
+
+    /** Handler left on idle readers, so that they do not hold on to the last handler and its results. */
+    private static final DefaultHandler EMPTY_HANDLER = new DefaultHandler();
+
+    private final SAXParserFactory saxParserFactory;
+
+    private final DocumentBuilderFactory documentBuilderFactory;
+
+    private final BlockingQueue<SAXParser> saxParsers;
+
+    private final BlockingQueue<DocumentBuilder> documentBuilders;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity the maximum number of idle parsers of each kind kept in the pool.
+     */
+    public XmlParserPool(final int capacity) {
+        CommonUtils.assertTrue(capacity > 0, "capacity must be greater than zero.");
+        this.saxParserFactory = newSaxParserFactory();
+        this.documentBuilderFactory = newDocumentBuilderFactory();
+        this.saxParsers = new ArrayBlockingQueue<SAXParser>(capacity);
+        this.documentBuilders = new ArrayBlockingQueue<DocumentBuilder>(capacity);
+    }
+
+    /**
+     * Takes a SAX parser from the pool, creating one if the pool is empty.
+     *
+     * @return a namespace-aware parser with DTDs and external entities disabled.
+     */
+    public SAXParser borrowSaxParser() {
+        final SAXParser parser = this.saxParsers.poll();
+        if (parser != null) {
+            this.hits.incrementAndGet();
+            return parser;
+        }
+        this.misses.incrementAndGet();
+        return newSaxParser();
+    }
+
+    /**
+     * Creates a SAX parser configured like the pooled ones, for callers that cannot return it to the pool.
+     *
+     * @return a new namespace-aware parser with DTDs and external entities disabled.
+     */
+    public SAXParser newSaxParser() {
+        try {
+            synchronized (this.saxParserFactory) {
+                return this.saxParserFactory.newSAXParser();
+            }
+        } catch (final Exception e) {
+            throw new RuntimeException("Unable to create XMLReader", e);
+        }
+    }
+
+    /**
+     * Resets the parser and returns it to the pool.
+     *
+     * @param parser a parser obtained from {@link #borrowSaxParser()} whose last parse completed.
+     */
+    public void release(final SAXParser parser) {
+        try {
+            final XMLReader reader = parser.getXMLReader();
+            reader.setContentHandler(EMPTY_HANDLER);
+            reader.setErrorHandler(EMPTY_HANDLER);
+            parser.reset();
+        } catch (final Exception e) {
+            LOGGER.debug("Discarding SAX parser that cannot be reset: {}", e.getMessage());
+            return;
+        }
+        this.saxParsers.offer(parser);
+    }
+
+    /**
+     * Takes a document builder from the pool, creating one if the pool is empty.
+     *
+     * @return a namespace-aware builder with DTDs and external entities disabled.
+     */
+    public DocumentBuilder borrowDocumentBuilder() {
+        final DocumentBuilder builder = this.documentBuilders.poll();
+        if (builder != null) {
+            this.hits.incrementAndGet();
+            return builder;
+        }
+        this.misses.incrementAndGet();
+        try {
+            synchronized (this.documentBuilderFactory) {
+                return this.documentBuilderFactory.newDocumentBuilder();
+            }
+        } catch (final ParserConfigurationException e) {
+            throw new RuntimeException("Unable to create DocumentBuilder", e);
+        }
+    }
+
+    /**
+     * Resets the builder and returns it to the pool.
+     *
+     * @param builder a builder obtained from {@link #borrowDocumentBuilder()} whose last parse completed.
+     */
+    public void release(final DocumentBuilder builder) {
+        try {
+            builder.reset();
+        } catch (final UnsupportedOperationException e) {
+            LOGGER.debug("Discarding document builder that cannot be reset");
+            return;
+        }
+        this.documentBuilders.offer(builder);
+    }
+
+    /**
+     * @return the number of parsers and builders taken from the pool.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return the number of parsers and builders created because the pool was empty.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return the number of idle parsers and builders in the pool.
+     */
+    public int getIdleCount() {
+        return this.saxParsers.size() + this.documentBuilders.size();
+    }
+
+    private static SAXParserFactory newSaxParserFactory() {
+        final SAXParserFactory factory = SAXParserFactory.newInstance();
+        factory.setNamespaceAware(true);
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+        } catch (final Exception e) {
+            throw new RuntimeException("Unable to create XMLReader", e);
+        }
+        return factory;
+    }
+
+    private static DocumentBuilderFactory newDocumentBuilderFactory() {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        final Map<String, Boolean> features = new HashMap<String, Boolean>();
+        features.put(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        features.put("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        features.put("http://apache.org/xml/features/disallow-doctype-decl", true);
+        for (final Map.Entry<String, Boolean> entry : features.entrySet()) {
+            try {
+                factory.setFeature(entry.getKey(), entry.getValue());
+            } catch (final ParserConfigurationException e) {
+                LOGGER.warn("Failed setting XML feature {}: {}", entry.getKey(), e);
+            }
+        }
+        factory.setExpandEntityReferences(false);
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+}
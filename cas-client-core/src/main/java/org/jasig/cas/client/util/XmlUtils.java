@@ -18,6 +18,7 @@
  */
 package org.jasig.cas.client.util;
 
+import java.io.IOException;
 import java.io.StringReader;
 import java.util.*;
 
@@ -30,10 +31,12 @@ import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 
-import javax.xml.XMLConstants;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParserFactory;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.SAXParser;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * Common utilities for easily parsing XML without duplicating logic.
@@ -49,6 +52,50 @@ public final class XmlUtils {
     private final static Logger LOGGER = LoggerFactory.getLogger(XmlUtils.class);
 
 
+    /**
+     * Pool of hardened parsers shared by all XML parsing done by the client.
+     */
+    private static final XmlParserPool PARSER_POOL = new XmlParserPool(XmlParserPool.DEFAULT_CAPACITY);
+
+    /**
+     * Hardened pull-parser factory, configured once.
+     */
+    private static final XMLInputFactory INPUT_FACTORY = newXmlInputFactory();
+
+    private static volatile Backend backend = Backend.SAX;
+
+    /**
+     * Parser backends for {@link #getTextForElement(String, String)} and
+     * {@link #getTextForElements(String, String)}.
+     */
+    public enum Backend {
+        /** Pooled SAX parsers; scans the whole document, so malformed trailing content is always detected. */
+        SAX,
+        /** StAX pull parser; reads only as far as needed and allocates less per call. */
+        STAX
+    }
+
+    /**
+     * Selects the parser backend used to extract element text.  Defaults to {@link Backend#SAX}.
+     *
+     * @param backend the backend.
+     */
+    public static void setBackend(final Backend backend) {
+        CommonUtils.assertNotNull(backend, "backend cannot be null.");
+        XmlUtils.backend = backend;
+    }
+
+    public static Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * @return the pool of parsers used by this class, e.g. to monitor its hit and miss counts.
+     */
+    public static XmlParserPool getParserPool() {
+        return PARSER_POOL;
+    }
+
     /**
      * Creates a new namespace-aware DOM document object by parsing the given XML.
      *
@@ -57,47 +104,47 @@ public final class XmlUtils {
      * @return DOM document.
      */
     public static Document newDocument(final String xml) {
-        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-        final Map<String, Boolean> features = new HashMap<String, Boolean>();
-        features.put(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-        features.put("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-        features.put("http://apache.org/xml/features/disallow-doctype-decl", true);
-        for (final Map.Entry<String, Boolean> entry : features.entrySet()) {
-            try {
-                factory.setFeature(entry.getKey(), entry.getValue());
-            } catch (final ParserConfigurationException e) {
-                LOGGER.warn("Failed setting XML feature {}: {}", entry.getKey(), e);
-            }
-        }
-        factory.setExpandEntityReferences(false);
-        factory.setNamespaceAware(true);
+        final DocumentBuilder builder = PARSER_POOL.borrowDocumentBuilder();
+        final Document document;
         try {
-            return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+            document = builder.parse(new InputSource(new StringReader(xml)));
         } catch (final Exception e) {
             throw new RuntimeException("XML parsing error: " + e);
         }
+        PARSER_POOL.release(builder);
+        return document;
     }
 
     /**
-     * Get an instance of an XML reader from the XMLReaderFactory.
+     * Get a new XML reader, with DTDs and external entities disabled.  The reader belongs to the caller and is not
+     * taken from the pool; prefer {@link #parse(InputSource, DefaultHandler)}, which reuses pooled readers.
      *
      * @return the XMLReader.
      */
     public static XMLReader getXmlReader() {
         try {
-            final SAXParserFactory factory = SAXParserFactory.newInstance();
-            factory.setNamespaceAware(true);
-            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-            factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-            factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
-            factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
-            return factory.newSAXParser().getXMLReader();
-        } catch (final Exception e) {
+            return PARSER_POOL.newSaxParser().getXMLReader();
+        } catch (final SAXException e) {
             throw new RuntimeException("Unable to create XMLReader", e);
         }
     }
 
+    /**
+     * Parses XML with a pooled reader, reporting content and errors to the given handler.
+     *
+     * @param source the XML to parse.
+     * @param handler the content and error handler.
+     * @throws IOException if the XML cannot be read.
+     * @throws SAXException if the XML is not well-formed, or the handler rejects it.
+     */
+    public static void parse(final InputSource source, final DefaultHandler handler) throws IOException, SAXException {
+        final SAXParser parser = PARSER_POOL.borrowSaxParser();
+        final XMLReader reader = parser.getXMLReader();
+        reader.setContentHandler(handler);
+        reader.setErrorHandler(handler);
+        reader.parse(source);
+        PARSER_POOL.release(parser);
+    }
 
     /**
      * Retrieve the text for a group of elements. Each text element is an entry
@@ -109,8 +156,10 @@ public final class XmlUtils {
      * @return the list of text from the elements.
      */
     public static List<String> getTextForElements(final String xmlAsString, final String element) {
+        if (backend == Backend.STAX) {
+            return staxGetTextForElements(xmlAsString, element);
+        }
         final List<String> elements = new ArrayList<String>(2);
-        final XMLReader reader = getXmlReader();
 
         final DefaultHandler handler = new DefaultHandler() {
 
@@ -143,11 +192,8 @@ public final class XmlUtils {
             }
         };
 
-        reader.setContentHandler(handler);
-        reader.setErrorHandler(handler);
-
         try {
-            reader.parse(new InputSource(new StringReader(xmlAsString)));
+            parse(new InputSource(new StringReader(xmlAsString)), handler);
         } catch (final Exception e) {
             LOGGER.error(e.getMessage(), e);
             return null;
@@ -158,14 +204,16 @@ public final class XmlUtils {
 
     /**
      * Retrieve the text for a specific element (when we know there is only
-     * one).
+     * one).  With the {@link Backend#STAX} backend, reading stops at the end of the first matching element.
      *
      * @param xmlAsString the xml response
      * @param element     the element to look for
      * @return the text value of the element.
      */
     public static String getTextForElement(final String xmlAsString, final String element) {
-        final XMLReader reader = getXmlReader();
+        if (backend == Backend.STAX) {
+            return staxGetTextForElement(xmlAsString, element);
+        }
         final StringBuilder builder = new StringBuilder();
 
         final DefaultHandler handler = new DefaultHandler() {
@@ -195,11 +243,8 @@ public final class XmlUtils {
             }
         };
 
-        reader.setContentHandler(handler);
-        reader.setErrorHandler(handler);
-
         try {
-            reader.parse(new InputSource(new StringReader(xmlAsString)));
+            parse(new InputSource(new StringReader(xmlAsString)), handler);
         } catch (final Exception e) {
             LOGGER.error(e.getMessage(), e);
             return null;
@@ -207,4 +252,97 @@ public final class XmlUtils {
 
         return builder.toString();
     }
+
+    private static String staxGetTextForElement(final String xmlAsString, final String element) {
+        final StringBuilder builder = new StringBuilder();
+        XMLStreamReader reader = null;
+        try {
+            reader = newXmlStreamReader(xmlAsString);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && element.equals(reader.getLocalName())) {
+                    appendElementText(reader, builder);
+                    break;
+                }
+            }
+        } catch (final XMLStreamException e) {
+            LOGGER.error(e.getMessage(), e);
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+        return builder.toString();
+    }
+
+    private static List<String> staxGetTextForElements(final String xmlAsString, final String element) {
+        final List<String> elements = new ArrayList<String>(2);
+        final StringBuilder builder = new StringBuilder();
+        XMLStreamReader reader = null;
+        try {
+            reader = newXmlStreamReader(xmlAsString);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && element.equals(reader.getLocalName())) {
+                    builder.setLength(0);
+                    appendElementText(reader, builder);
+                    elements.add(builder.toString());
+                }
+            }
+        } catch (final XMLStreamException e) {
+            LOGGER.error(e.getMessage(), e);
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+        return elements;
+    }
+
+    /**
+     * Appends the text content of the element the reader is positioned on, leaving the reader on its end tag.
+     * Text is copied straight out of the parser's buffer.
+     */
+    private static void appendElementText(final XMLStreamReader reader, final StringBuilder builder)
+            throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    builder.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static XMLStreamReader newXmlStreamReader(final String xml) throws XMLStreamException {
+        synchronized (INPUT_FACTORY) {
+            return INPUT_FACTORY.createXMLStreamReader(new StringReader(xml));
+        }
+    }
+
+    private static void closeQuietly(final XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (final XMLStreamException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static XMLInputFactory newXmlInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        return factory;
+    }
 }
@@ -18,8 +18,12 @@
  */
 package org.jasig.cas.client.validation;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.Charset;
 import org.jasig.cas.client.util.CommonUtils;
+import org.jasig.cas.client.util.IOUtils;
 
 /**
  * Abstract class that knows the protocol for validating a CAS ticket.
@@ -30,6 +34,9 @@ import org.jasig.cas.client.util.CommonUtils;
  */
 public abstract class AbstractCasProtocolUrlBasedTicketValidator extends AbstractUrlBasedTicketValidator {
 
+    /** Whether the response is handed to the parser as it is read instead of being buffered first. */
+    private boolean streamResponse;
+
     protected AbstractCasProtocolUrlBasedTicketValidator(final String casServerUrlPrefix) {
         super(casServerUrlPrefix);
     }
@@ -39,6 +46,69 @@ public abstract class AbstractCasProtocolUrlBasedTicketValidator extends Abstrac
      */
     @Override
     protected final String retrieveResponseFromServer(final URL validationUrl, final String ticket) {
-        return CommonUtils.getResponseFromServer(validationUrl, getURLConnectionFactory(), getEncoding());
+        return CommonUtils.getResponseFromServer(validationUrl, getURLConnectionFactory(), getEncoding(),
+                getMaxResponseSize(), isAcceptCompressedResponse());
+    }
+
+    @Override
+    protected Assertion retrieveAndParseResponseFromServer(final URL validationUrl, final String ticket)
+            throws TicketValidationException {
+        if (!this.streamResponse) {
+            return super.retrieveAndParseResponseFromServer(validationUrl, ticket);
+        }
+
+        logger.debug("Streaming response from server.");
+        final InputStream in = CommonUtils.getResponseStreamFromServer(validationUrl, getURLConnectionFactory(),
+                getMaxResponseSize(), isAcceptCompressedResponse());
+        try {
+            return parseResponseFromServer(in);
+        } finally {
+            CommonUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Parses the response from the server as it is read.  The default implementation reads the whole response
+     * and delegates to {@link #parseResponseFromServer(String)}.
+     *
+     * @param response the response stream; closed by the caller.
+     * @return the CAS assertion if one could be parsed from the response.
+     * @throws TicketValidationException if an Assertion could not be created.
+     */
+    protected Assertion parseResponseFromServer(final InputStream response) throws TicketValidationException {
+        return parseResponseFromServer(readResponse(response));
+    }
+
+    /**
+     * Reads the whole response stream in the configured encoding.
+     *
+     * @param response the response stream.
+     * @return the response.
+     * @throws CasServerUnavailableException if the response could not be read.
+     */
+    protected final String readResponse(final InputStream response) throws TicketValidationException {
+        final Charset charset = CommonUtils.isEmpty(getEncoding()) ? Charset.defaultCharset()
+                : Charset.forName(getEncoding());
+        try {
+            final String serverResponse = IOUtils.readString(response, charset);
+            logger.debug("Server response: {}", serverResponse);
+            return serverResponse;
+        } catch (final IOException e) {
+            throw new CasServerUnavailableException("Unable to read the response from the CAS server.", e);
+        }
+    }
+
+    /**
+     * Sets whether the validation response is handed to the parser as it arrives instead of being read into a
+     * String first.  Defaults to false.
+     *
+     * @param streamResponse true to stream the response.
+     */
+    public final void setStreamResponse(final boolean streamResponse) {
+        this.streamResponse = streamResponse;
+    }
+
+    protected final boolean isStreamResponse() {
+        return this.streamResponse;
     }
 }
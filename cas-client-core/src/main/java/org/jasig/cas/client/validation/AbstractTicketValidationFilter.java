@@ -20,17 +20,43 @@ package org.jasig.cas.client.validation;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import javax.net.ssl.HostnameVerifier;
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.jasig.cas.client.Protocol;
+import org.jasig.cas.client.authentication.AttributeFilter;
+import org.jasig.cas.client.authentication.AttributeValuePool;
 import org.jasig.cas.client.configuration.ConfigurationKeys;
+import org.jasig.cas.client.ssl.HttpURLConnectionFactory;
+import org.jasig.cas.client.ssl.HttpsURLConnectionFactory;
+import org.jasig.cas.client.ssl.PooledHttpURLConnectionFactory;
 import org.jasig.cas.client.util.AbstractCasFilter;
 import org.jasig.cas.client.util.CommonUtils;
+import org.jasig.cas.client.util.Deadline;
 import org.jasig.cas.client.util.ReflectUtils;
+import org.jasig.cas.client.util.ServerCallGuard;
 
 /**
  * The filter that handles all the work of validating ticket requests.
@@ -44,6 +70,38 @@ import org.jasig.cas.client.util.ReflectUtils;
  * <li><code>useSession</code> - store any of the useful information in a session attribute. (default: true)</li>
  * <li><code>hostnameVerifier</code> - name of class implementing a {@link HostnameVerifier}.</li>
  * <li><code>hostnameVerifierConfig</code> - name of configuration class (constructor argument of verifier).</li>
+ * <li><code>connectionPoolMaxPerHost</code> - keep back-channel connections alive and allow at most this many
+ * concurrent connections per CAS host. (default: 0, pooling disabled)</li>
+ * <li><code>connectionPoolAcquireTimeout</code> - milliseconds to wait for a pooled connection. (default: 5000)</li>
+ * <li><code>maxResponseSize</code> - reject validation responses larger than this many bytes. (default: 0, no limit)</li>
+ * <li><code>asyncValidation</code> - validate tickets off the container thread using Servlet 3 async processing.
+ * The filter must be mapped with <code>&lt;async-supported&gt;true&lt;/async-supported&gt;</code> and the
+ * <code>ASYNC</code> dispatcher, through which successful validations are finished; failed validations are
+ * answered without a dispatch. (default: false)</li>
+ * <li><code>asyncValidationThreads</code> - number of threads validating tickets in async mode. (default: 10)</li>
+ * <li><code>asyncValidationQueueSize</code> - number of async validations waiting for a thread; further requests
+ * are answered with <code>503</code>. (default: 100)</li>
+ * <li><code>bulkheadMaxConcurrentCalls</code> - maximum number of in-flight calls per CAS server.
+ * (default: 0, no limit)</li>
+ * <li><code>bulkheadAcquireTimeout</code> - milliseconds to wait for a free slot in a full bulkhead. (default: 0)</li>
+ * <li><code>circuitBreakerFailureThreshold</code> - consecutive failures after which calls to a CAS server are
+ * refused. (default: 0, circuit breaker disabled)</li>
+ * <li><code>circuitBreakerOpenDuration</code> - milliseconds an open circuit refuses calls before probing the
+ * server again. (default: 30000)</li>
+ * <li><code>casServerUrlPrefixes</code> - comma-separated URL prefixes of CAS server nodes sharing a ticket
+ * registry; validation requests are spread over them instead of being sent to <code>casServerUrlPrefix</code>.</li>
+ * <li><code>serverSelectionPolicy</code> - ROUND_ROBIN, LEAST_OUTSTANDING, EWMA_LATENCY or the name of a class
+ * implementing {@link ServerSelectionPolicy}. (default: ROUND_ROBIN)</li>
+ * <li><code>serverEjectionFailureThreshold</code> - consecutive failed or slow calls that eject a node.
+ * (default: 3)</li>
+ * <li><code>serverEjectionTime</code> - milliseconds an ejected node is skipped. (default: 30000)</li>
+ * <li><code>serverSlowCallThreshold</code> - milliseconds above which a call counts as failed. (default: 0,
+ * disabled)</li>
+ * <li><code>requestDeadline</code> - milliseconds within which all calls to the CAS server made while
+ * processing a request must complete, including proxy ticket requests made by the application.
+ * (default: 0, no deadline)</li>
+ * <li><code>streamValidationResponse</code> - parse CAS validation responses as they are read instead of buffering
+ * them first. (default: false)</li>
  * </ul>
  *
  * @author Scott Battaglia
@@ -71,6 +129,37 @@ public abstract class AbstractTicketValidationFilter extends AbstractCasFilter {
      */
     private boolean useSession = true;
 
+    /**
+     * Time budget in milliseconds for all calls to the CAS server made while processing a request; zero or less
+     * for no deadline.
+     */
+    private long requestDeadline;
+
+    /** Executor validating tickets off the container thread; null unless async validation is enabled. */
+    private ExecutorService asyncValidationExecutor;
+
+    private static final Map<String, Class<? extends ServerSelectionPolicy>> SERVER_SELECTION_POLICIES =
+        new HashMap<String, Class<? extends ServerSelectionPolicy>>();
+
+    static {
+        SERVER_SELECTION_POLICIES.put("ROUND_ROBIN", RoundRobinServerSelectionPolicy.class);
+        SERVER_SELECTION_POLICIES.put("LEAST_OUTSTANDING", LeastOutstandingServerSelectionPolicy.class);
+        SERVER_SELECTION_POLICIES.put("EWMA_LATENCY", EwmaLatencyServerSelectionPolicy.class);
+    }
+
+    /** Request attribute holding the {@link Deadline} of the request. */
+    public static final String CONST_DEADLINE = "_const_cas_deadline_";
+
+    /**
+     * Time in milliseconds an async request may outlive its deadline before the container times it out, leaving
+     * the validator room to report its own timeout.
+     */
+    private static final long ASYNC_TIMEOUT_MARGIN = 1000L;
+
+    /** Request attribute carrying the outcome of an async validation back to the ASYNC dispatch. */
+    private static final String ASYNC_VALIDATION_RESULT = AbstractTicketValidationFilter.class.getName()
+            + ".asyncValidationResult";
+
     protected AbstractTicketValidationFilter(final Protocol protocol) {
         super(protocol);
     }
@@ -127,18 +216,134 @@ public abstract class AbstractTicketValidationFilter extends AbstractCasFilter {
         return null;
     }
 
+    /**
+     * Gets the connection factory to use for back-channel calls to the CAS server, built from the
+     * connection factory class, SSL and hostname verifier settings and connection pool settings of this filter.
+     * A custom connection factory class receives the SSL and hostname verifier settings through a constructor
+     * taking a {@link HostnameVerifier} and {@link Properties}, like {@link HttpsURLConnectionFactory}.
+     * @return the configured {@link HttpURLConnectionFactory}.
+     * @throws IllegalArgumentException if SSL or hostname verifier settings are configured for a custom connection
+     * factory class without such a constructor.
+     */
+    protected HttpURLConnectionFactory getURLConnectionFactory() {
+        final Class<? extends HttpURLConnectionFactory> factoryClass = getClass(
+                ConfigurationKeys.URL_CONNECTION_FACTORY_CLASS);
+        final HttpURLConnectionFactory factory = factoryClass != null ? newURLConnectionFactory(factoryClass)
+                : new HttpsURLConnectionFactory(getHostnameVerifier(), getSSLConfig());
+        final int maxConnectionsPerHost = getInt(ConfigurationKeys.CONNECTION_POOL_MAX_PER_HOST);
+        if (maxConnectionsPerHost > 0) {
+            final PooledHttpURLConnectionFactory pooledFactory = new PooledHttpURLConnectionFactory(factory,
+                    maxConnectionsPerHost);
+            pooledFactory.setAcquireTimeout(getLong(ConfigurationKeys.CONNECTION_POOL_ACQUIRE_TIMEOUT));
+            return pooledFactory;
+        }
+        return factory;
+    }
+
+    private HttpURLConnectionFactory newURLConnectionFactory(
+            final Class<? extends HttpURLConnectionFactory> factoryClass) {
+        final Constructor<? extends HttpURLConnectionFactory> constructor;
+        try {
+            constructor = factoryClass.getConstructor(HostnameVerifier.class, Properties.class);
+        } catch (final NoSuchMethodException e) {
+            CommonUtils.assertTrue(getString(ConfigurationKeys.SSL_CONFIG_FILE) == null
+                    && getClass(ConfigurationKeys.HOSTNAME_VERIFIER) == null, factoryClass.getName()
+                    + " does not accept the configured SSL and hostname verifier settings.");
+            return ReflectUtils.newInstance(factoryClass);
+        }
+        try {
+            return constructor.newInstance(getHostnameVerifier(), getSSLConfig());
+        } catch (final InvocationTargetException e) {
+            throw new IllegalArgumentException("Error creating new instance of " + factoryClass, e.getCause());
+        } catch (final Exception e) {
+            throw new IllegalArgumentException("Error creating new instance of " + factoryClass, e);
+        }
+    }
+
+    /**
+     * Gets the filter restricting the attributes kept from validation responses, built from the allowed and denied
+     * attribute lists and the value cap of this filter.
+     * @return the configured {@link AttributeFilter}.
+     */
+    protected AttributeFilter getAttributeFilter() {
+        return AttributeFilter.parse(getString(ConfigurationKeys.ALLOWED_ATTRIBUTES),
+                getString(ConfigurationKeys.DENIED_ATTRIBUTES), getInt(ConfigurationKeys.MAX_ATTRIBUTE_VALUES));
+    }
+
+    /**
+     * Gets the pool canonicalising the attribute names and values of the principals validated by this filter,
+     * sized by the attribute pool size of this filter.
+     * @return a new {@link AttributeValuePool}, or null if attribute values are not pooled.
+     */
+    protected AttributeValuePool getAttributeValuePool() {
+        final int attributePoolSize = getInt(ConfigurationKeys.ATTRIBUTE_POOL_SIZE);
+        return attributePoolSize > 0 ? new AttributeValuePool(attributePoolSize) : null;
+    }
+
+    /**
+     * Gets the bulkhead and circuit breaker guarding calls to the CAS server, built from the settings of this
+     * filter.
+     * @return the configured {@link ServerCallGuard}, or null if neither the bulkhead nor the circuit breaker is
+     * enabled.
+     */
+    protected ServerCallGuard getServerCallGuard() {
+        final int maxConcurrentCalls = getInt(ConfigurationKeys.BULKHEAD_MAX_CONCURRENT_CALLS);
+        final int failureThreshold = getInt(ConfigurationKeys.CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+        if (maxConcurrentCalls <= 0 && failureThreshold <= 0) {
+            return null;
+        }
+        final ServerCallGuard guard = new ServerCallGuard(maxConcurrentCalls, failureThreshold);
+        guard.setAcquireTimeout(getLong(ConfigurationKeys.BULKHEAD_ACQUIRE_TIMEOUT));
+        guard.setOpenDuration(getLong(ConfigurationKeys.CIRCUIT_BREAKER_OPEN_DURATION));
+        return guard;
+    }
+
+    /**
+     * Gets the pool of CAS server nodes to spread validation requests over, built from the settings of this
+     * filter.
+     * @return the configured {@link CasServerPool}, or null if <code>casServerUrlPrefixes</code> is not set.
+     */
+    protected CasServerPool getCasServerPool() {
+        final String prefixes = getString(ConfigurationKeys.CAS_SERVER_URL_PREFIXES);
+        if (CommonUtils.isBlank(prefixes)) {
+            return null;
+        }
+
+        final String policyName = getString(ConfigurationKeys.SERVER_SELECTION_POLICY);
+        final Class<? extends ServerSelectionPolicy> policyClass = SERVER_SELECTION_POLICIES.get(policyName);
+        final ServerSelectionPolicy policy = policyClass != null ? ReflectUtils.newInstance(policyClass)
+                : ReflectUtils.<ServerSelectionPolicy>newInstance(policyName);
+
+        final CasServerPool pool = new CasServerPool(Arrays.asList(prefixes.trim().split("\\s*,\\s*")), policy);
+        pool.setEjectionFailureThreshold(getInt(ConfigurationKeys.SERVER_EJECTION_FAILURE_THRESHOLD));
+        pool.setEjectionTime(getLong(ConfigurationKeys.SERVER_EJECTION_TIME));
+        pool.setSlowCallThreshold(getLong(ConfigurationKeys.SERVER_SLOW_CALL_THRESHOLD));
+        return pool;
+    }
+
     @Override
     protected void initInternal(final FilterConfig filterConfig) throws ServletException {
         setExceptionOnValidationFailure(getBoolean(ConfigurationKeys.EXCEPTION_ON_VALIDATION_FAILURE));
         setRedirectAfterValidation(getBoolean(ConfigurationKeys.REDIRECT_AFTER_VALIDATION));
         setUseSession(getBoolean(ConfigurationKeys.USE_SESSION));
+        setRequestDeadline(getLong(ConfigurationKeys.REQUEST_DEADLINE));
+        if (getBoolean(ConfigurationKeys.ASYNC_VALIDATION)) {
+            setAsyncValidationThreads(getInt(ConfigurationKeys.ASYNC_VALIDATION_THREADS),
+                    getInt(ConfigurationKeys.ASYNC_VALIDATION_QUEUE_SIZE));
+        }
 
         if (!this.useSession && this.redirectAfterValidation) {
             logger.warn("redirectAfterValidation parameter may not be true when useSession parameter is false. Resetting it to false in order to prevent infinite redirects.");
             setRedirectAfterValidation(false);
         }
 
-        setTicketValidator(getTicketValidator(filterConfig));
+        final TicketValidator validator = getTicketValidator(filterConfig);
+        if (getBoolean(ConfigurationKeys.COALESCE_TICKET_VALIDATION) && validator != null) {
+            setTicketValidator(new SingleFlightTicketValidator(validator,
+                    getLong(ConfigurationKeys.COALESCED_VALIDATION_RETENTION)));
+        } else {
+            setTicketValidator(validator);
+        }
         super.initInternal(filterConfig);
     }
 
@@ -191,6 +396,27 @@ public abstract class AbstractTicketValidationFilter extends AbstractCasFilter {
     @Override
     public final void doFilter(final ServletRequest servletRequest, final ServletResponse servletResponse,
                                final FilterChain filterChain) throws IOException, ServletException {
+        if (this.requestDeadline <= 0) {
+            filter(servletRequest, servletResponse, filterChain);
+            return;
+        }
+
+        Deadline deadline = (Deadline) servletRequest.getAttribute(CONST_DEADLINE);
+        if (deadline == null) {
+            deadline = Deadline.after(this.requestDeadline);
+            servletRequest.setAttribute(CONST_DEADLINE, deadline);
+        }
+        final Deadline previous = Deadline.getCurrent();
+        Deadline.setCurrent(deadline);
+        try {
+            filter(servletRequest, servletResponse, filterChain);
+        } finally {
+            Deadline.setCurrent(previous);
+        }
+    }
+
+    private void filter(final ServletRequest servletRequest, final ServletResponse servletResponse,
+                        final FilterChain filterChain) throws IOException, ServletException {
 
         if (!preFilter(servletRequest, servletResponse, filterChain)) {
             return;
@@ -198,46 +424,236 @@ public abstract class AbstractTicketValidationFilter extends AbstractCasFilter {
 
         final HttpServletRequest request = (HttpServletRequest) servletRequest;
         final HttpServletResponse response = (HttpServletResponse) servletResponse;
+
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            final Assertion assertion = (Assertion) request.getAttribute(ASYNC_VALIDATION_RESULT);
+            if (assertion != null) {
+                request.removeAttribute(ASYNC_VALIDATION_RESULT);
+                if (!onValidationSuccess(request, response, assertion)) {
+                    return;
+                }
+                filterChain.doFilter(request, response);
+                return;
+            }
+        }
+
         final String ticket = retrieveTicketFromRequest(request);
 
         if (CommonUtils.isNotBlank(ticket)) {
             logger.debug("Attempting to validate ticket: {}", ticket);
 
+            if (this.asyncValidationExecutor != null && request.isAsyncSupported()) {
+                startAsyncValidation(request, response, ticket);
+                return;
+            }
+
             try {
                 final Assertion assertion = this.ticketValidator.validate(ticket,
                         constructServiceUrl(request, response));
 
-                logger.debug("Successfully authenticated user: {}", assertion.getPrincipal().getName());
-
-                request.setAttribute(CONST_CAS_ASSERTION, assertion);
-
-                if (this.useSession) {
-                    request.getSession().setAttribute(CONST_CAS_ASSERTION, assertion);
-                }
-                onSuccessfulValidation(request, response, assertion);
-
-                if (this.redirectAfterValidation) {
-                    logger.debug("Redirecting after successful ticket validation.");
-                    response.sendRedirect(constructServiceUrl(request, response));
+                if (!onValidationSuccess(request, response, assertion)) {
                     return;
                 }
             } catch (final TicketValidationException e) {
-                logger.debug(e.getMessage(), e);
+                onValidationFailure(request, response, e);
+                return;
+            }
+        }
 
-                onFailedValidation(request, response);
+        filterChain.doFilter(request, response);
 
-                if (this.exceptionOnValidationFailure) {
-                    throw new ServletException(e);
+    }
+
+    /**
+     * Puts the request into asynchronous mode and validates the ticket on the async executor.  A successful
+     * assertion is stored on the request, which is then dispatched back through this filter to finish processing
+     * on a container thread.  A failed validation is answered right away and never dispatched, so a filter mapped
+     * without the <code>ASYNC</code> dispatcher cannot let it through to the protected resource.  A validation
+     * refused by the executor, or still running when the async request times out, fails with a
+     * {@link CasServerUnavailableException}.
+     */
+    private void startAsyncValidation(final HttpServletRequest request, final HttpServletResponse response,
+                                      final String ticket) {
+        final String serviceUrl = constructServiceUrl(request, response);
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        final AtomicBoolean resumed = new AtomicBoolean();
+        final Deadline deadline = Deadline.getCurrent();
+        if (deadline != null) {
+            asyncContext.setTimeout(deadline.getRemaining() + ASYNC_TIMEOUT_MARGIN);
+        }
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(final AsyncEvent event) {
+                resumeAsyncValidation(request, asyncContext, resumed,
+                        new CasServerUnavailableException("Ticket validation timed out."));
+            }
+
+            @Override
+            public void onError(final AsyncEvent event) {
+                resumed.set(true);
+            }
+
+            @Override
+            public void onComplete(final AsyncEvent event) {
+                // nothing to do
+            }
+
+            @Override
+            public void onStartAsync(final AsyncEvent event) {
+                // nothing to do
+            }
+        });
+
+        CompletableFuture<Assertion> future;
+        if (this.ticketValidator instanceof AsyncTicketValidator) {
+            future = ((AsyncTicketValidator) this.ticketValidator).validateAsync(ticket, serviceUrl,
+                    this.asyncValidationExecutor);
+        } else {
+            try {
+                future = supplyAssertion(ticket, serviceUrl, deadline);
+            } catch (final RejectedExecutionException e) {
+                future = new CompletableFuture<Assertion>();
+                future.completeExceptionally(new CasServerUnavailableException("Ticket validation was rejected.", e));
+            }
+        }
+
+        future.whenComplete(new BiConsumer<Assertion, Throwable>() {
+            @Override
+            public void accept(final Assertion assertion, final Throwable throwable) {
+                final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause() : throwable;
+                resumeAsyncValidation(request, asyncContext, resumed, cause != null ? cause : assertion);
+            }
+        });
+    }
+
+    private CompletableFuture<Assertion> supplyAssertion(final String ticket, final String serviceUrl,
+                                                         final Deadline deadline) {
+        return CompletableFuture.supplyAsync(new Supplier<Assertion>() {
+            @Override
+            public Assertion get() {
+                final Deadline previous = Deadline.getCurrent();
+                Deadline.setCurrent(deadline);
+                try {
+                    return ticketValidator.validate(ticket, serviceUrl);
+                } catch (final TicketValidationException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    Deadline.setCurrent(previous);
                 }
+            }
+        }, this.asyncValidationExecutor);
+    }
+
+    /**
+     * Dispatches a successful async validation back through this filter, or answers a failed one, unless the
+     * request was already resumed by a timeout or has failed.  If the request can no longer be dispatched it is
+     * answered directly.
+     */
+    private void resumeAsyncValidation(final HttpServletRequest request, final AsyncContext asyncContext,
+                                       final AtomicBoolean resumed, final Object result) {
+        if (!resumed.compareAndSet(false, true)) {
+            return;
+        }
+        if (!(result instanceof Assertion)) {
+            final int status = asyncFailureStatus(request, asyncContext, (Throwable) result);
+            completeAsyncValidation(asyncContext, status, status == HttpServletResponse.SC_INTERNAL_SERVER_ERROR
+                    ? null : ((Throwable) result).getMessage());
+            return;
+        }
+        request.setAttribute(ASYNC_VALIDATION_RESULT, result);
+        try {
+            asyncContext.dispatch();
+        } catch (final IllegalStateException e) {
+            logger.warn("Unable to resume request after ticket validation: {}", e.getMessage());
+            completeAsyncValidation(asyncContext, HttpServletResponse.SC_SERVICE_UNAVAILABLE, null);
+        }
+    }
 
-                response.sendError(HttpServletResponse.SC_FORBIDDEN, e.getMessage());
+    private int asyncFailureStatus(final HttpServletRequest request, final AsyncContext asyncContext,
+                                   final Throwable throwable) {
+        if (!(throwable instanceof TicketValidationException)) {
+            logger.error("Unable to validate ticket", throwable);
+            return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        }
+        logger.debug(throwable.getMessage(), throwable);
+        onFailedValidation(request, (HttpServletResponse) asyncContext.getResponse());
+        if (this.exceptionOnValidationFailure) {
+            return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        }
+        return failureStatus((TicketValidationException) throwable);
+    }
 
-                return;
+    private void completeAsyncValidation(final AsyncContext asyncContext, final int status, final String message) {
+        try {
+            final HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+            if (message != null) {
+                response.sendError(status, message);
+            } else {
+                response.sendError(status);
             }
+        } catch (final IOException e) {
+            logger.debug("Unable to answer request after ticket validation", e);
+        } catch (final IllegalStateException e) {
+            logger.debug("Unable to answer request after ticket validation", e);
+        }
+        try {
+            asyncContext.complete();
+        } catch (final IllegalStateException e) {
+            logger.debug("Request already completed", e);
         }
+    }
 
-        filterChain.doFilter(request, response);
+    /**
+     * @return true if processing should continue down the filter chain, false if a redirect was sent.
+     */
+    private boolean onValidationSuccess(final HttpServletRequest request, final HttpServletResponse response,
+                                        final Assertion assertion) throws IOException {
+        logger.debug("Successfully authenticated user: {}", assertion.getPrincipal().getName());
 
+        request.setAttribute(CONST_CAS_ASSERTION, assertion);
+
+        if (this.useSession) {
+            request.getSession().setAttribute(CONST_CAS_ASSERTION, assertion);
+        }
+        onSuccessfulValidation(request, response, assertion);
+
+        if (this.redirectAfterValidation) {
+            logger.debug("Redirecting after successful ticket validation.");
+            response.sendRedirect(constructServiceUrl(request, response));
+            return false;
+        }
+        return true;
+    }
+
+    private void onValidationFailure(final HttpServletRequest request, final HttpServletResponse response,
+                                     final TicketValidationException e) throws IOException, ServletException {
+        logger.debug(e.getMessage(), e);
+
+        onFailedValidation(request, response);
+
+        if (this.exceptionOnValidationFailure) {
+            throw new ServletException(e);
+        }
+
+        response.sendError(failureStatus(e), e.getMessage());
+    }
+
+    /**
+     * @return <code>503</code> when no usable answer was received from the CAS server, <code>403</code> when the
+     * server rejected the ticket.
+     */
+    private static int failureStatus(final TicketValidationException e) {
+        return e instanceof CasServerUnavailableException ? HttpServletResponse.SC_SERVICE_UNAVAILABLE
+                : HttpServletResponse.SC_FORBIDDEN;
+    }
+
+    @Override
+    public void destroy() {
+        super.destroy();
+        if (this.asyncValidationExecutor != null) {
+            this.asyncValidationExecutor.shutdown();
+        }
     }
 
     public final void setTicketValidator(final TicketValidator ticketValidator) {
@@ -255,4 +671,56 @@ public abstract class AbstractTicketValidationFilter extends AbstractCasFilter {
     public final void setUseSession(final boolean useSession) {
         this.useSession = useSession;
     }
+
+    /**
+     * Sets the time budget in milliseconds for all calls to the CAS server made while processing a request,
+     * including ticket validation, proxy granting ticket retrieval and proxy ticket requests made further down the
+     * filter chain.
+     *
+     * @param requestDeadline the budget in milliseconds, or zero for no deadline.
+     */
+    public final void setRequestDeadline(final long requestDeadline) {
+        this.requestDeadline = requestDeadline;
+    }
+
+    /**
+     * Enables asynchronous ticket validation on a pool of the given number of daemon threads, queueing up to
+     * {@link ConfigurationKeys#ASYNC_VALIDATION_QUEUE_SIZE its default} number of validations.  A value of zero
+     * or less disables it.
+     *
+     * @param threads the number of threads validating tickets.
+     */
+    public final void setAsyncValidationThreads(final int threads) {
+        setAsyncValidationThreads(threads, ConfigurationKeys.ASYNC_VALIDATION_QUEUE_SIZE.getDefaultValue());
+    }
+
+    /**
+     * Enables asynchronous ticket validation on a pool of the given number of daemon threads.  Validations beyond
+     * the threads and the queue are refused and answered as a {@link CasServerUnavailableException}.
+     *
+     * @param threads the number of threads validating tickets; zero or less disables async validation.
+     * @param queueSize the number of validations waiting for a thread; zero or less for no queue.
+     */
+    public final void setAsyncValidationThreads(final int threads, final int queueSize) {
+        if (this.asyncValidationExecutor != null) {
+            this.asyncValidationExecutor.shutdown();
+            this.asyncValidationExecutor = null;
+        }
+        if (threads > 0) {
+            final BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<Runnable>(queueSize)
+                    : new SynchronousQueue<Runnable>();
+            this.asyncValidationExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r,
+                                    "cas-ticket-validation-" + this.count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+        }
+    }
 }
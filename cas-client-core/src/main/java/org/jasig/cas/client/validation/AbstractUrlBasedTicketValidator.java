@@ -18,15 +18,25 @@
  */
 package org.jasig.cas.client.validation;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLEncoder;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.jasig.cas.client.authentication.AttributeFilter;
+import org.jasig.cas.client.authentication.AttributeValuePool;
 import org.jasig.cas.client.ssl.HttpURLConnectionFactory;
 import org.jasig.cas.client.ssl.HttpsURLConnectionFactory;
 import org.jasig.cas.client.util.CommonUtils;
+import org.jasig.cas.client.util.Deadline;
+import org.jasig.cas.client.util.ServerCallGuard;
+import org.jasig.cas.client.util.ServerUnavailableException;
+import org.jasig.cas.client.util.UrlCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,7 +46,7 @@ import org.slf4j.LoggerFactory;
  * @author Scott Battaglia
  * @since 3.1
  */
-public abstract class AbstractUrlBasedTicketValidator implements TicketValidator {
+public abstract class AbstractUrlBasedTicketValidator implements AsyncTicketValidator {
 
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -65,6 +75,39 @@ public abstract class AbstractUrlBasedTicketValidator implements TicketValidator
 
     private String encoding;
 
+    /**
+     * Maximum number of bytes accepted in a validation response; zero or less means no limit.
+     */
+    private long maxResponseSize;
+
+    /**
+     * Whether the CAS server is asked for gzip or deflate compressed responses.
+     */
+    private boolean acceptCompressedResponse;
+
+    /**
+     * The attributes and attribute values kept from validation responses.
+     */
+    private AttributeFilter attributeFilter = AttributeFilter.ACCEPT_ALL;
+
+    private AttributeValuePool attributeValuePool;
+
+    /**
+     * Bulkhead and circuit breaker for calls to the CAS server; null if calls are not guarded.
+     */
+    private ServerCallGuard serverCallGuard;
+
+    /**
+     * Nodes to spread validation requests over; null to send every request to {@link #casServerUrlPrefix}.
+     */
+    private CasServerPool casServerPool;
+
+    /**
+     * The validation url compiled from the configuration on first use; null until then or after the configuration
+     * changes.
+     */
+    private volatile ValidationUrlTemplate validationUrlTemplate;
+
     /**
      * Constructs a new TicketValidator with the casServerUrlPrefix.
      *
@@ -77,6 +120,11 @@ public abstract class AbstractUrlBasedTicketValidator implements TicketValidator
 
     /**
      * Template method for ticket validators that need to provide additional parameters to the validation url.
+     * <p>
+     * The map holds the <code>ticket</code> and <code>service</code> parameters when this is called.  Their values
+     * may be moved to other parameters or removed, but must not be otherwise changed: this method is called once when
+     * the validation url is compiled, not for every ticket.  Subclasses whose parameters change must call
+     * {@link #resetValidationUrl()}.
      *
      * @param urlParameters the map containing the parameters.
      */
@@ -99,11 +147,35 @@ public abstract class AbstractUrlBasedTicketValidator implements TicketValidator
      * @return the fully constructed URL.
      */
     protected final String constructValidationUrl(final String ticket, final String serviceUrl) {
-        final Map<String, String> urlParameters = new HashMap<String, String>();
+        return constructValidationUrl(this.casServerUrlPrefix, ticket, serviceUrl);
+    }
+
+    private String constructValidationUrl(final String serverUrlPrefix, final String ticket, final String serviceUrl) {
+        ValidationUrlTemplate template = this.validationUrlTemplate;
+        if (template == null) {
+            template = compileValidationUrl();
+            this.validationUrlTemplate = template;
+        }
+        return template.construct(serverUrlPrefix, ticket, serviceUrl);
+    }
+
+    /**
+     * Discards the compiled validation url so that it is compiled again, with the current parameters, on its next
+     * use.  Subclasses call this whenever a parameter they add in {@link #populateUrlAttributeMap(Map)} changes.
+     */
+    protected final void resetValidationUrl() {
+        this.validationUrlTemplate = null;
+    }
+
+    private ValidationUrlTemplate compileValidationUrl() {
+        // distinct instances, so that the per-request parameters are recognized by identity
+        final String ticketMarker = new String("ticket");
+        final String serviceMarker = new String("service");
+        final Map<String, String> urlParameters = new LinkedHashMap<String, String>();
 
         logger.debug("Placing URL parameters in map.");
-        urlParameters.put("ticket", ticket);
-        urlParameters.put("service", serviceUrl);
+        urlParameters.put("ticket", ticketMarker);
+        urlParameters.put("service", serviceMarker);
 
         if (this.renew) {
             urlParameters.put("renew", "true");
@@ -117,48 +189,33 @@ public abstract class AbstractUrlBasedTicketValidator implements TicketValidator
             urlParameters.putAll(this.customParameters);
         }
 
-        final String suffix = getUrlSuffix();
-        final StringBuilder buffer = new StringBuilder(urlParameters.size() * 10 + this.casServerUrlPrefix.length()
-                + suffix.length() + 1);
-
-        int i = 0;
-
-        buffer.append(this.casServerUrlPrefix);
-        buffer.append(suffix);
-
+        final StringBuilder constantQuery = new StringBuilder();
+        final List<String> serviceParameters = new ArrayList<String>(1);
+        final List<String> ticketParameters = new ArrayList<String>(1);
         for (final Map.Entry<String, String> entry : urlParameters.entrySet()) {
-            final String key = entry.getKey();
             final String value = entry.getValue();
-
-            if (value != null) {
-                buffer.append(i++ == 0 ? "?" : "&");
-                buffer.append(key);
-                buffer.append("=");
-                final String encodedValue = encodeUrl(value);
-                buffer.append(encodedValue);
+            if (value == ticketMarker) {
+                ticketParameters.add(entry.getKey());
+            } else if (value == serviceMarker) {
+                serviceParameters.add(entry.getKey());
+            } else if (value != null) {
+                constantQuery.append(constantQuery.length() == 0 ? "?" : "&");
+                UrlCodec.encode(value, constantQuery.append(entry.getKey()).append('='));
             }
         }
-
-        return buffer.toString();
-
+        return new ValidationUrlTemplate(getUrlSuffix() + constantQuery, constantQuery.length() > 0,
+                serviceParameters.toArray(new String[serviceParameters.size()]),
+                ticketParameters.toArray(new String[ticketParameters.size()]));
     }
 
     /**
      * Encodes a URL using the URLEncoder format.
      *
      * @param url the url to encode.
-     * @return the encoded url, or the original url if "UTF-8" character encoding could not be found.                       
+     * @return the encoded url.
      */
     protected final String encodeUrl(final String url) {
-        if (url == null) {
-            return null;
-        }
-
-        try {
-            return URLEncoder.encode(url, "UTF-8");
-        } catch (final UnsupportedEncodingException e) {
-            return url;
-        }
+        return url != null ? UrlCodec.encode(url) : null;
     }
 
     /**
@@ -181,33 +238,148 @@ public abstract class AbstractUrlBasedTicketValidator implements TicketValidator
 
     protected abstract String retrieveResponseFromServer(URL validationUrl, String ticket);
 
+    /**
+     * Contacts the CAS Server and parses its response into a CAS Assertion.  The default implementation retrieves
+     * the whole response with {@link #retrieveResponseFromServer(URL, String)} and hands it to
+     * {@link #parseResponseFromServer(String)}; subclasses may override it to parse the response as it is read.
+     *
+     * @param validationUrl the url to send the validation request to.
+     * @param ticket the ticket to validate.
+     * @return the CAS assertion if one could be parsed from the response.
+     * @throws TicketValidationException if an Assertion could not be created.
+     */
+    protected Assertion retrieveAndParseResponseFromServer(final URL validationUrl, final String ticket)
+            throws TicketValidationException {
+        logger.debug("Retrieving response from server.");
+        final String serverResponse = retrieveResponseFromServer(validationUrl, ticket);
+
+        if (serverResponse == null) {
+            throw new CasServerUnavailableException("The CAS server returned no response.");
+        }
+
+        logger.debug("Server response: {}", serverResponse);
+
+        return parseResponseFromServer(serverResponse);
+    }
+
     @Override
     public final Assertion validate(final String ticket, final String service) throws TicketValidationException {
-        final String validationUrl = constructValidationUrl(ticket, service);
-        logger.debug("Constructing validation url: {}", validationUrl);
+        if (this.casServerPool == null) {
+            return validate(this.casServerUrlPrefix, ticket, service);
+        }
 
+        final CasServerNode node = this.casServerPool.select();
+        final long start = System.currentTimeMillis();
+        boolean succeeded = false;
+        boolean refused = false;
         try {
-            logger.debug("Retrieving response from server.");
-            final String serverResponse = retrieveResponseFromServer(new URL(validationUrl), ticket);
-
-            if (serverResponse == null) {
-                throw new TicketValidationException("The CAS server returned no response.");
+            final Assertion assertion = validate(node.getUrlPrefix(), ticket, service);
+            succeeded = true;
+            return assertion;
+        } catch (final TicketValidationException e) {
+            // a rejected ticket still means the node answered; a local guard refusal never reached it
+            succeeded = !(e instanceof CasServerUnavailableException);
+            refused = e.getCause() instanceof ServerUnavailableException;
+            throw e;
+        } finally {
+            if (refused) {
+                this.casServerPool.cancel(node);
+            } else {
+                this.casServerPool.release(node, System.currentTimeMillis() - start, succeeded);
             }
+        }
+    }
 
-            logger.debug("Server response: {}", serverResponse);
+    private Assertion validate(final String serverUrlPrefix, final String ticket, final String service)
+            throws TicketValidationException {
+        final String validationUrl = constructValidationUrl(serverUrlPrefix, ticket, service);
+        logger.debug("Constructing validation url: {}", validationUrl);
 
-            return parseResponseFromServer(serverResponse);
+        try {
+            final URL url = new URL(validationUrl);
+            if (this.serverCallGuard == null) {
+                return retrieveAndParse(url, ticket);
+            }
+
+            final ServerCallGuard.Permit permit;
+            try {
+                permit = this.serverCallGuard.acquire(serverUrlPrefix);
+            } catch (final ServerUnavailableException e) {
+                throw new CasServerUnavailableException(e.getMessage(), e);
+            }
+            boolean succeeded = false;
+            try {
+                final Assertion assertion = retrieveAndParse(url, ticket);
+                succeeded = true;
+                return assertion;
+            } catch (final TicketValidationException e) {
+                // only an actual CAS answer counts in the server's favour
+                succeeded = !(e instanceof CasServerUnavailableException);
+                throw e;
+            } finally {
+                permit.release(succeeded);
+            }
         } catch (final MalformedURLException e) {
             throw new TicketValidationException(e);
         }
     }
 
+    /**
+     * Calls {@link #retrieveAndParseResponseFromServer(URL, String)}, turning the <code>RuntimeException</code> with
+     * which {@link CommonUtils#getResponseFromServer(URL, HttpURLConnectionFactory, String)} and its variants report
+     * I/O failures into a {@link CasServerUnavailableException}, as the streaming path does.
+     */
+    private Assertion retrieveAndParse(final URL url, final String ticket) throws TicketValidationException {
+        try {
+            return retrieveAndParseResponseFromServer(url, ticket);
+        } catch (final RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new CasServerUnavailableException("Unable to get a response from the CAS server.", e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public final CompletableFuture<Assertion> validateAsync(final String ticket, final String service,
+                                                            final Executor executor) {
+        final CompletableFuture<Assertion> future = new CompletableFuture<Assertion>();
+        final Deadline deadline = Deadline.getCurrent();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Deadline previous = Deadline.getCurrent();
+                    Deadline.setCurrent(deadline);
+                    try {
+                        future.complete(validate(ticket, service));
+                    } catch (final Throwable t) {
+                        future.completeExceptionally(t);
+                    } finally {
+                        Deadline.setCurrent(previous);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            future.completeExceptionally(new CasServerUnavailableException("Ticket validation was rejected.", e));
+        }
+        return future;
+    }
+
     public final void setRenew(final boolean renew) {
         this.renew = renew;
+        resetValidationUrl();
     }
 
+    /**
+     * Sets custom parameters to pass to the validation url.  The map is read when the validation url is compiled,
+     * so later changes to it are not seen.
+     *
+     * @param customParameters the parameters, or null for none.
+     */
     public final void setCustomParameters(final Map<String, String> customParameters) {
         this.customParameters = customParameters;
+        resetValidationUrl();
     }
 
     public final void setEncoding(final String encoding) {
@@ -218,6 +390,95 @@ public abstract class AbstractUrlBasedTicketValidator implements TicketValidator
         return this.encoding;
     }
 
+    /**
+     * Sets the maximum number of bytes accepted in a validation response.  Larger responses fail validation
+     * instead of being buffered; zero or less (the default) means no limit.
+     *
+     * @param maxResponseSize the maximum response size in bytes.
+     */
+    public final void setMaxResponseSize(final long maxResponseSize) {
+        this.maxResponseSize = maxResponseSize;
+    }
+
+    protected final long getMaxResponseSize() {
+        return this.maxResponseSize;
+    }
+
+    /**
+     * Sets whether the CAS server is asked to compress validation responses with gzip or deflate.  Compressed
+     * responses are decompressed as they are read; the maximum response size applies to the decompressed bytes.
+     *
+     * @param acceptCompressedResponse true to send <code>Accept-Encoding: gzip, deflate</code>.
+     */
+    public final void setAcceptCompressedResponse(final boolean acceptCompressedResponse) {
+        this.acceptCompressedResponse = acceptCompressedResponse;
+    }
+
+    protected final boolean isAcceptCompressedResponse() {
+        return this.acceptCompressedResponse;
+    }
+
+    /**
+     * Restricts the attributes, and the number of values of each, that are kept from validation responses.  The
+     * filter is applied while the response is parsed.  Defaults to keeping every attribute.
+     *
+     * @param attributeFilter the filter to apply.
+     */
+    public final void setAttributeFilter(final AttributeFilter attributeFilter) {
+        CommonUtils.assertNotNull(attributeFilter, "attributeFilter cannot be null.");
+        this.attributeFilter = attributeFilter;
+    }
+
+    protected final AttributeFilter getAttributeFilter() {
+        return this.attributeFilter;
+    }
+
+    /**
+     * Sets the pool that equal attribute names and values from validation responses are canonicalised through, so
+     * that the principals of this validator share them.  Defaults to the
+     * {@link AttributeValuePool#getDefault() default pool}.
+     *
+     * @param attributeValuePool the pool, or null to use the default pool.
+     */
+    public final void setAttributeValuePool(final AttributeValuePool attributeValuePool) {
+        this.attributeValuePool = attributeValuePool;
+    }
+
+    /**
+     * @return the pool of this validator, or the default pool if it has none; null if values are not pooled.
+     */
+    protected final AttributeValuePool getAttributeValuePool() {
+        return this.attributeValuePool != null ? this.attributeValuePool : AttributeValuePool.getDefault();
+    }
+
+    /**
+     * Sets the bulkhead and circuit breaker that guards calls to the CAS server.  Calls refused by the guard fail
+     * with a {@link CasServerUnavailableException}; only calls that got an answer from CAS count as successful.
+     *
+     * @param serverCallGuard the guard, or null to leave calls unguarded.
+     */
+    public final void setServerCallGuard(final ServerCallGuard serverCallGuard) {
+        this.serverCallGuard = serverCallGuard;
+    }
+
+    public final ServerCallGuard getServerCallGuard() {
+        return this.serverCallGuard;
+    }
+
+    /**
+     * Sets the CAS server nodes that validation requests are spread over.  When set, the nodes of the pool are
+     * used instead of the CAS server URL prefix given to the constructor.
+     *
+     * @param casServerPool the pool, or null to use the single CAS server URL prefix.
+     */
+    public final void setCasServerPool(final CasServerPool casServerPool) {
+        this.casServerPool = casServerPool;
+    }
+
+    public final CasServerPool getCasServerPool() {
+        return this.casServerPool;
+    }
+
     protected final boolean isRenew() {
         return this.renew;
     }
@@ -237,4 +498,61 @@ public abstract class AbstractUrlBasedTicketValidator implements TicketValidator
     public void setURLConnectionFactory(final HttpURLConnectionFactory urlConnectionFactory) {
         this.urlConnectionFactory = urlConnectionFactory;
     }
+
+    /**
+     * The validation url with its constant parameters encoded once.  Per request only the service and ticket are
+     * encoded and appended, in that order, after the constant parameters.
+     */
+    private final class ValidationUrlTemplate {
+
+        /** The url suffix followed by the encoded constant parameters. */
+        private final String suffixAndConstantQuery;
+
+        private final boolean hasConstantQuery;
+
+        private final String[] serviceParameters;
+
+        private final String[] ticketParameters;
+
+        ValidationUrlTemplate(final String suffixAndConstantQuery, final boolean hasConstantQuery,
+                              final String[] serviceParameters, final String[] ticketParameters) {
+            this.suffixAndConstantQuery = suffixAndConstantQuery;
+            this.hasConstantQuery = hasConstantQuery;
+            this.serviceParameters = serviceParameters;
+            this.ticketParameters = ticketParameters;
+        }
+
+        String construct(final String serverUrlPrefix, final String ticket, final String serviceUrl) {
+            final String encodedService = serviceUrl != null && this.serviceParameters.length > 0
+                    ? encodeUrl(serviceUrl) : null;
+            final String encodedTicket = ticket != null && this.ticketParameters.length > 0 ? encodeUrl(ticket) : null;
+            final StringBuilder buffer = new StringBuilder(serverUrlPrefix.length()
+                    + this.suffixAndConstantQuery.length() + length(encodedService) + length(encodedTicket) + 32);
+
+            buffer.append(serverUrlPrefix);
+            buffer.append(this.suffixAndConstantQuery);
+            boolean first = !this.hasConstantQuery;
+            if (encodedService != null) {
+                first = append(buffer, first, this.serviceParameters, encodedService);
+            }
+            if (encodedTicket != null) {
+                append(buffer, first, this.ticketParameters, encodedTicket);
+            }
+            return buffer.toString();
+        }
+
+        private boolean append(final StringBuilder buffer, final boolean first, final String[] keys,
+                               final String encodedValue) {
+            boolean isFirst = first;
+            for (final String key : keys) {
+                buffer.append(isFirst ? '?' : '&').append(key).append('=').append(encodedValue);
+                isFirst = false;
+            }
+            return isFirst;
+        }
+
+        private int length(final String value) {
+            return value != null ? value.length() : 0;
+        }
+    }
 }
@@ -0,0 +1,41 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link TicketValidator} that can validate tickets without blocking the calling thread.
+ *
+ * @since 3.6.2
+ */
+public interface AsyncTicketValidator extends TicketValidator {
+
+    /**
+     * Attempts to validate a ticket for the provided service on the given executor.
+     *
+     * @param ticket the ticket to attempt to validate.
+     * @param service the service this ticket is valid for.
+     * @param executor the executor that performs the round-trip to the CAS server.
+     * @return a future completed with the assertion from the ticket, or completed exceptionally with a
+     * {@link TicketValidationException} if the ticket cannot be validated.
+     */
+    CompletableFuture<Assertion> validateAsync(String ticket, String service, Executor executor);
+}
@@ -22,8 +22,6 @@ import javax.servlet.FilterConfig;
 
 import org.jasig.cas.client.Protocol;
 import org.jasig.cas.client.configuration.ConfigurationKeys;
-import org.jasig.cas.client.ssl.HttpURLConnectionFactory;
-import org.jasig.cas.client.ssl.HttpsURLConnectionFactory;
 
 /**
  * Implementation of AbstractTicketValidatorFilter that creates a Cas10TicketValidator.
@@ -46,10 +44,12 @@ public class Cas10TicketValidationFilter extends AbstractTicketValidationFilter
         final Cas10TicketValidator validator = new Cas10TicketValidator(casServerUrlPrefix);
         validator.setRenew(getBoolean(ConfigurationKeys.RENEW));
 
-        final HttpURLConnectionFactory factory = new HttpsURLConnectionFactory(getHostnameVerifier(),
-                getSSLConfig());
-        validator.setURLConnectionFactory(factory);
+        validator.setURLConnectionFactory(getURLConnectionFactory());
         validator.setEncoding(getString(ConfigurationKeys.ENCODING));
+        validator.setMaxResponseSize(getLong(ConfigurationKeys.MAX_RESPONSE_SIZE));
+        validator.setAcceptCompressedResponse(getBoolean(ConfigurationKeys.ACCEPT_COMPRESSED_RESPONSE));
+        validator.setServerCallGuard(getServerCallGuard());
+        validator.setCasServerPool(getCasServerPool());
 
         return validator;
     }
@@ -43,6 +43,9 @@ public final class Cas10TicketValidator extends AbstractCasProtocolUrlBasedTicke
     @Override
     protected Assertion parseResponseFromServer(final String response) throws TicketValidationException {
         if (!response.startsWith("yes")) {
+            if (!response.startsWith("no")) {
+                throw new CasServerUnavailableException("The CAS server did not answer with a CAS 1.0 response.");
+            }
             throw new TicketValidationException("CAS Server could not validate ticket.");
         }
 
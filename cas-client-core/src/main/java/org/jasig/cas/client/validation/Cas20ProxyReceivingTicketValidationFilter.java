@@ -29,10 +29,10 @@ import org.jasig.cas.client.Protocol;
 import org.jasig.cas.client.configuration.ConfigurationKeys;
 import org.jasig.cas.client.proxy.*;
 import org.jasig.cas.client.ssl.HttpURLConnectionFactory;
-import org.jasig.cas.client.ssl.HttpsURLConnectionFactory;
 import org.jasig.cas.client.util.CommonUtils;
 import org.jasig.cas.client.util.PrivateKeyUtils;
 import org.jasig.cas.client.util.ReflectUtils;
+import org.jasig.cas.client.util.ServerCallGuard;
 
 import static org.jasig.cas.client.configuration.ConfigurationKeys.*;
 
@@ -56,7 +56,17 @@ public class Cas20ProxyReceivingTicketValidationFilter extends AbstractTicketVal
             TOLERANCE.getName(), IGNORE_PATTERN.getName(), IGNORE_URL_PATTERN_TYPE.getName(), HOSTNAME_VERIFIER.getName(), HOSTNAME_VERIFIER_CONFIG.getName(),
             EXCEPTION_ON_VALIDATION_FAILURE.getName(), REDIRECT_AFTER_VALIDATION.getName(), USE_SESSION.getName(), SECRET_KEY.getName(), CIPHER_ALGORITHM.getName(), PROXY_RECEPTOR_URL.getName(),
             PROXY_GRANTING_TICKET_STORAGE_CLASS.getName(), MILLIS_BETWEEN_CLEAN_UPS.getName(), ACCEPT_ANY_PROXY.getName(), ALLOWED_PROXY_CHAINS.getName(), TICKET_VALIDATOR_CLASS.getName(),
-            PROXY_CALLBACK_URL.getName(), RELAY_STATE_PARAMETER_NAME.getName(), METHOD.getName(), PRIVATE_KEY_PATH.getName(), PRIVATE_KEY_ALGORITHM.getName()
+            PROXY_CALLBACK_URL.getName(), RELAY_STATE_PARAMETER_NAME.getName(), METHOD.getName(), PRIVATE_KEY_PATH.getName(), PRIVATE_KEY_ALGORITHM.getName(),
+            CONNECTION_POOL_MAX_PER_HOST.getName(), CONNECTION_POOL_ACQUIRE_TIMEOUT.getName(),
+            MAX_RESPONSE_SIZE.getName(), STREAM_VALIDATION_RESPONSE.getName(),
+            ASYNC_VALIDATION.getName(), ASYNC_VALIDATION_THREADS.getName(), ASYNC_VALIDATION_QUEUE_SIZE.getName(),
+            BULKHEAD_MAX_CONCURRENT_CALLS.getName(), BULKHEAD_ACQUIRE_TIMEOUT.getName(),
+            CIRCUIT_BREAKER_FAILURE_THRESHOLD.getName(), CIRCUIT_BREAKER_OPEN_DURATION.getName(),
+            CAS_SERVER_URL_PREFIXES.getName(), SERVER_SELECTION_POLICY.getName(), SERVER_EJECTION_FAILURE_THRESHOLD.getName(),
+            SERVER_EJECTION_TIME.getName(), SERVER_SLOW_CALL_THRESHOLD.getName(),
+            REQUEST_DEADLINE.getName(), URL_CONNECTION_FACTORY_CLASS.getName(), ACCEPT_COMPRESSED_RESPONSE.getName(),
+            COALESCE_TICKET_VALIDATION.getName(), COALESCED_VALIDATION_RETENTION.getName(), ATTRIBUTE_POOL_SIZE.getName(), LAZY_ATTRIBUTES.getName(),
+            ALLOWED_ATTRIBUTES.getName(), DENIED_ATTRIBUTES.getName(), MAX_ATTRIBUTE_VALUES.getName()
     };
 
     /**
@@ -181,13 +191,23 @@ public class Cas20ProxyReceivingTicketValidationFilter extends AbstractTicketVal
         validator.setProxyCallbackUrl(getString(ConfigurationKeys.PROXY_CALLBACK_URL));
         validator.setProxyGrantingTicketStorage(this.proxyGrantingTicketStorage);
 
-        final HttpURLConnectionFactory factory = new HttpsURLConnectionFactory(getHostnameVerifier(),
-                getSSLConfig());
+        final HttpURLConnectionFactory factory = getURLConnectionFactory();
         validator.setURLConnectionFactory(factory);
 
-        validator.setProxyRetriever(new Cas20ProxyRetriever(casServerUrlPrefix, getString(ConfigurationKeys.ENCODING), factory));
+        final ServerCallGuard guard = getServerCallGuard();
+        validator.setServerCallGuard(guard);
+        validator.setCasServerPool(getCasServerPool());
+
+        validator.setProxyRetriever(new Cas20ProxyRetriever(casServerUrlPrefix, getString(ConfigurationKeys.ENCODING),
+                factory, guard));
         validator.setRenew(getBoolean(ConfigurationKeys.RENEW));
         validator.setEncoding(getString(ConfigurationKeys.ENCODING));
+        validator.setMaxResponseSize(getLong(ConfigurationKeys.MAX_RESPONSE_SIZE));
+        validator.setAcceptCompressedResponse(getBoolean(ConfigurationKeys.ACCEPT_COMPRESSED_RESPONSE));
+        validator.setStreamResponse(getBoolean(ConfigurationKeys.STREAM_VALIDATION_RESPONSE));
+        validator.setLazyAttributes(getBoolean(ConfigurationKeys.LAZY_ATTRIBUTES));
+        validator.setAttributeFilter(getAttributeFilter());
+        validator.setAttributeValuePool(getAttributeValuePool());
 
         final Map<String, String> additionalParameters = new HashMap<String, String>();
         final List<String> params = Arrays.asList(RESERVED_INIT_PARAMS);
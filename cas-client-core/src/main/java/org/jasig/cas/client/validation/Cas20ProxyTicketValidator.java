@@ -20,7 +20,6 @@ package org.jasig.cas.client.validation;
 
 import java.util.Arrays;
 import java.util.List;
-import org.jasig.cas.client.util.XmlUtils;
 
 /**
  * Extension to the traditional Service Ticket validation that will validate service tickets and proxy tickets.
@@ -54,8 +53,16 @@ public class Cas20ProxyTicketValidator extends Cas20ServiceTicketValidator {
     @Override
     protected void customParseResponse(final String response, final Assertion assertion)
             throws TicketValidationException {
-        final List<String> proxies = parseProxiesFromResponse(response);
+        validateProxyChain(parseProxiesFromResponse(response));
+    }
+
+    @Override
+    protected void customParseResponse(final Cas20ServiceResponse response, final Assertion assertion)
+            throws TicketValidationException {
+        validateProxyChain(response.getProxies());
+    }
 
+    private void validateProxyChain(final List<String> proxies) throws TicketValidationException {
         if (proxies == null) {
             throw new InvalidProxyChainTicketValidationException(
                     "Invalid proxy chain: No proxy could be retrieved from response. "
@@ -88,7 +95,8 @@ public class Cas20ProxyTicketValidator extends Cas20ServiceTicketValidator {
     }
 
     protected List<String> parseProxiesFromResponse(final String response) {
-        return XmlUtils.getTextForElements(response, "proxy");
+        final Cas20ServiceResponse parsed = getParsedResponse(response);
+        return parsed == null ? null : parsed.getProxies();
     }
 
     public final void setAcceptAnyProxy(final boolean acceptAnyProxy) {
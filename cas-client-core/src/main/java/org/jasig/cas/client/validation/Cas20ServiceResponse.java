@@ -0,0 +1,283 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.jasig.cas.client.authentication.AttributeFilter;
+import org.jasig.cas.client.authentication.AttributeValuePool;
+import org.jasig.cas.client.authentication.CompactAttributeMap;
+import org.jasig.cas.client.authentication.LazyAttributeMap;
+import org.jasig.cas.client.util.XmlUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The content of a CAS 2.0/3.0 <code>serviceResponse</code>, extracted in a single pass over the XML.
+ * <p>
+ * Elements are matched by local name regardless of namespace, the same way
+ * {@link XmlUtils#getTextForElement(String, String)} matches them.
+ *
+ * @since 3.6.2
+ */
+public final class Cas20ServiceResponse {
+
+    private final String authenticationFailure;
+
+    private final String authenticationFailureCode;
+
+    private final String user;
+
+    private final List<String> proxyGrantingTickets;
+
+    private final Map<String, Object> attributes;
+
+    private final Map<String, Object> inlineAttributes;
+
+    private final List<String> proxies;
+
+    private Cas20ServiceResponse(final Handler handler) {
+        this.authenticationFailure = handler.authenticationFailure.toString();
+        this.authenticationFailureCode = handler.authenticationFailureCode;
+        this.user = handler.user.toString();
+        this.proxyGrantingTickets = handler.proxyGrantingTickets;
+        if (handler.encodedAttributes != null) {
+            this.attributes = handler.encodedAttributes.build();
+            this.inlineAttributes = handler.encodedInlineAttributes.build();
+        } else {
+            this.attributes = handler.attributes.build();
+            this.inlineAttributes = handler.inlineAttributes.build();
+        }
+        this.proxies = handler.proxies;
+    }
+
+    /**
+     * Parses a CAS <code>serviceResponse</code>. The input is read exactly once.
+     *
+     * @param source the XML to parse.
+     * @return the parsed response.
+     * @throws TicketValidationException if the XML cannot be parsed.
+     */
+    public static Cas20ServiceResponse parse(final InputSource source) throws TicketValidationException {
+        return parse(source, false, AttributeFilter.ACCEPT_ALL, AttributeValuePool.getDefault());
+    }
+
+    /**
+     * Parses a CAS <code>serviceResponse</code>. The input is read exactly once.
+     *
+     * @param source the XML to parse.
+     * @param lazyAttributes whether attributes are kept encoded in a {@link LazyAttributeMap} until they are read.
+     * @param filter the attributes and values to keep; the text of the others is never turned into a String.
+     * @return the parsed response.
+     * @throws TicketValidationException if the XML cannot be parsed.
+     */
+    public static Cas20ServiceResponse parse(final InputSource source, final boolean lazyAttributes,
+                                             final AttributeFilter filter) throws TicketValidationException {
+        return parse(source, lazyAttributes, filter, AttributeValuePool.getDefault());
+    }
+
+    /**
+     * Parses a CAS <code>serviceResponse</code>. The input is read exactly once.
+     *
+     * @param source the XML to parse.
+     * @param lazyAttributes whether attributes are kept encoded in a {@link LazyAttributeMap} until they are read.
+     * @param filter the attributes and values to keep; the text of the others is never turned into a String.
+     * @param pool the pool to canonicalise attribute names and values through; null not to pool them.
+     * @return the parsed response.
+     * @throws TicketValidationException if the XML cannot be parsed.
+     */
+    public static Cas20ServiceResponse parse(final InputSource source, final boolean lazyAttributes,
+                                             final AttributeFilter filter, final AttributeValuePool pool)
+            throws TicketValidationException {
+        final Handler handler = new Handler(lazyAttributes, filter, pool);
+        try {
+            XmlUtils.parse(source, handler);
+        } catch (final IOException e) {
+            throw new CasServerUnavailableException("Unable to read the response from the CAS server.", e);
+        } catch (final Exception e) {
+            throw new CasServerUnavailableException("Unable to parse the response from the CAS server.", e);
+        }
+        return new Cas20ServiceResponse(handler);
+    }
+
+    /**
+     * @return the text of the <code>authenticationFailure</code> element, or an empty string if there is none.
+     */
+    public String getAuthenticationFailure() {
+        return this.authenticationFailure;
+    }
+
+    /**
+     * @return the <code>code</code> attribute of the <code>authenticationFailure</code> element, or null.
+     */
+    public String getAuthenticationFailureCode() {
+        return this.authenticationFailureCode;
+    }
+
+    /**
+     * @return the text of the <code>user</code> element, or an empty string if there is none.
+     */
+    public String getUser() {
+        return this.user;
+    }
+
+    /**
+     * @return the text of every <code>proxyGrantingTicket</code> element in document order: either a PGT IOU or
+     * an encrypted proxy granting ticket released as an attribute.
+     */
+    public List<String> getProxyGrantingTickets() {
+        return this.proxyGrantingTickets;
+    }
+
+    /**
+     * @return the children of the <code>attributes</code> element, keyed by local name. Repeated attributes are
+     * collected into a {@link List}. The map is an immutable {@link CompactAttributeMap}, or a
+     * {@link LazyAttributeMap} if the response was parsed with lazy attributes.
+     */
+    public Map<String, Object> getAttributes() {
+        return this.attributes;
+    }
+
+    /**
+     * @return attributes released inline as <code>&lt;cas:attribute name="..." value="..."/&gt;</code>; empty
+     * if the response has none.
+     */
+    public Map<String, Object> getInlineAttributes() {
+        return this.inlineAttributes;
+    }
+
+    /**
+     * @return the text of every <code>proxy</code> element in document order.
+     */
+    public List<String> getProxies() {
+        return this.proxies;
+    }
+
+    private static final class Handler extends DefaultHandler {
+
+        private final StringBuilder authenticationFailure = new StringBuilder();
+
+        private String authenticationFailureCode;
+
+        private final StringBuilder user = new StringBuilder();
+
+        private final List<String> proxyGrantingTickets = new ArrayList<String>(2);
+
+        private final CompactAttributeMap.Builder attributes;
+
+        private final CompactAttributeMap.Builder inlineAttributes;
+
+        private final LazyAttributeMap.Encoder encodedAttributes;
+
+        private final LazyAttributeMap.Encoder encodedInlineAttributes;
+
+        private final List<String> proxies = new ArrayList<String>(2);
+
+        private final StringBuilder text = new StringBuilder();
+
+        private StringBuilder target;
+
+        private boolean foundAttributes;
+
+        private String currentAttribute;
+
+        Handler(final boolean lazyAttributes, final AttributeFilter filter, final AttributeValuePool pool) {
+            this.attributes = lazyAttributes ? null : CompactAttributeMap.builder(pool).filter(filter);
+            this.inlineAttributes = lazyAttributes ? null : CompactAttributeMap.builder(pool).filter(filter);
+            this.encodedAttributes = lazyAttributes ? LazyAttributeMap.encoder().filter(filter).pool(pool) : null;
+            this.encodedInlineAttributes = lazyAttributes ? LazyAttributeMap.encoder().filter(filter).pool(pool)
+                    : null;
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName,
+                                 final Attributes atts) throws SAXException {
+            this.target = null;
+            if ("cas:attribute".equals(qName) && atts.getValue("name") != null) {
+                if (this.encodedInlineAttributes != null) {
+                    this.encodedInlineAttributes.add(atts.getValue("name"), atts.getValue("value"));
+                } else {
+                    this.inlineAttributes.add(atts.getValue("name"), atts.getValue("value"));
+                }
+            }
+
+            if (this.foundAttributes) {
+                // released attributes may share a name with protocol elements, so only the (encrypted) PGT,
+                // which CAS 3.0 releases as an attribute, is taken from here
+                this.currentAttribute = acceptsAttribute(localName) ? localName : null;
+                if (this.currentAttribute != null || "proxyGrantingTicket".equals(localName)) {
+                    this.text.setLength(0);
+                    this.target = this.text;
+                }
+            } else if ("attributes".equals(localName)) {
+                this.foundAttributes = true;
+            } else if ("authenticationFailure".equals(localName)) {
+                this.authenticationFailureCode = atts.getValue("code");
+                this.target = this.authenticationFailure;
+            } else if ("user".equals(localName)) {
+                this.target = this.user;
+            } else if ("proxyGrantingTicket".equals(localName) || "proxy".equals(localName)) {
+                this.text.setLength(0);
+                this.target = this.text;
+            }
+        }
+
+        private boolean acceptsAttribute(final String name) {
+            return this.encodedAttributes != null ? this.encodedAttributes.accepts(name)
+                    : this.attributes.accepts(name);
+        }
+
+        @Override
+        public void characters(final char[] ch, final int start, final int length) throws SAXException {
+            if (this.target != null) {
+                this.target.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+            if ("attributes".equals(localName)) {
+                this.foundAttributes = false;
+                this.currentAttribute = null;
+            } else if (this.foundAttributes) {
+                if ("proxyGrantingTicket".equals(localName)) {
+                    this.proxyGrantingTickets.add(this.text.toString());
+                }
+                if (this.currentAttribute != null) {
+                    if (this.encodedAttributes != null) {
+                        this.encodedAttributes.add(this.currentAttribute, this.text);
+                    } else {
+                        this.attributes.add(this.currentAttribute, this.text.toString());
+                    }
+                    this.currentAttribute = null;
+                }
+            } else if ("proxyGrantingTicket".equals(localName)) {
+                this.proxyGrantingTickets.add(this.text.toString());
+            } else if ("proxy".equals(localName)) {
+                this.proxies.add(this.text.toString());
+            }
+            this.target = null;
+        }
+    }
+}
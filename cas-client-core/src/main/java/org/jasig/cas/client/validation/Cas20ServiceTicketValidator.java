@@ -18,26 +18,22 @@
  */
 package org.jasig.cas.client.validation;
 
+import java.io.InputStream;
 import java.io.StringReader;
 import java.security.PrivateKey;
 import java.util.*;
 import javax.crypto.Cipher;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.commons.codec.binary.Base64;
 import org.jasig.cas.client.authentication.AttributePrincipal;
 import org.jasig.cas.client.authentication.AttributePrincipalImpl;
+import org.jasig.cas.client.authentication.CompactAttributeMap;
+import org.jasig.cas.client.authentication.LazyAttributeMap;
 import org.jasig.cas.client.proxy.Cas20ProxyRetriever;
 import org.jasig.cas.client.proxy.ProxyGrantingTicketStorage;
 import org.jasig.cas.client.proxy.ProxyRetriever;
 import org.jasig.cas.client.util.CommonUtils;
-import org.jasig.cas.client.util.XmlUtils;
-import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
-import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * Implementation of the TicketValidator that will validate Service Tickets in compliance with the CAS 2.
@@ -50,6 +46,12 @@ public class Cas20ServiceTicketValidator extends AbstractCasProtocolUrlBasedTick
     public static final String PGT_ATTRIBUTE = "proxyGrantingTicket";
     private static final String PGTIOU_PREFIX = "PGTIOU-";
 
+    /**
+     * The response being handled by {@link #parseResponseFromServer(String)} on the current thread, so that the
+     * String-based template methods share a single parse of it.
+     */
+    private static final ThreadLocal<ParsedResponse> CURRENT_RESPONSE = new ThreadLocal<ParsedResponse>();
+
     /** The CAS 2.0 protocol proxy callback url. */
     private String proxyCallbackUrl;
 
@@ -62,6 +64,9 @@ public class Cas20ServiceTicketValidator extends AbstractCasProtocolUrlBasedTick
     /** Private key for decryption */
     private PrivateKey privateKey;
 
+    /** Whether attributes are kept encoded until the application reads them. */
+    private boolean lazyAttributes;
+
     /**
      * Constructs an instance of the CAS 2.0 Service Ticket Validator with the supplied
      * CAS server url prefix.
@@ -88,8 +93,26 @@ public class Cas20ServiceTicketValidator extends AbstractCasProtocolUrlBasedTick
         return "serviceValidate";
     }
 
+    /**
+     * Builds the assertion through the String-based template methods, which by default are views over a single
+     * {@link Cas20ServiceResponse} parse of the response.
+     */
     @Override
     protected Assertion parseResponseFromServer(final String response) throws TicketValidationException {
+        final ParsedResponse previous = CURRENT_RESPONSE.get();
+        CURRENT_RESPONSE.set(new ParsedResponse(response));
+        try {
+            return parseResponseWithTemplateMethods(response);
+        } finally {
+            if (previous == null) {
+                CURRENT_RESPONSE.remove();
+            } else {
+                CURRENT_RESPONSE.set(previous);
+            }
+        }
+    }
+
+    private Assertion parseResponseWithTemplateMethods(final String response) throws TicketValidationException {
         final String error = parseAuthenticationFailureFromResponse(response);
 
         if (CommonUtils.isNotBlank(error)) {
@@ -103,24 +126,100 @@ public class Cas20ServiceTicketValidator extends AbstractCasProtocolUrlBasedTick
             throw new TicketValidationException("No principal was found in the response from the CAS server.");
         }
 
-        final Assertion assertion;
-        final Map<String, Object> attributes = extractCustomAttributes(response);
-        if (CommonUtils.isNotBlank(proxyGrantingTicket)) {
-            attributes.remove(PGT_ATTRIBUTE);
-            final AttributePrincipal attributePrincipal = new AttributePrincipalImpl(principal, attributes,
-                    proxyGrantingTicket, this.proxyRetriever);
-            assertion = new AssertionImpl(attributePrincipal);
-        } else {
-            assertion = new AssertionImpl(new AttributePrincipalImpl(principal, attributes));
+        final Assertion assertion = buildAssertion(principal, extractCustomAttributes(response), proxyGrantingTicket);
+
+        customParseResponse(response, assertion);
+
+        return assertion;
+    }
+
+    /**
+     * Parses the response in a single pass as it is read from the server.  Subclasses that customize the
+     * String-based template methods should override this method too, or leave streaming disabled.
+     */
+    @Override
+    protected Assertion parseResponseFromServer(final InputStream response) throws TicketValidationException {
+        final InputSource source = new InputSource(response);
+        if (CommonUtils.isNotEmpty(getEncoding())) {
+            source.setEncoding(getEncoding());
         }
+        return parseResponseFromServer(Cas20ServiceResponse.parse(source, this.lazyAttributes, getAttributeFilter(),
+                getAttributeValuePool()));
+    }
+
+    /**
+     * Builds the assertion from an already parsed response.
+     *
+     * @param response the parsed response from the CAS server.
+     * @return the CAS assertion.
+     * @throws TicketValidationException if an Assertion could not be created.
+     */
+    protected Assertion parseResponseFromServer(final Cas20ServiceResponse response)
+            throws TicketValidationException {
+        if (CommonUtils.isNotBlank(response.getAuthenticationFailure())) {
+            throw new TicketValidationException(response.getAuthenticationFailure());
+        }
+
+        final String principal = response.getUser();
+        final String proxyGrantingTicket = retrieveProxyGrantingTicket(response.getProxyGrantingTickets());
+
+        if (CommonUtils.isEmpty(principal)) {
+            throw new TicketValidationException("No principal was found in the response from the CAS server.");
+        }
+
+        final Assertion assertion = buildAssertion(principal, extractCustomAttributes(response), proxyGrantingTicket);
 
         customParseResponse(response, assertion);
 
         return assertion;
     }
 
+    private Assertion buildAssertion(final String principal, final Map<String, Object> attributes,
+                                     final String proxyGrantingTicket) {
+        if (CommonUtils.isNotBlank(proxyGrantingTicket)) {
+            final Map<String, Object> retained = attributes instanceof LazyAttributeMap
+                    ? ((LazyAttributeMap) attributes).without(PGT_ATTRIBUTE)
+                    : CompactAttributeMap.copyOf(attributes, getAttributeValuePool()).without(PGT_ATTRIBUTE);
+            final AttributePrincipal attributePrincipal = new AttributePrincipalImpl(principal, retained,
+                    proxyGrantingTicket, this.proxyRetriever);
+            return new AssertionImpl(attributePrincipal);
+        }
+        final Map<String, Object> retained = attributes instanceof LazyAttributeMap ? attributes
+                : CompactAttributeMap.copyOf(attributes, getAttributeValuePool());
+        return new AssertionImpl(new AttributePrincipalImpl(principal, retained));
+    }
+
+    /**
+     * Gets the single-pass model of a response.  While {@link #parseResponseFromServer(String)} is running, the
+     * response it is handling is parsed only once, however many template methods ask for it.
+     *
+     * @param response the response from the CAS server.
+     * @return the parsed response, or null if it is not well-formed XML.
+     */
+    protected final Cas20ServiceResponse getParsedResponse(final String response) {
+        final ParsedResponse current = CURRENT_RESPONSE.get();
+        if (current != null && current.xml == response) {
+            return current.get();
+        }
+        return parseQuietly(response);
+    }
+
+    private Cas20ServiceResponse parseQuietly(final String response) {
+        try {
+            return Cas20ServiceResponse.parse(new InputSource(new StringReader(response)), this.lazyAttributes,
+                    getAttributeFilter(), getAttributeValuePool());
+        } catch (final TicketValidationException e) {
+            logger.error(e.getMessage(), e);
+            return null;
+        }
+    }
+
     protected String retrieveProxyGrantingTicket(final String response) {
-        final List<String> values = XmlUtils.getTextForElements(response, PGT_ATTRIBUTE);
+        final Cas20ServiceResponse parsed = getParsedResponse(response);
+        return parsed == null ? null : retrieveProxyGrantingTicket(parsed.getProxyGrantingTickets());
+    }
+
+    private String retrieveProxyGrantingTicket(final List<String> values) {
         for (final String value : values) {
             if (value != null) {
                 if (value.startsWith(PGTIOU_PREFIX)) {
@@ -158,11 +257,13 @@ public class Cas20ServiceTicketValidator extends AbstractCasProtocolUrlBasedTick
     }
 
     protected String parsePrincipalFromResponse(final String response) {
-        return XmlUtils.getTextForElement(response, "user");
+        final Cas20ServiceResponse parsed = getParsedResponse(response);
+        return parsed == null ? null : parsed.getUser();
     }
 
     protected String parseAuthenticationFailureFromResponse(final String response) {
-        return XmlUtils.getTextForElement(response, "authenticationFailure");
+        final Cas20ServiceResponse parsed = getParsedResponse(response);
+        return parsed == null ? null : parsed.getAuthenticationFailure();
     }
 
     /**
@@ -184,20 +285,21 @@ public class Cas20ServiceTicketValidator extends AbstractCasProtocolUrlBasedTick
      * @return the map of attributes.
      */
     protected Map<String, Object> extractCustomAttributes(final String xml) {
-        final SAXParserFactory spf = SAXParserFactory.newInstance();
-        spf.setNamespaceAware(true);
-        spf.setValidating(false);
-        try {
-            final SAXParser saxParser = spf.newSAXParser();
-            final XMLReader xmlReader = saxParser.getXMLReader();
-            final CustomAttributeHandler handler = new CustomAttributeHandler();
-            xmlReader.setContentHandler(handler);
-            xmlReader.parse(new InputSource(new StringReader(xml)));
-            return handler.getAttributes();
-        } catch (final Exception e) {
-            logger.error(e.getMessage(), e);
+        final Cas20ServiceResponse parsed = getParsedResponse(xml);
+        if (parsed == null) {
             return Collections.emptyMap();
         }
+        return extractCustomAttributes(parsed);
+    }
+
+    /**
+     * Attribute extraction for a response parsed by {@link Cas20ServiceResponse}.
+     *
+     * @param response the parsed response.
+     * @return the map of attributes.
+     */
+    protected Map<String, Object> extractCustomAttributes(final Cas20ServiceResponse response) {
+        return response.getAttributes();
     }
 
     /**
@@ -212,8 +314,21 @@ public class Cas20ServiceTicketValidator extends AbstractCasProtocolUrlBasedTick
         // nothing to do
     }
 
+    /**
+     * Template method if additional custom parsing (such as Proxying) needs to be done on a streamed response.
+     *
+     * @param response the parsed response from the CAS server.
+     * @param assertion the partially constructed assertion.
+     * @throws TicketValidationException if there is a problem constructing the Assertion.
+     */
+    protected void customParseResponse(final Cas20ServiceResponse response, final Assertion assertion)
+            throws TicketValidationException {
+        // nothing to do
+    }
+
     public final void setProxyCallbackUrl(final String proxyCallbackUrl) {
         this.proxyCallbackUrl = proxyCallbackUrl;
+        resetValidationUrl();
     }
 
     public final void setProxyGrantingTicketStorage(final ProxyGrantingTicketStorage proxyGrantingTicketStorage) {
@@ -236,67 +351,42 @@ public class Cas20ServiceTicketValidator extends AbstractCasProtocolUrlBasedTick
         return this.proxyRetriever;
     }
 
-    private class CustomAttributeHandler extends DefaultHandler {
-
-        private Map<String, Object> attributes;
+    /**
+     * A response and its single-pass model, parsed on first use.
+     */
+    private final class ParsedResponse {
 
-        private boolean foundAttributes;
+        private final String xml;
 
-        private String currentAttribute;
+        private boolean parsed;
 
-        private StringBuilder value;
+        private Cas20ServiceResponse response;
 
-        @Override
-        public void startDocument() throws SAXException {
-            this.attributes = new HashMap<String, Object>();
-        }
-
-        @Override
-        public void startElement(final String namespaceURI, final String localName, final String qName,
-                final Attributes attributes) throws SAXException {
-            if ("attributes".equals(localName)) {
-                this.foundAttributes = true;
-            } else if (this.foundAttributes) {
-                this.value = new StringBuilder();
-                this.currentAttribute = localName;
-            }
+        ParsedResponse(final String xml) {
+            this.xml = xml;
         }
 
-        @Override
-        public void characters(final char[] chars, final int start, final int length) throws SAXException {
-            if (this.currentAttribute != null) {
-                value.append(chars, start, length);
+        Cas20ServiceResponse get() {
+            if (!this.parsed) {
+                this.response = parseQuietly(this.xml);
+                this.parsed = true;
             }
+            return this.response;
         }
+    }
 
-        @Override
-        public void endElement(final String namespaceURI, final String localName, final String qName)
-                throws SAXException {
-            if ("attributes".equals(localName)) {
-                this.foundAttributes = false;
-                this.currentAttribute = null;
-            } else if (this.foundAttributes) {
-                final Object o = this.attributes.get(this.currentAttribute);
-
-                if (o == null) {
-                    this.attributes.put(this.currentAttribute, this.value.toString());
-                } else {
-                    final List<Object> items;
-                    if (o instanceof List) {
-                        items = (List<Object>) o;
-                    } else {
-                        items = new LinkedList<Object>();
-                        items.add(o);
-                        this.attributes.put(this.currentAttribute, items);
-                    }
-                    items.add(this.value.toString());
-                }
-            }
-        }
+    /**
+     * Sets whether the attributes of a response are kept as encoded bytes and only decoded when the application
+     * first reads them from the principal.  Defaults to false.
+     *
+     * @param lazyAttributes true to decode attributes on first access.
+     */
+    public final void setLazyAttributes(final boolean lazyAttributes) {
+        this.lazyAttributes = lazyAttributes;
+    }
 
-        public Map<String, Object> getAttributes() {
-            return this.attributes;
-        }
+    protected final boolean isLazyAttributes() {
+        return this.lazyAttributes;
     }
 
     public PrivateKey getPrivateKey() {
@@ -18,15 +18,6 @@
  */
 package org.jasig.cas.client.validation;
 
-import org.jasig.cas.client.util.XmlUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -50,41 +41,14 @@ public class Cas30ServiceTicketValidator extends Cas20ServiceTicketValidator {
      * Custom attribute extractor that will account for inlined CAS attributes.  Useful when CAS is acting as
      * as SAML 2 IdP and returns SAML attributes with names that contains namespaces.
      *
-     * @param xml the XML to parse.
+     * @param response the parsed response.
      * @return - Map of attributes
      */
     @Override
-    protected Map<String, Object> extractCustomAttributes(final String xml) {
-        final Document document = XmlUtils.newDocument(xml);
-
-        // Check if attributes are inlined.  If not return default super method results
-        final NodeList attributeList = document.getElementsByTagName("cas:attribute");
-        if (attributeList.getLength() == 0) {
-            return super.extractCustomAttributes(xml);
-        }
-
-        final HashMap<String, Object> attributes = new HashMap<String, Object>();
-
-        for (int i = 0; i < attributeList.getLength(); i++) {
-            final Node casAttributeNode = attributeList.item(i);
-            final NamedNodeMap nodeAttributes = casAttributeNode.getAttributes();
-            final String name = nodeAttributes.getNamedItem("name").getNodeValue();
-            final String value = nodeAttributes.getNamedItem("value").getTextContent();
-            final Object mapValue = attributes.get(name);
-            if (mapValue != null) {
-                if (mapValue instanceof List) {
-                    ((List) mapValue).add(value);
-                } else {
-                    final LinkedList<Object> list = new LinkedList<Object>();
-                    list.add(mapValue);
-                    list.add(value);
-                    attributes.put(name, list);
-                }
-            } else {
-                attributes.put(name, value);
-            }
+    protected Map<String, Object> extractCustomAttributes(final Cas20ServiceResponse response) {
+        if (response.getInlineAttributes().isEmpty()) {
+            return super.extractCustomAttributes(response);
         }
-        return attributes;
+        return response.getInlineAttributes();
     }
-
 }
@@ -0,0 +1,122 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A CAS server node in a {@link CasServerPool}, with the passive health and load statistics that
+ * {@link ServerSelectionPolicy} implementations choose from.
+ *
+ * @since 3.6.2
+ */
+public final class CasServerNode {
+
+    /** Weight of the most recent call in the latency moving average. */
+    private static final double EWMA_WEIGHT = 0.3;
+
+    /** Latency in milliseconds that a failed call counts as at least, so that failing fast does not look fast. */
+    private static final long FAILURE_PENALTY = 1000L;
+
+    private final String urlPrefix;
+
+    private final AtomicInteger outstandingRequests = new AtomicInteger();
+
+    private volatile double latencyEwma;
+
+    private volatile long completedCalls;
+
+    private volatile long ejectedUntil;
+
+    private int consecutiveFailures;
+
+    CasServerNode(final String urlPrefix) {
+        this.urlPrefix = urlPrefix;
+    }
+
+    /**
+     * @return the URL prefix of the node, ending with a slash.
+     */
+    public String getUrlPrefix() {
+        return this.urlPrefix;
+    }
+
+    /**
+     * @return the number of calls to this node currently in flight.
+     */
+    public int getOutstandingRequests() {
+        return this.outstandingRequests.get();
+    }
+
+    /**
+     * @return the exponentially weighted moving average of call latency in milliseconds, in which a failed call
+     * counts as taking at least one second, or 0 if no call has completed yet.
+     */
+    public double getLatencyEwma() {
+        return this.latencyEwma;
+    }
+
+    /**
+     * @return the number of calls to this node that have completed, successfully or not.
+     */
+    public long getCompletedCalls() {
+        return this.completedCalls;
+    }
+
+    /**
+     * @param now the current time in milliseconds.
+     * @return true if the node is currently ejected from selection.
+     */
+    public boolean isEjected(final long now) {
+        return now < this.ejectedUntil;
+    }
+
+    void begin() {
+        this.outstandingRequests.incrementAndGet();
+    }
+
+    void cancel() {
+        this.outstandingRequests.decrementAndGet();
+    }
+
+    /**
+     * Records the outcome of a call.
+     *
+     * @return the number of consecutive failures, including this call.
+     */
+    synchronized int complete(final long latency, final boolean succeeded) {
+        this.outstandingRequests.decrementAndGet();
+        final double sample = succeeded ? latency : Math.max(latency, FAILURE_PENALTY);
+        this.latencyEwma = this.completedCalls == 0 ? sample
+                : EWMA_WEIGHT * sample + (1 - EWMA_WEIGHT) * this.latencyEwma;
+        this.completedCalls++;
+        this.consecutiveFailures = succeeded ? 0 : this.consecutiveFailures + 1;
+        return this.consecutiveFailures;
+    }
+
+    synchronized void eject(final long until) {
+        this.ejectedUntil = until;
+        this.consecutiveFailures = 0;
+    }
+
+    @Override
+    public String toString() {
+        return this.urlPrefix;
+    }
+}
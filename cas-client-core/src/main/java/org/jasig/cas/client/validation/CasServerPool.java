@@ -0,0 +1,163 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.jasig.cas.client.util.CommonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A set of CAS server nodes sharing a ticket registry, any of which can validate a ticket.
+ * <p>
+ * Each call is sent to the node chosen by the configured {@link ServerSelectionPolicy}.  Nodes are tracked
+ * passively: a node whose calls fail {@link #setEjectionFailureThreshold(int)} times in a row is ejected from
+ * selection for {@link #setEjectionTime(long)} milliseconds.  A call slower than
+ * {@link #setSlowCallThreshold(long)} counts as a failure.  If every node is ejected, all of them are eligible
+ * again so that requests are never refused outright.
+ *
+ * @since 3.6.2
+ */
+public final class CasServerPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CasServerPool.class);
+
+    public static final int DEFAULT_EJECTION_FAILURE_THRESHOLD = 3;
+
+    public static final long DEFAULT_EJECTION_TIME = 30000L;
+
+    private final List<CasServerNode> nodes;
+
+    private final ServerSelectionPolicy policy;
+
+    private int ejectionFailureThreshold = DEFAULT_EJECTION_FAILURE_THRESHOLD;
+
+    private long ejectionTime = DEFAULT_EJECTION_TIME;
+
+    private long slowCallThreshold;
+
+    /**
+     * Creates a pool.
+     *
+     * @param urlPrefixes the URL prefixes of the nodes.
+     * @param policy the node selection policy.
+     */
+    public CasServerPool(final List<String> urlPrefixes, final ServerSelectionPolicy policy) {
+        CommonUtils.assertTrue(urlPrefixes != null && !urlPrefixes.isEmpty(), "urlPrefixes cannot be empty.");
+        CommonUtils.assertNotNull(policy, "policy cannot be null.");
+        final List<CasServerNode> list = new ArrayList<CasServerNode>(urlPrefixes.size());
+        for (final String urlPrefix : urlPrefixes) {
+            list.add(new CasServerNode(CommonUtils.addTrailingSlash(urlPrefix)));
+        }
+        this.nodes = Collections.unmodifiableList(list);
+        this.policy = policy;
+    }
+
+    /**
+     * Chooses the node for the next call and counts the call as outstanding on it.  Every call to this method
+     * must be matched by a call to {@link #release(CasServerNode, long, boolean)} or
+     * {@link #cancel(CasServerNode)}.
+     *
+     * @return the chosen node.
+     */
+    public CasServerNode select() {
+        final long now = System.currentTimeMillis();
+        List<CasServerNode> candidates = this.nodes;
+        for (final CasServerNode node : this.nodes) {
+            if (node.isEjected(now)) {
+                candidates = new ArrayList<CasServerNode>(this.nodes.size());
+                for (final CasServerNode n : this.nodes) {
+                    if (!n.isEjected(now)) {
+                        candidates.add(n);
+                    }
+                }
+                if (candidates.isEmpty()) {
+                    candidates = this.nodes;
+                }
+                break;
+            }
+        }
+        final CasServerNode node = candidates.size() == 1 ? candidates.get(0) : this.policy.select(candidates);
+        node.begin();
+        return node;
+    }
+
+    /**
+     * Records the outcome of a call to a node.
+     *
+     * @param node the node returned by {@link #select()}.
+     * @param latency the duration of the call in milliseconds.
+     * @param succeeded true if the node answered, false if the call failed.
+     */
+    public void release(final CasServerNode node, final long latency, final boolean succeeded) {
+        final boolean failed = !succeeded || (this.slowCallThreshold > 0 && latency > this.slowCallThreshold);
+        final int failures = node.complete(latency, !failed);
+        if (failed && this.ejectionFailureThreshold > 0 && failures >= this.ejectionFailureThreshold
+                && this.nodes.size() > 1) {
+            LOGGER.warn("Ejecting CAS server {} for {} ms after {} consecutive failed or slow calls", node,
+                    this.ejectionTime, failures);
+            node.eject(System.currentTimeMillis() + this.ejectionTime);
+        }
+    }
+
+    /**
+     * Releases a node whose call was refused before it was sent, without recording an outcome.
+     *
+     * @param node the node returned by {@link #select()}.
+     */
+    public void cancel(final CasServerNode node) {
+        node.cancel();
+    }
+
+    /**
+     * @return the nodes of the pool.
+     */
+    public List<CasServerNode> getNodes() {
+        return this.nodes;
+    }
+
+    public ServerSelectionPolicy getPolicy() {
+        return this.policy;
+    }
+
+    /**
+     * Sets the number of consecutive failed or slow calls that eject a node.  Zero or less disables ejection.
+     *
+     * @param ejectionFailureThreshold the number of calls.
+     */
+    public void setEjectionFailureThreshold(final int ejectionFailureThreshold) {
+        this.ejectionFailureThreshold = ejectionFailureThreshold;
+    }
+
+    public void setEjectionTime(final long ejectionTime) {
+        this.ejectionTime = ejectionTime;
+    }
+
+    /**
+     * Sets the latency in milliseconds above which a call counts as failed for ejection purposes.  Zero (the
+     * default) disables it.
+     *
+     * @param slowCallThreshold the latency in milliseconds.
+     */
+    public void setSlowCallThreshold(final long slowCallThreshold) {
+        this.slowCallThreshold = slowCallThreshold;
+    }
+}
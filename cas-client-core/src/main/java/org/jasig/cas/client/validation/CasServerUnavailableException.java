@@ -0,0 +1,39 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+/**
+ * Thrown when a ticket could not be validated because no usable answer came from the CAS server: the server could
+ * not be reached, failed or timed out while answering, sent something other than a CAS response, or the call was
+ * refused locally.  Unlike its superclass, it says nothing about the ticket itself.
+ *
+ * @since 3.6.2
+ */
+public class CasServerUnavailableException extends TicketValidationException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CasServerUnavailableException(final String string) {
+        super(string);
+    }
+
+    public CasServerUnavailableException(final String string, final Throwable throwable) {
+        super(string, throwable);
+    }
+}
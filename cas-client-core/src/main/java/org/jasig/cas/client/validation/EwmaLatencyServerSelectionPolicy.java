@@ -0,0 +1,58 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends requests to the node with the lowest expected wait: its moving average latency scaled by the number of
+ * calls already in flight.  An idle node that has not completed a call yet is preferred so that every node gets
+ * measured; while that first call is in flight the node is only chosen if no measured node is available.
+ *
+ * @since 3.6.2
+ */
+public final class EwmaLatencyServerSelectionPolicy implements ServerSelectionPolicy {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Override
+    public CasServerNode select(final List<CasServerNode> nodes) {
+        final int size = nodes.size();
+        final int start = (this.next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        CasServerNode best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            final CasServerNode node = nodes.get((start + i) % size);
+            final double cost;
+            if (node.getCompletedCalls() > 0) {
+                cost = node.getLatencyEwma() * (node.getOutstandingRequests() + 1);
+            } else if (node.getOutstandingRequests() == 0) {
+                return node;
+            } else {
+                cost = Double.MAX_VALUE / 2;
+            }
+            if (cost < bestCost) {
+                best = node;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+}
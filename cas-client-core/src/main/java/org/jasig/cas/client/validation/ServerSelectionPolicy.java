@@ -0,0 +1,38 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+import java.util.List;
+
+/**
+ * Strategy choosing which node of a {@link CasServerPool} receives the next validation request.
+ * Implementations must be thread-safe.
+ *
+ * @since 3.6.2
+ */
+public interface ServerSelectionPolicy {
+
+    /**
+     * Chooses a node.
+     *
+     * @param nodes the healthy nodes to choose from; never empty.
+     * @return one of the given nodes.
+     */
+    CasServerNode select(List<CasServerNode> nodes);
+}
@@ -0,0 +1,293 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import org.jasig.cas.client.util.CommonUtils;
+import org.jasig.cas.client.util.Deadline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link TicketValidator} that coalesces concurrent validations of the same ticket for the same service into a
+ * single call to the CAS server.  Callers arriving while a validation is in flight wait for it and share its
+ * {@link Assertion} or {@link TicketValidationException}, so a double-submitted ticket no longer fails the second
+ * request with <code>INVALID_TICKET</code>.
+ * <p>
+ * Results are kept for a short retention window after the call completes, covering requests that arrive just
+ * after the first one finished.  Within that window a ticket can be presented more than once, so keep the window
+ * short.  Only assertions and rejections of the ticket by the CAS server are retained; a
+ * {@link CasServerUnavailableException} or any other failure is shared with the callers already waiting, but the
+ * next caller makes a fresh call.
+ *
+ * @since 3.6.2
+ */
+public final class SingleFlightTicketValidator implements AsyncTicketValidator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SingleFlightTicketValidator.class);
+
+    public static final long DEFAULT_RETENTION = 2000L;
+
+    private final TicketValidator delegate;
+
+    private final long retention;
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+    /** {@link System#nanoTime()} after which the next new flight sweeps expired results. */
+    private final AtomicLong nextPurge = new AtomicLong(System.nanoTime());
+
+    public SingleFlightTicketValidator(final TicketValidator delegate) {
+        this(delegate, DEFAULT_RETENTION);
+    }
+
+    /**
+     * @param delegate the validator performing the calls to the CAS server.
+     * @param retention the time in milliseconds a completed result is shared with later callers; zero or less
+     *                  shares results only with callers that arrive while the call is in flight.
+     */
+    public SingleFlightTicketValidator(final TicketValidator delegate, final long retention) {
+        CommonUtils.assertNotNull(delegate, "delegate cannot be null.");
+        this.delegate = delegate;
+        this.retention = retention;
+    }
+
+    @Override
+    public Assertion validate(final String ticket, final String service) throws TicketValidationException {
+        final String key = key(ticket, service);
+        final Flight flight = new Flight();
+        final Flight existing = join(key, service, flight);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            final Assertion assertion = this.delegate.validate(ticket, service);
+            land(key, flight, assertion, null);
+            return assertion;
+        } catch (final TicketValidationException e) {
+            land(key, flight, null, e);
+            throw e;
+        } catch (final RuntimeException e) {
+            land(key, flight, null, e);
+            throw e;
+        } catch (final Error e) {
+            land(key, flight, null, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Assertion> validateAsync(final String ticket, final String service,
+                                                      final Executor executor) {
+        final String key = key(ticket, service);
+        final Flight flight = new Flight();
+        final Flight existing = join(key, service, flight);
+        if (existing != null) {
+            return share(existing.result);
+        }
+
+        final CompletableFuture<Assertion> call = this.delegate instanceof AsyncTicketValidator
+                ? ((AsyncTicketValidator) this.delegate).validateAsync(ticket, service, executor)
+                : validateOn(executor, ticket, service);
+        call.whenComplete(new BiConsumer<Assertion, Throwable>() {
+            @Override
+            public void accept(final Assertion assertion, final Throwable throwable) {
+                land(key, flight, assertion, throwable);
+            }
+        });
+        return share(flight.result);
+    }
+
+    /**
+     * @return the number of validations in flight or retained.
+     */
+    public int getFlightCount() {
+        return this.flights.size();
+    }
+
+    public TicketValidator getDelegate() {
+        return this.delegate;
+    }
+
+    public long getRetention() {
+        return this.retention;
+    }
+
+    /**
+     * Registers the flight for the key, unless a live one exists.
+     *
+     * @return the live flight to wait for, or null if the caller owns the given flight and must make the call.
+     */
+    private Flight join(final String key, final String service, final Flight flight) {
+        while (true) {
+            final Flight existing = this.flights.putIfAbsent(key, flight);
+            if (existing == null) {
+                purgeExpiredPeriodically();
+                return null;
+            }
+            if (!existing.isExpired()) {
+                LOGGER.debug("Sharing validation of ticket for service [{}]", service);
+                return existing;
+            }
+            this.flights.remove(key, existing);
+        }
+    }
+
+    private void land(final String key, final Flight flight, final Assertion assertion, final Throwable throwable) {
+        final boolean retain = this.retention > 0 && isAnswer(throwable);
+        if (retain) {
+            flight.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.retention);
+        } else {
+            this.flights.remove(key, flight);
+        }
+        if (throwable == null) {
+            flight.result.complete(assertion);
+        } else {
+            flight.result.completeExceptionally(throwable);
+        }
+    }
+
+    /**
+     * @return true if the outcome is the CAS server's verdict on the ticket, rather than a failure to get one.
+     */
+    private static boolean isAnswer(final Throwable throwable) {
+        return throwable == null || throwable instanceof TicketValidationException
+                && !(throwable instanceof CasServerUnavailableException);
+    }
+
+    /**
+     * Sweeps expired results at most once per retention window, so that the cost of the sweep is spread over all
+     * the flights started in that window.
+     */
+    private void purgeExpiredPeriodically() {
+        final long now = System.nanoTime();
+        final long next = this.nextPurge.get();
+        if (now - next >= 0 && this.nextPurge.compareAndSet(next,
+                now + TimeUnit.MILLISECONDS.toNanos(Math.max(this.retention, 0)))) {
+            purgeExpired();
+        }
+    }
+
+    private void purgeExpired() {
+        for (final Iterator<Flight> i = this.flights.values().iterator(); i.hasNext();) {
+            if (i.next().isExpired()) {
+                i.remove();
+            }
+        }
+    }
+
+    private static Assertion await(final Flight flight) throws TicketValidationException {
+        try {
+            final Deadline deadline = Deadline.getCurrent();
+            return deadline == null ? flight.result.get()
+                    : flight.result.get(deadline.getRemaining(), TimeUnit.MILLISECONDS);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof TicketValidationException) {
+                throw (TicketValidationException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new TicketValidationException(cause);
+        } catch (final TimeoutException e) {
+            throw new CasServerUnavailableException("Deadline exceeded while waiting for ticket validation.", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TicketValidationException("Interrupted while waiting for ticket validation.", e);
+        }
+    }
+
+    /**
+     * Gives each caller its own future, so that completing or cancelling it does not affect the shared result.
+     */
+    private static CompletableFuture<Assertion> share(final CompletableFuture<Assertion> result) {
+        final CompletableFuture<Assertion> future = new CompletableFuture<Assertion>();
+        result.whenComplete(new BiConsumer<Assertion, Throwable>() {
+            @Override
+            public void accept(final Assertion assertion, final Throwable throwable) {
+                if (throwable == null) {
+                    future.complete(assertion);
+                } else {
+                    future.completeExceptionally(throwable);
+                }
+            }
+        });
+        return future;
+    }
+
+    private CompletableFuture<Assertion> validateOn(final Executor executor, final String ticket,
+                                                    final String service) {
+        final CompletableFuture<Assertion> future = new CompletableFuture<Assertion>();
+        final Deadline deadline = Deadline.getCurrent();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Deadline previous = Deadline.getCurrent();
+                    Deadline.setCurrent(deadline);
+                    try {
+                        future.complete(delegate.validate(ticket, service));
+                    } catch (final Throwable t) {
+                        future.completeExceptionally(t);
+                    } finally {
+                        Deadline.setCurrent(previous);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            future.completeExceptionally(new CasServerUnavailableException("Ticket validation was rejected.", e));
+        }
+        return future;
+    }
+
+    private static String key(final String ticket, final String service) {
+        return ticket + '\n' + service;
+    }
+
+    /**
+     * A validation in flight, or completed and retained until {@link #expiresAt}.
+     */
+    private static final class Flight {
+
+        private final CompletableFuture<Assertion> result = new CompletableFuture<Assertion>();
+
+        /** Zero while the call is in flight. */
+        private volatile long expiresAt;
+
+        boolean isExpired() {
+            final long expires = this.expiresAt;
+            return expires != 0 && expires - System.nanoTime() <= 0;
+        }
+    }
+}
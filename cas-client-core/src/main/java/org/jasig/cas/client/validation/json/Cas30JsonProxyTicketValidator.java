@@ -19,9 +19,13 @@
 package org.jasig.cas.client.validation.json;
 
 import org.jasig.cas.client.validation.Assertion;
+import org.jasig.cas.client.validation.CasServerUnavailableException;
 import org.jasig.cas.client.validation.Cas30ProxyTicketValidator;
 import org.jasig.cas.client.validation.TicketValidationException;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.List;
 
@@ -37,25 +41,51 @@ public class Cas30JsonProxyTicketValidator extends Cas30ProxyTicketValidator {
         setCustomParameters(Collections.singletonMap("format", "JSON"));
     }
 
+    /**
+     * JSON responses are parsed as they are read; anything else is handed to the streaming XML parser.
+     */
     @Override
-    protected Assertion parseResponseFromServer(final String response) throws TicketValidationException {
+    protected Assertion parseResponseFromServer(final InputStream response) throws TicketValidationException {
+        final InputStream in = response.markSupported() ? response : new BufferedInputStream(response);
         try {
-            final TicketValidationJsonResponse json = new JsonValidationResponseParser().parse(response);
+            if (!JsonValidationResponseParser.isJson(in)) {
+                return super.parseResponseFromServer(in);
+            }
+            final TicketValidationJsonResponse json =
+                    new JsonValidationResponseParser(getAttributeFilter(), getAttributeValuePool()).parse(in, getEncoding());
             return json.getAssertion(getProxyGrantingTicketStorage(), getProxyRetriever());
-        } catch (final Exception e) {
-            logger.warn("Unable parse the JSON response");
+        } catch (final IOException e) {
+            throw new CasServerUnavailableException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected Assertion parseResponseFromServer(final String response) throws TicketValidationException {
+        if (!JsonValidationResponseParser.isJson(response)) {
+            logger.debug("The response is not formatted as JSON. Falling back to XML");
             return super.parseResponseFromServer(response);
         }
+        try {
+            final TicketValidationJsonResponse json =
+                    new JsonValidationResponseParser(getAttributeFilter(), getAttributeValuePool()).parse(response);
+            return json.getAssertion(getProxyGrantingTicketStorage(), getProxyRetriever());
+        } catch (final IOException e) {
+            throw new CasServerUnavailableException(e.getMessage(), e);
+        }
     }
 
     @Override
     protected List<String> parseProxiesFromResponse(final String response) {
+        if (!JsonValidationResponseParser.isJson(response)) {
+            return super.parseProxiesFromResponse(response);
+        }
         try {
-            final TicketValidationJsonResponse json = new JsonValidationResponseParser().parse(response);
+            final TicketValidationJsonResponse json =
+                    new JsonValidationResponseParser(getAttributeFilter(), getAttributeValuePool()).parse(response);
             return json.getServiceResponse().getAuthenticationSuccess().getProxies();
         } catch (final Exception e) {
             logger.warn("Unable to locate proxies from the JSON response", e);
-            return super.parseProxiesFromResponse(response);
+            return null;
         }
     }
 }
@@ -18,18 +18,21 @@
  */
 package org.jasig.cas.client.validation.json;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import org.jasig.cas.client.validation.Assertion;
+import org.jasig.cas.client.validation.CasServerUnavailableException;
 import org.jasig.cas.client.validation.Cas30ServiceTicketValidator;
 import org.jasig.cas.client.validation.TicketValidationException;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
 import java.util.Map;
 
 /**
  * This is {@link Cas30JsonServiceTicketValidator} that attempts to parse the CAS validation response
- * as JSON. If the response is not formatted as JSON, it shall fallback to the XML default syntax.
+ * as JSON. If the response is not formatted as JSON, it shall fallback to the XML default syntax; the format is
+ * decided up front from the first non-whitespace character, so each response is only ever parsed once.
  * The JSON response provides advantages in terms of naming and parsing CAS attributes that have special
  * names that otherwise may not be encoded as XML, such as the invalid {@code <cas:special:attribute>value</cas:special:attribute>}
  *
@@ -42,16 +45,36 @@ public class Cas30JsonServiceTicketValidator extends Cas30ServiceTicketValidator
         setCustomParameters(Collections.singletonMap("format", "JSON"));
     }
 
+    /**
+     * JSON responses are parsed as they are read; anything else is handed to the streaming XML parser.
+     */
     @Override
-    protected Assertion parseResponseFromServer(final String response) throws TicketValidationException {
+    protected Assertion parseResponseFromServer(final InputStream response) throws TicketValidationException {
+        final InputStream in = response.markSupported() ? response : new BufferedInputStream(response);
         try {
-            final TicketValidationJsonResponse json = new JsonValidationResponseParser().parse(response);
+            if (!JsonValidationResponseParser.isJson(in)) {
+                return super.parseResponseFromServer(in);
+            }
+            final TicketValidationJsonResponse json =
+                    new JsonValidationResponseParser(getAttributeFilter(), getAttributeValuePool()).parse(in, getEncoding());
             return json.getAssertion(getProxyGrantingTicketStorage(), getProxyRetriever());
-        } catch (final JsonProcessingException e) {
-            logger.warn("Unable parse the JSON response. Falling back to XML", e);
+        } catch (final IOException e) {
+            throw new CasServerUnavailableException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected Assertion parseResponseFromServer(final String response) throws TicketValidationException {
+        if (!JsonValidationResponseParser.isJson(response)) {
+            logger.debug("The response is not formatted as JSON. Falling back to XML");
             return super.parseResponseFromServer(response);
+        }
+        try {
+            final TicketValidationJsonResponse json =
+                    new JsonValidationResponseParser(getAttributeFilter(), getAttributeValuePool()).parse(response);
+            return json.getAssertion(getProxyGrantingTicketStorage(), getProxyRetriever());
         } catch (final IOException e) {
-            throw new TicketValidationException(e.getMessage(), e);
+            throw new CasServerUnavailableException(e.getMessage(), e);
         }
     }
 
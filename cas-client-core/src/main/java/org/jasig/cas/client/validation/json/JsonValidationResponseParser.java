@@ -18,49 +18,296 @@
  */
 package org.jasig.cas.client.validation.json;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.jasig.cas.client.authentication.AttributeFilter;
+import org.jasig.cas.client.authentication.AttributeValuePool;
+import org.jasig.cas.client.authentication.CompactAttributeMap;
 import org.jasig.cas.client.util.CommonUtils;
+import org.jasig.cas.client.validation.CasServerUnavailableException;
 import org.jasig.cas.client.validation.TicketValidationException;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This is {@link JsonValidationResponseParser}.
+ * <p>
+ * The response is read with a streaming {@link JsonParser} that fills in the
+ * {@link TicketValidationJsonResponse} fields as they arrive.  Attributes are collected into a
+ * {@link CompactAttributeMap}; only their free-form values are handed to a shared {@link ObjectReader}.
  *
  * @author Misagh Moayyed
  */
 final class JsonValidationResponseParser {
-    private final ObjectMapper objectMapper;
 
-    public JsonValidationResponseParser() {
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.findAndRegisterModules();
+    /** Upper bound on the bytes looked at when sniffing the format of a response stream. */
+    private static final int SNIFF_LIMIT = 1024;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().findAndRegisterModules();
+
+    private static final ObjectReader VALUE_READER = OBJECT_MAPPER.readerFor(Object.class);
+
+    private static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getFactory();
+
+    private final AttributeFilter attributeFilter;
+
+    private final AttributeValuePool attributeValuePool;
+
+    /**
+     * @param attributeFilter the attributes and values to keep; the others are skipped without being bound.
+     * @param attributeValuePool the pool to canonicalise attribute names and values through; null not to pool them.
+     */
+    JsonValidationResponseParser(final AttributeFilter attributeFilter, final AttributeValuePool attributeValuePool) {
+        this.attributeFilter = attributeFilter;
+        this.attributeValuePool = attributeValuePool;
+    }
+
+    /**
+     * Determines whether the response is a JSON document, i.e. whether its first non-whitespace character
+     * opens an object.  Anything else, notably an XML document, is left to the XML parser.
+     *
+     * @param response the response from the CAS server.
+     * @return true if the response should be parsed as JSON.
+     */
+    static boolean isJson(final String response) {
+        if (response == null) {
+            return false;
+        }
+        for (int i = 0; i < response.length(); i++) {
+            final char c = response.charAt(i);
+            if (!Character.isWhitespace(c) && c != '\uFEFF') {
+                return c == '{';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Determines whether the response stream holds a JSON document without consuming it.
+     *
+     * @param response the response stream; must support {@link InputStream#mark(int)}.
+     * @return true if the response should be parsed as JSON.
+     * @throws IOException if the stream could not be read.
+     */
+    static boolean isJson(final InputStream response) throws IOException {
+        response.mark(SNIFF_LIMIT);
+        try {
+            for (int i = 0; i < SNIFF_LIMIT; i++) {
+                final int b = response.read();
+                if (b == -1) {
+                    return false;
+                }
+                // whitespace and the UTF-8 byte order mark
+                if (b != ' ' && b != '\t' && b != '\r' && b != '\n' && b != 0xEF && b != 0xBB && b != 0xBF) {
+                    return b == '{';
+                }
+            }
+            return false;
+        } finally {
+            response.reset();
+        }
     }
 
     public TicketValidationJsonResponse parse(final String response) throws TicketValidationException, IOException {
         if (CommonUtils.isBlank(response)) {
-            throw new TicketValidationException("Invalid JSON response; The response is empty");
+            throw new CasServerUnavailableException("Invalid JSON response; The response is empty");
         }
 
-        final TicketValidationJsonResponse json = this.objectMapper.readValue(response, TicketValidationJsonResponse.class);
+        final JsonParser parser = JSON_FACTORY.createParser(response);
+        try {
+            return validate(read(parser), response);
+        } finally {
+            parser.close();
+        }
+    }
 
+    /**
+     * Parses the response as it is read from the server.
+     *
+     * @param response the response stream; closed by the caller.
+     * @param encoding the encoding of the response, or null to detect it from the content.
+     * @return the parsed response.
+     * @throws TicketValidationException if the response does not hold a successful authentication.
+     * @throws IOException if the response could not be read or is not valid JSON.
+     */
+    public TicketValidationJsonResponse parse(final InputStream response, final String encoding)
+            throws TicketValidationException, IOException {
+        final JsonParser parser = CommonUtils.isEmpty(encoding) ? JSON_FACTORY.createParser(response)
+                : JSON_FACTORY.createParser(new InputStreamReader(response, Charset.forName(encoding)));
+        try {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (parser.nextToken() == null) {
+                throw new CasServerUnavailableException("Invalid JSON response; The response is empty");
+            }
+            return validate(read(parser), null);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static TicketValidationJsonResponse validate(final TicketValidationJsonResponse json,
+                                                         final String response) throws TicketValidationException {
         final TicketValidationJsonResponse.CasServiceResponseAuthentication serviceResponse = json.getServiceResponse();
+        if (serviceResponse == null) {
+            throw new CasServerUnavailableException("Invalid JSON response; No serviceResponse was found.");
+        }
+
         if (serviceResponse.getAuthenticationFailure() != null
                 && serviceResponse.getAuthenticationSuccess() != null) {
-            throw new TicketValidationException("Invalid JSON response; It indicates both a success "
-                    + "and a failure event, which is indicative of a server error. The actual response is " + response);
+            throw new CasServerUnavailableException("Invalid JSON response; It indicates both a success "
+                    + "and a failure event, which is indicative of a server error."
+                    + (response == null ? "" : " The actual response is " + response));
         }
 
         if (serviceResponse.getAuthenticationFailure() != null) {
-            final String error = json.getServiceResponse().getAuthenticationFailure().getCode()
+            final String error = serviceResponse.getAuthenticationFailure().getCode()
                     + " - " + serviceResponse.getAuthenticationFailure().getDescription();
             throw new TicketValidationException(error);
         }
 
-        final String principal = json.getServiceResponse().getAuthenticationSuccess().getUser();
+        final String principal = serviceResponse.getAuthenticationSuccess() == null ? null
+                : serviceResponse.getAuthenticationSuccess().getUser();
         if (CommonUtils.isEmpty(principal)) {
             throw new TicketValidationException("No principal was found in the response from the CAS server.");
         }
         return json;
     }
+
+    private TicketValidationJsonResponse read(final JsonParser parser) throws IOException {
+        if (parser.currentToken() == null) {
+            parser.nextToken();
+        }
+        expectObject(parser);
+        TicketValidationJsonResponse.CasServiceResponseAuthentication serviceResponse = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("serviceResponse".equals(name)) {
+                serviceResponse = readServiceResponse(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new TicketValidationJsonResponse(serviceResponse);
+    }
+
+    private TicketValidationJsonResponse.CasServiceResponseAuthentication readServiceResponse(
+            final JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expectObject(parser);
+        TicketValidationJsonResponse.CasServiceResponseAuthenticationFailure failure = null;
+        TicketValidationJsonResponse.CasServiceResponseAuthenticationSuccess success = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if ("authenticationSuccess".equals(name)) {
+                success = readSuccess(parser);
+            } else if ("authenticationFailure".equals(name)) {
+                failure = readFailure(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new TicketValidationJsonResponse.CasServiceResponseAuthentication(failure, success);
+    }
+
+    private TicketValidationJsonResponse.CasServiceResponseAuthenticationSuccess readSuccess(
+            final JsonParser parser) throws IOException {
+        expectObject(parser);
+        final TicketValidationJsonResponse.CasServiceResponseAuthenticationSuccess success =
+                new TicketValidationJsonResponse.CasServiceResponseAuthenticationSuccess();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if ("user".equals(name)) {
+                success.setUser(parser.getValueAsString());
+            } else if ("proxyGrantingTicket".equals(name)) {
+                success.setProxyGrantingTicket(parser.getValueAsString());
+            } else if ("proxies".equals(name) && token == JsonToken.START_ARRAY) {
+                success.setProxies(readStrings(parser));
+            } else if ("attributes".equals(name) && token == JsonToken.START_OBJECT) {
+                success.setAttributes(readAttributes(parser));
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return success;
+    }
+
+    private static TicketValidationJsonResponse.CasServiceResponseAuthenticationFailure readFailure(
+            final JsonParser parser) throws IOException {
+        expectObject(parser);
+        final TicketValidationJsonResponse.CasServiceResponseAuthenticationFailure failure =
+                new TicketValidationJsonResponse.CasServiceResponseAuthenticationFailure();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            parser.nextToken();
+            if ("code".equals(name)) {
+                failure.setCode(parser.getValueAsString());
+            } else if ("description".equals(name)) {
+                failure.setDescription(parser.getValueAsString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return failure;
+    }
+
+    private CompactAttributeMap readAttributes(final JsonParser parser) throws IOException {
+        final CompactAttributeMap.Builder attributes = CompactAttributeMap.builder(this.attributeValuePool)
+                .filter(this.attributeFilter);
+        final int maxValues = this.attributeFilter.getMaxValues();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (!attributes.accepts(name)) {
+                parser.skipChildren();
+            } else if (token == JsonToken.START_ARRAY && maxValues > 0) {
+                final List<Object> values = new ArrayList<Object>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (values.size() < maxValues) {
+                        values.add(VALUE_READER.readValue(parser));
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                attributes.put(name, values);
+            } else {
+                attributes.put(name, VALUE_READER.readValue(parser));
+            }
+        }
+        return attributes.build();
+    }
+
+    private static List<String> readStrings(final JsonParser parser) throws IOException {
+        final List<String> values = new ArrayList<String>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == null) {
+                throw new JsonParseException(parser, "Unexpected end of input within an array");
+            }
+            values.add(parser.getValueAsString());
+            parser.skipChildren();
+        }
+        return values;
+    }
+
+    private static void expectObject(final JsonParser parser) throws JsonParseException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object but found " + parser.currentToken());
+        }
+    }
 }
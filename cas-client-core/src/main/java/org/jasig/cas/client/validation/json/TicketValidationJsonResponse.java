@@ -22,6 +22,7 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.jasig.cas.client.authentication.AttributePrincipal;
 import org.jasig.cas.client.authentication.AttributePrincipalImpl;
+import org.jasig.cas.client.authentication.CompactAttributeMap;
 import org.jasig.cas.client.proxy.ProxyGrantingTicketStorage;
 import org.jasig.cas.client.proxy.ProxyRetriever;
 import org.jasig.cas.client.util.CommonUtils;
@@ -60,7 +61,8 @@ final class TicketValidationJsonResponse {
         }
 
         final Assertion assertion;
-        final Map<String, Object> attributes = getServiceResponse().getAuthenticationSuccess().getAttributes();
+        final Map<String, Object> attributes =
+                CompactAttributeMap.copyOf(getServiceResponse().getAuthenticationSuccess().getAttributes());
         final String principal = getServiceResponse().getAuthenticationSuccess().getUser();
         if (CommonUtils.isNotBlank(proxyGrantingTicket)) {
             final AttributePrincipal attributePrincipal = new AttributePrincipalImpl(principal, attributes,
@@ -98,7 +100,7 @@ final class TicketValidationJsonResponse {
         private String user;
         private String proxyGrantingTicket;
         private List proxies;
-        private Map attributes;
+        private Map<String, Object> attributes;
 
         public String getUser() {
             return this.user;
@@ -124,11 +126,11 @@ final class TicketValidationJsonResponse {
             this.proxies = proxies;
         }
 
-        public Map getAttributes() {
+        public Map<String, Object> getAttributes() {
             return this.attributes;
         }
 
-        public void setAttributes(final Map attributes) {
+        public void setAttributes(final Map<String, Object> attributes) {
             this.attributes = attributes;
         }
     }
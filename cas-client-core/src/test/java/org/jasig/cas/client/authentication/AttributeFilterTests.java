@@ -0,0 +1,78 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.authentication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class AttributeFilterTests {
+
+    @Test
+    public void testAllowListTakesPrecedence() {
+        final AttributeFilter filter = AttributeFilter.parse(" uid, memberOf ", "uid", 0);
+        assertTrue(filter.accepts("uid"));
+        assertTrue(filter.accepts("memberOf"));
+        assertFalse(filter.accepts("password"));
+    }
+
+    @Test
+    public void testDenyList() {
+        final AttributeFilter filter = AttributeFilter.parse(null, "password,ssn", 0);
+        assertTrue(filter.accepts("uid"));
+        assertFalse(filter.accepts("password"));
+        assertFalse(filter.accepts("ssn"));
+    }
+
+    @Test
+    public void testValueCap() {
+        final AttributeFilter filter = AttributeFilter.parse("", "", 2);
+        assertTrue(filter.accepts("memberOf", 1));
+        assertFalse(filter.accepts("memberOf", 2));
+    }
+
+    @Test
+    public void testUnconfiguredFilterAcceptsAll() {
+        assertSame(AttributeFilter.ACCEPT_ALL, AttributeFilter.parse(null, " ", 0));
+    }
+
+    @Test
+    public void testBuilderAndEncoderApplyFilter() {
+        final AttributeFilter filter = new AttributeFilter(null, Arrays.asList("password"), 2);
+        final CompactAttributeMap built = CompactAttributeMap.builder().filter(filter)
+                .add("password", "secret")
+                .add("memberOf", "a").add("memberOf", "b").add("memberOf", "c")
+                .put("roles", Arrays.asList("x", "y", "z"))
+                .build();
+        final LazyAttributeMap encoded = (LazyAttributeMap) LazyAttributeMap.encoder().filter(filter)
+                .add("password", "secret")
+                .add("memberOf", "a").add("memberOf", "b").add("memberOf", "c")
+                .add("roles", "x").add("roles", "y").add("roles", "z")
+                .build();
+
+        assertFalse(built.containsKey("password"));
+        assertEquals(Arrays.asList("a", "b"), built.get("memberOf"));
+        assertEquals(Arrays.asList("x", "y"), built.get("roles"));
+        assertEquals(built, encoded);
+    }
+}
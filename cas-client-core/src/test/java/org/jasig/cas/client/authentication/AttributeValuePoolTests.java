@@ -0,0 +1,81 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.authentication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class AttributeValuePoolTests {
+
+    @Test
+    public void testEqualStringsShareOneInstance() {
+        final AttributeValuePool pool = new AttributeValuePool(16);
+        final String first = new String("cn=admins,ou=groups,dc=example,dc=org");
+        final String second = new String("cn=admins,ou=groups,dc=example,dc=org");
+        assertNotSame(first, second);
+
+        assertSame(first, pool.canonicalize(first));
+        assertSame(first, pool.canonicalize(second));
+    }
+
+    @Test
+    public void testLongStringsAreNotPooled() {
+        final AttributeValuePool pool = new AttributeValuePool(16);
+        final char[] chars = new char[AttributeValuePool.MAX_POOLED_LENGTH + 1];
+        Arrays.fill(chars, 'a');
+        final String first = new String(chars);
+        final String second = new String(chars);
+
+        pool.canonicalize(first);
+        assertSame(second, pool.canonicalize(second));
+    }
+
+    @Test
+    public void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(16, new AttributeValuePool(10).getCapacity());
+        assertEquals(16, new AttributeValuePool(16).getCapacity());
+    }
+
+    @Test
+    public void testBuilderCanonicalisesNamesAndValues() {
+        final AttributeValuePool pool = new AttributeValuePool(64);
+        final CompactAttributeMap first = CompactAttributeMap.builder(pool)
+                .add(new String("memberOf"), new String("admins"))
+                .add(new String("memberOf"), new String("users"))
+                .put(new String("roles"), Arrays.asList(new String("admin")))
+                .build();
+        final CompactAttributeMap second = CompactAttributeMap.builder(pool)
+                .add(new String("memberOf"), new String("admins"))
+                .add(new String("memberOf"), new String("users"))
+                .put(new String("roles"), Arrays.asList(new String("admin")))
+                .build();
+
+        assertSame(first.keySet().iterator().next(), second.keySet().iterator().next());
+        final List<?> firstGroups = (List<?>) first.get("memberOf");
+        final List<?> secondGroups = (List<?>) second.get("memberOf");
+        assertSame(firstGroups.get(0), secondGroups.get(0));
+        assertSame(firstGroups.get(1), secondGroups.get(1));
+        assertSame(((List<?>) first.get("roles")).get(0), ((List<?>) second.get("roles")).get(0));
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.authentication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class CompactAttributeMapTests {
+
+    @Test
+    public void testRepeatedValuesBecomeImmutableList() {
+        final CompactAttributeMap map = CompactAttributeMap.builder()
+                .add("uid", "12345")
+                .add("memberOf", "a")
+                .add("memberOf", "b")
+                .build();
+
+        assertEquals(2, map.size());
+        assertEquals("12345", map.get("uid"));
+        assertEquals(Arrays.asList("a", "b"), map.get("memberOf"));
+        assertTrue(map.containsKey("memberOf"));
+        assertFalse(map.containsKey("missing"));
+        assertNull(map.get(null));
+        try {
+            ((List<?>) map.get("memberOf")).clear();
+            throw new AssertionError("Multi-valued attribute should be immutable");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        CompactAttributeMap.builder().add("uid", "12345").build().put("uid", "other");
+    }
+
+    @Test
+    public void testCopyOfKeepsMapContract() {
+        final Map<String, Object> source = new HashMap<String, Object>();
+        source.put("uid", "12345");
+        source.put("roles", Arrays.asList("admin", "user"));
+
+        final CompactAttributeMap map = CompactAttributeMap.copyOf(source);
+        assertEquals(source, map);
+        assertEquals(source.hashCode(), map.hashCode());
+        assertSame(map, CompactAttributeMap.copyOf(map));
+        assertSame(CompactAttributeMap.empty(), CompactAttributeMap.copyOf(null));
+    }
+
+    @Test
+    public void testWithout() {
+        final CompactAttributeMap map = CompactAttributeMap.builder()
+                .add("a", "1").add("b", "2").add("c", "3").build();
+
+        final CompactAttributeMap without = map.without("b");
+        assertEquals(2, without.size());
+        assertEquals("1", without.get("a"));
+        assertEquals("3", without.get("c"));
+        assertFalse(without.containsKey("b"));
+        assertSame(map, map.without("missing"));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        final CompactAttributeMap map = CompactAttributeMap.builder()
+                .add("uid", "12345").add("memberOf", "a").add("memberOf", "b").build();
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(map);
+        out.close();
+        final Object copy = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertEquals(map, copy);
+    }
+}
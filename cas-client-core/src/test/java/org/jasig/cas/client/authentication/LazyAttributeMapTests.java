@@ -0,0 +1,100 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.authentication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+
+public class LazyAttributeMapTests {
+
+    @Test
+    public void testDecodesOnFirstAccess() {
+        final LazyAttributeMap map = (LazyAttributeMap) LazyAttributeMap.encoder()
+                .add("uid", "12345")
+                .add("memberOf", new StringBuilder("a"))
+                .add("memberOf", "b")
+                .add("empty", "")
+                .add("missing", null)
+                .build();
+
+        assertFalse(map.isDecoded());
+        assertFalse(map.isEmpty());
+        assertFalse(map.isDecoded());
+        assertEquals("12345", map.get("uid"));
+        assertTrue(map.isDecoded());
+        assertEquals(Arrays.asList("a", "b"), map.get("memberOf"));
+        assertEquals("", map.get("empty"));
+        assertTrue(map.containsKey("missing"));
+        assertNull(map.get("missing"));
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    public void testEncodesAnyUnicode() {
+        final String value = "café € 😀 " + new String(new char[300]).replace('\0', 'x');
+        final Map<String, Object> map = LazyAttributeMap.encoder().add("näme", value).build();
+
+        assertEquals(value, map.get("näme"));
+    }
+
+    @Test
+    public void testEmptyEncoderBuildsEmptyMap() {
+        assertSame(CompactAttributeMap.empty(), LazyAttributeMap.encoder().build());
+    }
+
+    @Test
+    public void testWithoutDoesNotDecode() {
+        final LazyAttributeMap map = (LazyAttributeMap) LazyAttributeMap.encoder()
+                .add("uid", "12345").add("proxyGrantingTicket", "secret").build();
+
+        final Map<String, Object> without = map.without("proxyGrantingTicket");
+        assertFalse(((LazyAttributeMap) without).isDecoded());
+        assertEquals(1, without.size());
+        assertFalse(without.containsKey("proxyGrantingTicket"));
+        assertTrue(((LazyAttributeMap) map.without("uid")).without("proxyGrantingTicket").isEmpty());
+    }
+
+    @Test
+    public void testSerializationKeepsAttributesEncoded() throws Exception {
+        final LazyAttributeMap map = (LazyAttributeMap) LazyAttributeMap.encoder()
+                .add("uid", "12345").add("memberOf", "a").add("memberOf", "b").build();
+        map.get("uid");
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(map);
+        out.close();
+        final LazyAttributeMap copy = (LazyAttributeMap) new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        assertFalse(copy.isDecoded());
+        assertEquals(map, copy);
+    }
+}
@@ -22,6 +22,11 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.*;
+import java.net.URL;
+import java.security.KeyStore;
+import java.util.Properties;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
 
 import static org.junit.Assert.*;
 
@@ -52,4 +57,67 @@ public final class HttpsURLConnectionFactoryTests {
         final HttpsURLConnectionFactory deserializedObject = (HttpsURLConnectionFactory) ois.readObject();
         assertEquals(this.httpsURLConnectionFactory, deserializedObject);
     }
+
+    @Test
+    public void sharesSocketFactoryAcrossConnections() throws Exception {
+        final File keyStoreFile = createKeyStore();
+        try {
+            this.httpsURLConnectionFactory.setSSLConfiguration(keyStoreConfiguration(keyStoreFile, "60000"));
+            final SSLSocketFactory first = buildSocketFactory();
+            final SSLSocketFactory second = buildSocketFactory();
+            assertNotNull(first);
+            assertSame(first, second);
+        } finally {
+            keyStoreFile.delete();
+        }
+    }
+
+    @Test
+    public void reloadsSocketFactoryWhenKeyStoreChanges() throws Exception {
+        final File keyStoreFile = createKeyStore();
+        try {
+            this.httpsURLConnectionFactory.setSSLConfiguration(keyStoreConfiguration(keyStoreFile, "0"));
+            final SSLSocketFactory first = buildSocketFactory();
+            assertSame(first, buildSocketFactory());
+
+            assertTrue(keyStoreFile.setLastModified(keyStoreFile.lastModified() + 10000));
+            final SSLSocketFactory reloaded = buildSocketFactory();
+            assertNotNull(reloaded);
+            assertNotSame(first, reloaded);
+        } finally {
+            keyStoreFile.delete();
+        }
+    }
+
+    private SSLSocketFactory buildSocketFactory() throws IOException {
+        final HttpsURLConnection conn = (HttpsURLConnection) this.httpsURLConnectionFactory.buildHttpURLConnection(
+                new URL("https://localhost:8443/cas").openConnection());
+        return conn.getSSLSocketFactory();
+    }
+
+    private static Properties keyStoreConfiguration(final File keyStoreFile, final String checkInterval) {
+        final Properties properties = new Properties();
+        properties.setProperty("protocol", "TLS");
+        properties.setProperty("keyStoreType", "JKS");
+        properties.setProperty("keyStorePath", keyStoreFile.getAbsolutePath());
+        properties.setProperty("keyStorePass", "changeit");
+        properties.setProperty("certificatePassword", "changeit");
+        properties.setProperty("sessionCacheSize", "100");
+        properties.setProperty("sessionTimeout", "600");
+        properties.setProperty("keyStoreCheckInterval", checkInterval);
+        return properties;
+    }
+
+    private static File createKeyStore() throws Exception {
+        final File file = File.createTempFile("cas-client", ".jks");
+        final KeyStore keyStore = KeyStore.getInstance("JKS");
+        keyStore.load(null, null);
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            keyStore.store(out, "changeit".toCharArray());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
 }
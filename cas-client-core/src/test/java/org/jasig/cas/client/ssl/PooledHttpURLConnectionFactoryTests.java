@@ -0,0 +1,109 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.ssl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jasig.cas.client.util.CommonUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link PooledHttpURLConnectionFactory}.
+ */
+public final class PooledHttpURLConnectionFactoryTests {
+
+    private static final String RESPONSE = "<cas:serviceResponse/>";
+
+    private HttpServer server;
+
+    private URL url;
+
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                final byte[] body = RESPONSE.getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        this.server.start();
+        this.url = new URL("http://localhost:" + this.server.getAddress().getPort() + "/cas/serviceValidate");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.stop(0);
+    }
+
+    @Test
+    public void reusesConnectionAcrossRequests() throws Exception {
+        final PooledHttpURLConnectionFactory factory = new PooledHttpURLConnectionFactory();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(RESPONSE, CommonUtils.getResponseFromServer(this.url, factory, "UTF-8"));
+        }
+        assertEquals(1, this.clientPorts.size());
+        assertEquals(0, factory.getActiveConnections(this.url));
+    }
+
+    @Test
+    public void enforcesPerHostLimit() throws Exception {
+        final PooledHttpURLConnectionFactory factory = new PooledHttpURLConnectionFactory(
+                new HttpsURLConnectionFactory(), 1);
+        factory.setAcquireTimeout(50);
+
+        final HttpURLConnection first = factory.buildHttpURLConnection(this.url.openConnection());
+        first.connect();
+        assertEquals(1, factory.getActiveConnections(this.url));
+
+        final HttpURLConnection second = factory.buildHttpURLConnection(this.url.openConnection());
+        try {
+            second.connect();
+            fail("IOException expected since the only connection is in use");
+        } catch (final IOException e) {
+            // expected
+        } finally {
+            second.disconnect();
+        }
+
+        first.disconnect();
+        assertEquals(0, factory.getActiveConnections(this.url));
+        assertEquals(RESPONSE, CommonUtils.getResponseFromServer(this.url, factory, "UTF-8"));
+    }
+}
@@ -350,4 +350,14 @@ public final class CommonUtilsTests extends TestCase {
         assertEquals("https://my.server.com/idp/authN/ExtCas?conversation=e1s1&entityId=https://test.edu/sp?alias=1234-1234-1234-1234&something=else",
             constructedUrl);
     }
+
+    public void testSafeGetParameterMatchesExactName() {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/idp/authN/ExtCas");
+        request.setQueryString("ticketId=5&myticket=");
+        request.addParameter("ticket", "ST-1");
+        assertNull(CommonUtils.safeGetParameter(request, "ticket"));
+
+        request.setQueryString("ticketId=5&ticket=ST-1");
+        assertEquals("ST-1", CommonUtils.safeGetParameter(request, "ticket"));
+    }
 }
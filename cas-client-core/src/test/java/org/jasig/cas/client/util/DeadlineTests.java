@@ -0,0 +1,108 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jasig.cas.client.ssl.HttpsURLConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link Deadline}.
+ *
+ * @since 3.6.2
+ */
+public final class DeadlineTests {
+
+    private HttpServer server;
+
+    private URL url;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(2000);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                final byte[] body = "<cas:serviceResponse/>".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        this.server.start();
+        this.url = new URL("http://localhost:" + this.server.getAddress().getPort() + "/cas/serviceValidate");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Deadline.setCurrent(null);
+        this.server.stop(0);
+    }
+
+    @Test
+    public void capsTimeoutsByRemainingBudget() {
+        assertEquals(5000, Deadline.capTimeout(5000));
+        Deadline.setCurrent(Deadline.after(100));
+        assertTrue(Deadline.capTimeout(5000) <= 100);
+        assertEquals(0, Deadline.capTimeout(0));
+        Deadline.setCurrent(null);
+        assertNull(Deadline.getCurrent());
+    }
+
+    @Test
+    public void slowServerFailsWithinDeadline() {
+        Deadline.setCurrent(Deadline.after(200));
+        final long start = System.currentTimeMillis();
+        try {
+            CommonUtils.getResponseFromServer(this.url, new HttpsURLConnectionFactory(), "UTF-8");
+            fail("RuntimeException expected since the server is slower than the deadline");
+        } catch (final RuntimeException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        assertTrue(System.currentTimeMillis() - start < 1500);
+    }
+
+    @Test
+    public void expiredDeadlineFailsBeforeConnecting() throws Exception {
+        Deadline.setCurrent(Deadline.after(0));
+        try {
+            CommonUtils.getResponseFromServer(this.url, new HttpsURLConnectionFactory(), "UTF-8");
+            fail("RuntimeException expected since the deadline has passed");
+        } catch (final RuntimeException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+    }
+}
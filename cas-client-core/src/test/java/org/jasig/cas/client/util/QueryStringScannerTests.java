@@ -0,0 +1,59 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link QueryStringScanner}.
+ *
+ * @since 3.6.2
+ */
+public class QueryStringScannerTests {
+
+    @Test
+    public void findsExactParameterNames() {
+        assertEquals("ST-1", QueryStringScanner.getRawValue("ticket=ST-1", "ticket"));
+        assertEquals("ST-2", QueryStringScanner.getRawValue("ticketId=5&myticket=x&ticket=ST-2&ticket=ST-3", "ticket"));
+        assertEquals("", QueryStringScanner.getRawValue("a=1&ticket", "ticket"));
+        assertEquals("", QueryStringScanner.getRawValue("ticket=&a=1", "ticket"));
+        assertEquals("a%3Db=c", QueryStringScanner.getRawValue("&&ticket=a%3Db=c&", "ticket"));
+        assertNull(QueryStringScanner.getRawValue("ticketId=5&myticket=&x=ticket", "ticket"));
+        assertNull(QueryStringScanner.getRawValue(null, "ticket"));
+        assertNull(QueryStringScanner.getRawValue("", "ticket"));
+        assertNull(QueryStringScanner.getRawValue("Ticket=1", "ticket"));
+    }
+
+    @Test
+    public void comparesDecodedNames() {
+        assertEquals("1", QueryStringScanner.getRawValue("tick%65t=1", "ticket"));
+        assertEquals("2", QueryStringScanner.getRawValue("my+name=2", "my name"));
+        assertEquals("3", QueryStringScanner.getRawValue("caf%C3%A9=3", "café"));
+        assertFalse(QueryStringScanner.contains("tick%6=1", "ticket"));
+        assertFalse(QueryStringScanner.contains("ticket%=1", "ticket"));
+        assertFalse(QueryStringScanner.contains("caf%C3%A9s=3", "café"));
+    }
+
+    @Test
+    public void returnsValueIndex() {
+        assertEquals(9, QueryStringScanner.indexOfValue("a=1&b=2&c=3", "c") - 1);
+        assertEquals(-1, QueryStringScanner.indexOfValue("a=1", "b"));
+    }
+}
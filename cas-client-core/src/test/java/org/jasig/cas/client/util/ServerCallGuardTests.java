@@ -0,0 +1,93 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ServerCallGuard}.
+ *
+ * @since 3.6.2
+ */
+public class ServerCallGuardTests {
+
+    private static final String SERVER = "https://cas.example.com/cas/";
+
+    @Test
+    public void refusesCallsBeyondBulkhead() {
+        final ServerCallGuard guard = new ServerCallGuard(1, 0);
+        final ServerCallGuard.Permit permit = guard.acquire(SERVER);
+        assertEquals(1, guard.getActiveCalls(SERVER));
+        try {
+            guard.acquire(SERVER);
+            fail("ServerUnavailableException expected");
+        } catch (final ServerUnavailableException e) {
+            // expected
+        }
+        // other servers have their own bulkhead
+        guard.acquire("https://cas2.example.com/cas/").release(true);
+
+        permit.release(true);
+        permit.release(true);
+        assertEquals(0, guard.getActiveCalls(SERVER));
+        guard.acquire(SERVER).release(true);
+        assertEquals(1, guard.getBulkheadRejections());
+        assertEquals(3, guard.getPermittedCalls());
+    }
+
+    @Test
+    public void opensCircuitAfterConsecutiveFailuresAndProbes() throws Exception {
+        final ServerCallGuard guard = new ServerCallGuard(0, 2);
+        guard.setOpenDuration(50);
+
+        guard.acquire(SERVER).release(false);
+        guard.acquire(SERVER).release(true);
+        guard.acquire(SERVER).release(false);
+        assertEquals(ServerCallGuard.State.CLOSED, guard.getState(SERVER));
+        guard.acquire(SERVER).release(false);
+        assertEquals(ServerCallGuard.State.OPEN, guard.getState(SERVER));
+
+        try {
+            guard.acquire(SERVER);
+            fail("ServerUnavailableException expected");
+        } catch (final ServerUnavailableException e) {
+            // expected
+        }
+        assertEquals(1, guard.getCircuitRejections());
+
+        Thread.sleep(100);
+        final ServerCallGuard.Permit probe = guard.acquire(SERVER);
+        assertEquals(ServerCallGuard.State.HALF_OPEN, guard.getState(SERVER));
+        try {
+            guard.acquire(SERVER);
+            fail("Only one probe may be in flight");
+        } catch (final ServerUnavailableException e) {
+            // expected
+        }
+        probe.release(false);
+        assertEquals(ServerCallGuard.State.OPEN, guard.getState(SERVER));
+
+        Thread.sleep(100);
+        guard.acquire(SERVER).release(true);
+        assertEquals(ServerCallGuard.State.CLOSED, guard.getState(SERVER));
+        assertEquals(2, guard.getCircuitOpenings());
+        assertEquals(4, guard.getFailedCalls());
+    }
+}
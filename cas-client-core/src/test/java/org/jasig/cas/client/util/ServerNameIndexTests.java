@@ -0,0 +1,75 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+/**
+ * Unit test for {@link ServerNameIndex}.
+ *
+ * @since 3.6.2
+ */
+public class ServerNameIndexTests {
+
+    private static final String[] SERVER_NAMES = {"www.myserver.com", "www.myserver.com ",
+            "www.amazon.com www.bestbuy.com www.myserver.com",
+            "http://www.amazon.com https://www.bestbuy.com:8443/app https://WWW.MyServer.com",
+            "shop.example.com example.com  tenant1.example.org:8080 [::1]:8443"};
+
+    private static final String[] HOSTS = {null, "", "www.myserver.com", "WWW.MYSERVER.COM", "myserver.com",
+            "www.bestbuy.com", "www.bestbuy.com:8443", "bestbuy", "example.com", "com", "tenant1.example.org",
+            "tenant1.example.org:8080", "[::1]", "[::1]:8443", "https://www.bestbuy.com:8443/app", "unknown.net",
+            "m\0w", "/app"};
+
+    @Test
+    public void resolvesLikeSubstringScan() {
+        for (final String serverNames : SERVER_NAMES) {
+            final ServerNameIndex index = new ServerNameIndex(serverNames);
+            for (final String host : HOSTS) {
+                for (final boolean forwarded : new boolean[] {false, true}) {
+                    final MockHttpServletRequest request = new MockHttpServletRequest();
+                    if (host != null) {
+                        request.addHeader(forwarded ? "X-Forwarded-Host" : "Host", host);
+                    }
+                    if (forwarded) {
+                        request.addHeader("Host", "www.amazon.com");
+                    }
+                    final String expected = CommonUtils.findMatchingServerName(request, serverNames);
+                    // twice, to cover both the first and the resolved lookup
+                    assertEquals(serverNames + " / " + host, expected, index.findMatchingServerName(request));
+                    assertEquals(serverNames + " / " + host, expected, index.findMatchingServerName(request));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void resolvesManyHosts() {
+        final StringBuilder serverNames = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            serverNames.append(i > 0 ? " " : "").append("https://tenant").append(i).append(".example.com");
+        }
+        final ServerNameIndex index = new ServerNameIndex(serverNames.toString());
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Host", "tenant42.example.com");
+        assertEquals("https://tenant42.example.com", index.findMatchingServerName(request));
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import static org.junit.Assert.*;
+import java.util.Arrays;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.jasig.cas.client.Protocol;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Unit test for {@link ServiceUrlTemplate}.
+ *
+ * @since 3.6.2
+ */
+public class ServiceUrlTemplateTests {
+
+    private static final String[] SERVER_NAMES = {"www.myserver.com", "https://www.myserver.com",
+            "www.myserver.com:8443", "http://www.myserver.com/app", "www.myserver.com/app/?x=a+b&y",
+            "www.myserver.com#top", "www.amazon.com www.myserver.com"};
+
+    private static final String[] QUERIES = {null, "", "&", "a", "a=", "=b", "a&&b&&", "&a=1", "ticket=ST-1&a=1",
+            "service=x&ticket=y&custom=custom", "custom=custom value here&another=good",
+            "custom=custom+value+here&another=good", "TARGET%3Dthis%26SAMLart%3Dthat%26custom%3Dcustom%20value",
+            "a%3Db%253Dc%26ticket%3D1=v", "entityId=https://test.edu/sp?alias=1234&something=else",
+            "n%C3%A4me=v%C3%A4lue&x.y-z*_=A9", "a=b=c"};
+
+    @Test
+    public void matchesUriBuilderForRequestsAndServerNames() {
+        for (final boolean encode : new boolean[] {false, true}) {
+            for (final String serverNames : SERVER_NAMES) {
+                final ServiceUrlTemplate template = new ServiceUrlTemplate(null, serverNames,
+                        Protocol.CAS3.getServiceParameterName() + ",TARGET", Protocol.CAS3.getArtifactParameterName(),
+                        encode);
+                for (final int port : new int[] {443, 8443, 80, 8080}) {
+                    for (final String query : QUERIES) {
+                        final MockHttpServletRequest request = newRequest(query);
+                        request.setServerPort(port);
+                        request.setScheme(port % 2 == 1 ? "https" : "http");
+                        request.setSecure(port % 2 == 1);
+                        final MockHttpServletResponse response = new MockHttpServletResponse();
+                        final String expected = constructWithUriBuilder(request, response, serverNames,
+                                Protocol.CAS3.getServiceParameterName() + ",TARGET",
+                                Protocol.CAS3.getArtifactParameterName(), encode);
+                        assertEquals(serverNames + " " + port + " " + query, expected,
+                                template.constructServiceUrl(request, response));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void cachesPrefixPerSchemeAndPort() {
+        final ServiceUrlTemplate template = new ServiceUrlTemplate(null, "www.myserver.com", "service", "ticket",
+                false);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final MockHttpServletRequest request = newRequest("ticket=ST-1&a=1");
+        assertEquals("https://www.myserver.com/hello/hithere/?a=1", template.constructServiceUrl(request, response));
+        request.setScheme("http");
+        request.setSecure(false);
+        assertEquals("http://www.myserver.com/hello/hithere/?a=1", template.constructServiceUrl(request, response));
+        request.setServerPort(8080);
+        assertEquals("http://www.myserver.com:8080/hello/hithere/?a=1",
+                template.constructServiceUrl(request, response));
+    }
+
+    @Test
+    public void usesConfiguredService() {
+        final ServiceUrlTemplate template = new ServiceUrlTemplate("https://www.myserver.com/app", null, "service",
+                "ticket", false);
+        assertEquals("https://www.myserver.com/app",
+                template.constructServiceUrl(newRequest("ticket=ST-1"), new MockHttpServletResponse()));
+    }
+
+    private static MockHttpServletRequest newRequest(final String query) {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/hello/hithere/");
+        request.addHeader("Host", "www.myserver.com");
+        request.setScheme("https");
+        request.setSecure(true);
+        request.setQueryString(query);
+        return request;
+    }
+
+    /** The service url construction this template replaces. */
+    private static String constructWithUriBuilder(final HttpServletRequest request,
+                                                  final HttpServletResponse response, final String serverNames,
+                                                  final String serviceParameterName,
+                                                  final String artifactParameterName, final boolean encode) {
+        final String serverName = CommonUtils.findMatchingServerName(request, serverNames);
+        final URIBuilder originalRequestUrl = new URIBuilder(request.getRequestURL().toString(), encode);
+        originalRequestUrl.setParameters(request.getQueryString());
+
+        final URIBuilder builder;
+        if (!serverName.startsWith("https://") && !serverName.startsWith("http://")) {
+            final String scheme = request.isSecure() ? "https://" : "http://";
+            builder = new URIBuilder(scheme + serverName, encode);
+        } else {
+            builder = new URIBuilder(serverName, encode);
+        }
+
+        final int serverPort = request.getServerPort();
+        if (builder.getPort() == -1 && serverPort != 80 && serverPort != 443) {
+            builder.setPort(serverPort);
+        }
+
+        builder.setEncodedPath(builder.getEncodedPath() + request.getRequestURI());
+
+        final List<String> serviceParameterNames = Arrays.asList(serviceParameterName.split(","));
+        for (final URIBuilder.BasicNameValuePair pair : originalRequestUrl.getQueryParams()) {
+            final String name = pair.getName();
+            if (!name.equals(artifactParameterName) && !serviceParameterNames.contains(name)) {
+                if (name.contains("&") || name.contains("=")) {
+                    final URIBuilder encodedParamBuilder = new URIBuilder();
+                    encodedParamBuilder.setParameters(name);
+                    for (final URIBuilder.BasicNameValuePair pair2 : encodedParamBuilder.getQueryParams()) {
+                        final String name2 = pair2.getName();
+                        if (!name2.equals(artifactParameterName) && !serviceParameterNames.contains(name2)) {
+                            builder.addParameter(name2, pair2.getValue());
+                        }
+                    }
+                } else {
+                    builder.addParameter(name, pair.getValue());
+                }
+            }
+        }
+
+        final String result = builder.toString();
+        return encode ? response.encodeURL(result) : result;
+    }
+}
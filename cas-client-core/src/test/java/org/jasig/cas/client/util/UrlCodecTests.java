@@ -0,0 +1,95 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import static org.junit.Assert.*;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link UrlCodec}.
+ *
+ * @since 3.6.2
+ */
+public class UrlCodecTests {
+
+    private static final String[] VALUES = {"", "abcXYZ019.-*_", "a b", "=%/&?#+~!'()", "héllo", "€",
+            "😀", "x\ud83dy", "\ude00x", "\ud83d", "https://example.com/app?a=1&b=café#top"};
+
+    private static final String[] ENCODED = {"", "a+b", "%41%42", "%c3%A9", "%E2%82%AC%F0%9F%98%80", "%ff%fe",
+            "%+4", "%-0", "a%2", "%", "%4g", "%-1", "%１２", "100%25+sure"};
+
+    @Test
+    public void encodesLikeUrlEncoder() throws Exception {
+        for (final String value : VALUES) {
+            assertEquals(value, URLEncoder.encode(value, "UTF-8"), UrlCodec.encode(value));
+            assertEquals(value, "[" + URLEncoder.encode(value, "UTF-8") + "]",
+                    UrlCodec.encode(value, new StringBuilder("[")).append(']').toString());
+        }
+
+        final Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            final char[] chars = new char[random.nextInt(20)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) (random.nextBoolean() ? random.nextInt(128) : random.nextInt(Character.MAX_VALUE));
+            }
+            final String value = new String(chars);
+            assertEquals(URLEncoder.encode(value, "UTF-8"), UrlCodec.encode(value));
+        }
+    }
+
+    @Test
+    public void decodesLikeUrlDecoder() throws Exception {
+        for (final String value : ENCODED) {
+            String expected;
+            try {
+                expected = URLDecoder.decode(value, "UTF-8");
+            } catch (final IllegalArgumentException e) {
+                expected = null;
+            }
+            try {
+                assertEquals(value, expected, UrlCodec.decode(value));
+            } catch (final IllegalArgumentException e) {
+                assertNull(value + " " + e.getMessage(), expected);
+            }
+        }
+        for (final String value : VALUES) {
+            assertEquals(value, UrlCodec.decode(UrlCodec.encode(value)), URLDecoder.decode(URLEncoder.encode(value,
+                    "UTF-8"), "UTF-8"));
+        }
+    }
+
+    @Test
+    public void returnsSameInstanceWhenUnchanged() {
+        final String plain = "ST-1-abc_def.ghi";
+        assertSame(plain, UrlCodec.encode(plain));
+        assertSame(plain, UrlCodec.decode(plain));
+        assertFalse(UrlCodec.needsEncoding(plain, 0, plain.length()));
+        assertTrue(UrlCodec.needsEncoding("a b", 0, 3));
+        assertTrue(UrlCodec.needsDecoding("a+b", 0, 3));
+    }
+
+    @Test
+    public void encodesAndDecodesRanges() {
+        assertEquals("x%3D%26y", UrlCodec.encode("a=&b", 1, 3, new StringBuilder("x")).append('y').toString());
+        assertEquals("= &", UrlCodec.decode("a%3D+%26b", 1, 8, new StringBuilder()).toString());
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import java.io.StringReader;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.SAXParser;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.helpers.DefaultHandler;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link XmlParserPool}.
+ *
+ * @since 3.6.2
+ */
+public final class XmlParserPoolTests {
+
+    private final XmlParserPool pool = new XmlParserPool(2);
+
+    @Test
+    public void reusesReleasedParsers() throws Exception {
+        final SAXParser parser = this.pool.borrowSaxParser();
+        assertEquals(1, this.pool.getMisses());
+        parser.getXMLReader().setContentHandler(new DefaultHandler());
+        parser.getXMLReader().parse(new InputSource(new StringReader("<a/>")));
+        this.pool.release(parser);
+
+        assertSame(parser, this.pool.borrowSaxParser());
+        assertEquals(1, this.pool.getHits());
+
+        final DocumentBuilder builder = this.pool.borrowDocumentBuilder();
+        this.pool.release(builder);
+        assertSame(builder, this.pool.borrowDocumentBuilder());
+        assertEquals(2, this.pool.getHits());
+        assertEquals(2, this.pool.getMisses());
+    }
+
+    @Test
+    public void keepsAtMostCapacityIdleParsers() {
+        final SAXParser[] parsers = new SAXParser[3];
+        for (int i = 0; i < parsers.length; i++) {
+            parsers[i] = this.pool.borrowSaxParser();
+        }
+        for (final SAXParser parser : parsers) {
+            this.pool.release(parser);
+        }
+        assertEquals(2, this.pool.getIdleCount());
+    }
+
+    @Test
+    public void rejectsDoctypeDeclarations() throws Exception {
+        final String xml = "<?xml version=\"1.0\"?><!DOCTYPE foo [<!ENTITY xxe SYSTEM \"file:///etc/passwd\">]><foo>&xxe;</foo>";
+        for (int i = 0; i < 2; i++) {
+            final SAXParser parser = this.pool.borrowSaxParser();
+            try {
+                parser.getXMLReader().parse(new InputSource(new StringReader(xml)));
+                fail("Doctype declarations must be rejected");
+            } catch (final Exception e) {
+                // expected
+            }
+            this.pool.release(parser);
+        }
+        assertNull(XmlUtils.getTextForElement(xml, "foo"));
+    }
+}
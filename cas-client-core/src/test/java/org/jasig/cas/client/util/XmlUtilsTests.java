@@ -0,0 +1,101 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.util;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link XmlUtils}.
+ *
+ * @since 3.6.2
+ */
+public final class XmlUtilsTests {
+
+    private static final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>"
+            + "<cas:authenticationSuccess><cas:user>user<![CDATA[name]]></cas:user>"
+            + "<cas:proxies><cas:proxy>proxy1</cas:proxy><cas:proxy>proxy2</cas:proxy></cas:proxies>"
+            + "</cas:authenticationSuccess></cas:serviceResponse>";
+
+    private static final String XXE = "<?xml version=\"1.0\"?><!DOCTYPE foo [<!ENTITY xxe SYSTEM "
+            + "\"file:///etc/passwd\">]><foo>&xxe;</foo>";
+
+    @After
+    public void tearDown() {
+        XmlUtils.setBackend(XmlUtils.Backend.SAX);
+    }
+
+    @Test
+    public void backendsExtractTheSameText() {
+        for (final XmlUtils.Backend backend : XmlUtils.Backend.values()) {
+            XmlUtils.setBackend(backend);
+            assertEquals("username", XmlUtils.getTextForElement(RESPONSE, "user"));
+            assertEquals("", XmlUtils.getTextForElement(RESPONSE, "authenticationFailure"));
+            assertEquals(Arrays.asList("proxy1", "proxy2"), XmlUtils.getTextForElements(RESPONSE, "proxy"));
+        }
+    }
+
+    @Test
+    public void backendsRejectExternalEntities() {
+        for (final XmlUtils.Backend backend : XmlUtils.Backend.values()) {
+            XmlUtils.setBackend(backend);
+            final String text = XmlUtils.getTextForElement(XXE, "foo");
+            assertTrue(backend + " resolved an external entity", text == null || text.isEmpty());
+        }
+    }
+
+    @Test
+    public void xmlReaderIsHardenedAndNotTakenFromThePool() throws Exception {
+        XmlUtils.getTextForElement("<a><b>x</b></a>", "b");
+        final XmlParserPool pool = XmlUtils.getParserPool();
+        final int idle = pool.getIdleCount();
+        final long hits = pool.getHits();
+        final long misses = pool.getMisses();
+        for (int i = 0; i < XmlParserPool.DEFAULT_CAPACITY + 1; i++) {
+            assertNotSame(XmlUtils.getXmlReader(), XmlUtils.getXmlReader());
+        }
+        assertEquals(idle, pool.getIdleCount());
+        assertEquals(hits, pool.getHits());
+        assertEquals(misses, pool.getMisses());
+
+        final XMLReader reader = XmlUtils.getXmlReader();
+        reader.setContentHandler(new DefaultHandler());
+        try {
+            reader.parse(new InputSource(new StringReader("<!DOCTYPE a [<!ENTITY e SYSTEM \"file:///etc/passwd\">]><a>&e;</a>")));
+            fail("SAXException expected since DTDs are disallowed");
+        } catch (final SAXException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void staxStopsAfterTheElement() {
+        XmlUtils.setBackend(XmlUtils.Backend.STAX);
+        assertEquals("ST-1", XmlUtils.getTextForElement("<a><SessionIndex>ST-1</SessionIndex><b>", "SessionIndex"));
+        assertNull(XmlUtils.getTextForElement("<a><b>", "SessionIndex"));
+    }
+}
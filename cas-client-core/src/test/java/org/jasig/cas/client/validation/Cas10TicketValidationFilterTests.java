@@ -18,10 +18,29 @@
  */
 package org.jasig.cas.client.validation;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import org.jasig.cas.client.util.AbstractCasFilter;
 import org.junit.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
 import org.springframework.mock.web.MockFilterConfig;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockServletContext;
 
 /**
@@ -57,4 +76,256 @@ public class Cas10TicketValidationFilterTests {
         assertTrue(validator instanceof Cas10TicketValidator);
         assertTrue(((Cas10TicketValidator) validator).isRenew());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAnswersUnavailableServerWithServiceUnavailable() throws Exception {
+        final MockServletContext context = new MockServletContext();
+        context.addInitParameter("casServerUrlPrefix", "https://cas.example.com");
+        context.addInitParameter("service", "http://www.jasig.org");
+        context.addInitParameter("exceptionOnValidationFailure", "false");
+        final Cas10TicketValidationFilter f = new Cas10TicketValidationFilter();
+        f.init(new MockFilterConfig(context));
+        final TicketValidationException[] failure = new TicketValidationException[1];
+        f.setTicketValidator(new TicketValidator() {
+            @Override
+            public Assertion validate(final String ticket, final String service) throws TicketValidationException {
+                throw failure[0];
+            }
+        });
+
+        failure[0] = new CasServerUnavailableException("Read timed out");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        f.doFilter(newTicketRequest(), response, new MockFilterChain());
+        assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.getStatus());
+
+        failure[0] = new TicketValidationException("Ticket 'ST-1' not recognized");
+        response = new MockHttpServletResponse();
+        f.doFilter(newTicketRequest(), response, new MockFilterChain());
+        assertEquals(HttpServletResponse.SC_FORBIDDEN, response.getStatus());
+        f.destroy();
+    }
+
+    @Test
+    public void testValidatesTicketAsynchronously() throws Exception {
+        final Cas10TicketValidationFilter f = new Cas10TicketValidationFilter();
+        final MockServletContext context = new MockServletContext();
+        context.addInitParameter("casServerUrlPrefix", "https://cas.example.com");
+        context.addInitParameter("service", "http://www.jasig.org");
+        context.addInitParameter("redirectAfterValidation", "false");
+        context.addInitParameter("asyncValidation", "true");
+        f.init(new MockFilterConfig(context));
+
+        final Thread[] validatingThread = new Thread[1];
+        f.setTicketValidator(new TicketValidator() {
+            @Override
+            public Assertion validate(final String ticket, final String service) {
+                validatingThread[0] = Thread.currentThread();
+                return new AssertionImpl("user");
+            }
+        });
+
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setQueryString("ticket=ST-1");
+        request.setParameter("ticket", "ST-1");
+        request.setAsyncSupported(true);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final MockFilterChain chain = new MockFilterChain();
+        final CountDownLatch dispatched = new CountDownLatch(1);
+
+        f.doFilter(request, response, chain);
+        ((MockAsyncContext) request.getAsyncContext()).addDispatchHandler(new Runnable() {
+            @Override
+            public void run() {
+                dispatched.countDown();
+            }
+        });
+        assertTrue(request.isAsyncStarted());
+        assertNull(chain.getRequest());
+
+        assertTrue(dispatched.await(5, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), validatingThread[0]);
+
+        request.setDispatcherType(DispatcherType.ASYNC);
+        f.doFilter(request, response, chain);
+        assertEquals(request, chain.getRequest());
+        final Assertion assertion = (Assertion) request.getAttribute(AbstractCasFilter.CONST_CAS_ASSERTION);
+        assertEquals("user", assertion.getPrincipal().getName());
+        f.destroy();
+    }
+
+    @Test
+    public void testAnswersAsyncValidationRefusedByFullExecutor() throws Exception {
+        final MockServletContext context = newAsyncContext();
+        context.addInitParameter("asyncValidationThreads", "1");
+        context.addInitParameter("asyncValidationQueueSize", "0");
+        final Cas10TicketValidationFilter f = new Cas10TicketValidationFilter();
+        f.init(new MockFilterConfig(context));
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        f.setTicketValidator(blockingValidator(entered, release));
+        try {
+            final MockHttpServletRequest busy = newTicketRequest();
+            f.doFilter(busy, new MockHttpServletResponse(), new MockFilterChain());
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            final MockHttpServletRequest request = newTicketRequest();
+            final MockHttpServletResponse response = new MockHttpServletResponse();
+            final MockFilterChain chain = new MockFilterChain();
+            f.doFilter(request, response, chain);
+            assertNull(((MockAsyncContext) request.getAsyncContext()).getDispatchedPath());
+            assertNull(chain.getRequest());
+            assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.getStatus());
+        } finally {
+            release.countDown();
+            f.destroy();
+        }
+    }
+
+    @Test
+    public void testAnswersAsyncValidationOutlivingDeadline() throws Exception {
+        final MockServletContext context = newAsyncContext();
+        context.addInitParameter("requestDeadline", "200");
+        final Cas10TicketValidationFilter f = new Cas10TicketValidationFilter();
+        f.init(new MockFilterConfig(context));
+        final CountDownLatch release = new CountDownLatch(1);
+        f.setTicketValidator(blockingValidator(new CountDownLatch(1), release));
+        try {
+            final MockHttpServletRequest request = newTicketRequest();
+            final MockHttpServletResponse response = new MockHttpServletResponse();
+            final MockFilterChain chain = new MockFilterChain();
+            f.doFilter(request, response, chain);
+            final MockAsyncContext asyncContext = (MockAsyncContext) request.getAsyncContext();
+            assertTrue(asyncContext.getTimeout() > 1000 && asyncContext.getTimeout() <= 1200);
+
+            for (final AsyncListener listener : asyncContext.getListeners()) {
+                listener.onTimeout(new AsyncEvent(asyncContext));
+            }
+            assertNull(asyncContext.getDispatchedPath());
+            assertNull(chain.getRequest());
+            assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.getStatus());
+        } finally {
+            release.countDown();
+            f.destroy();
+        }
+    }
+
+    @Test
+    public void testAnswersFailedAsyncValidationWithoutDispatching() throws Exception {
+        final Cas10TicketValidationFilter f = new Cas10TicketValidationFilter();
+        f.init(new MockFilterConfig(newAsyncContext()));
+        f.setTicketValidator(new TicketValidator() {
+            @Override
+            public Assertion validate(final String ticket, final String service) throws TicketValidationException {
+                throw new TicketValidationException("Ticket 'ST-1' not recognized");
+            }
+        });
+        final AtomicBoolean dispatched = new AtomicBoolean();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final MockHttpServletRequest request = new MockHttpServletRequest() {
+            @Override
+            public AsyncContext startAsync(final ServletRequest request, final ServletResponse response) {
+                return new MockAsyncContext(request, response) {
+                    @Override
+                    public void dispatch() {
+                        dispatched.set(true);
+                    }
+
+                    @Override
+                    public void complete() {
+                        completed.countDown();
+                    }
+                };
+            }
+        };
+        request.setQueryString("ticket=ST-1");
+        request.setParameter("ticket", "ST-1");
+        request.setAsyncSupported(true);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        final MockFilterChain chain = new MockFilterChain();
+        try {
+            f.doFilter(request, response, chain);
+            assertTrue(completed.await(5, TimeUnit.SECONDS));
+            assertFalse(dispatched.get());
+            assertNull(chain.getRequest());
+            assertEquals(HttpServletResponse.SC_FORBIDDEN, response.getStatus());
+        } finally {
+            f.destroy();
+        }
+    }
+
+    @Test
+    public void testAnswersAsyncValidationThatCannotBeDispatched() throws Exception {
+        final Cas10TicketValidationFilter f = new Cas10TicketValidationFilter();
+        f.init(new MockFilterConfig(newAsyncContext()));
+        f.setTicketValidator(new TicketValidator() {
+            @Override
+            public Assertion validate(final String ticket, final String service) {
+                return new AssertionImpl("user");
+            }
+        });
+        final AtomicBoolean completed = new AtomicBoolean();
+        final CountDownLatch answered = new CountDownLatch(1);
+        final MockHttpServletRequest request = new MockHttpServletRequest() {
+            @Override
+            public AsyncContext startAsync(final ServletRequest request, final ServletResponse response) {
+                return new MockAsyncContext(request, response) {
+                    @Override
+                    public void dispatch() {
+                        throw new IllegalStateException("Request already timed out");
+                    }
+
+                    @Override
+                    public void complete() {
+                        completed.set(true);
+                        answered.countDown();
+                    }
+                };
+            }
+        };
+        request.setQueryString("ticket=ST-1");
+        request.setParameter("ticket", "ST-1");
+        request.setAsyncSupported(true);
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            f.doFilter(request, response, new MockFilterChain());
+            assertTrue(answered.await(5, TimeUnit.SECONDS));
+            assertTrue(completed.get());
+            assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, response.getStatus());
+        } finally {
+            f.destroy();
+        }
+    }
+
+    private static MockServletContext newAsyncContext() {
+        final MockServletContext context = new MockServletContext();
+        context.addInitParameter("casServerUrlPrefix", "https://cas.example.com");
+        context.addInitParameter("service", "http://www.jasig.org");
+        context.addInitParameter("redirectAfterValidation", "false");
+        context.addInitParameter("asyncValidation", "true");
+        context.addInitParameter("exceptionOnValidationFailure", "false");
+        return context;
+    }
+
+    private static MockHttpServletRequest newTicketRequest() {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setQueryString("ticket=ST-1");
+        request.setParameter("ticket", "ST-1");
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+    private static TicketValidator blockingValidator(final CountDownLatch entered, final CountDownLatch release) {
+        return new TicketValidator() {
+            @Override
+            public Assertion validate(final String ticket, final String service) throws TicketValidationException {
+                entered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    throw new TicketValidationException(e);
+                }
+                return new AssertionImpl("user");
+            }
+        };
+    }
+}
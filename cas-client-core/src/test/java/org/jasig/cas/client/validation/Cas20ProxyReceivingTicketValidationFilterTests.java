@@ -18,12 +18,21 @@
  */
 package org.jasig.cas.client.validation;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
+import javax.net.ssl.HostnameVerifier;
 import junit.framework.TestCase;
+import org.jasig.cas.client.authentication.AttributeValuePool;
 import org.jasig.cas.client.proxy.CleanUpTimerTask;
 import org.jasig.cas.client.proxy.ProxyGrantingTicketStorage;
 import org.jasig.cas.client.proxy.ProxyGrantingTicketStorageImpl;
+import org.jasig.cas.client.ssl.AnyHostnameVerifier;
+import org.jasig.cas.client.ssl.HttpURLConnectionFactory;
 import org.jasig.cas.client.util.MethodFlag;
 import org.junit.Test;
 import org.springframework.mock.web.MockFilterConfig;
@@ -216,6 +225,89 @@ public class Cas20ProxyReceivingTicketValidationFilterTests extends TestCase {
         assertTrue(((AbstractUrlBasedTicketValidator) validator).isRenew());
     }
 
+    public void testPassesSslSettingsToCustomConnectionFactory() throws Exception {
+        final File sslConfig = File.createTempFile("ssl", ".properties");
+        sslConfig.deleteOnExit();
+        final FileOutputStream out = new FileOutputStream(sslConfig);
+        out.write("protocol=TLS\n".getBytes("UTF-8"));
+        out.close();
+
+        final Cas20ProxyReceivingTicketValidationFilter f = new Cas20ProxyReceivingTicketValidationFilter();
+        final MockFilterConfig config = new MockFilterConfig();
+        config.addInitParameter("casServerUrlPrefix", "https://cas.example.com");
+        config.addInitParameter("service", "http://www.jasig.org");
+        config.addInitParameter("urlConnectionFactoryClass", SslAwareConnectionFactory.class.getName());
+        config.addInitParameter("sslConfigFile", sslConfig.getAbsolutePath());
+        config.addInitParameter("hostnameVerifier", AnyHostnameVerifier.class.getName());
+        f.init(config);
+        final AbstractUrlBasedTicketValidator validator = (AbstractUrlBasedTicketValidator) f.getTicketValidator(config);
+        final SslAwareConnectionFactory factory = (SslAwareConnectionFactory) validator.getURLConnectionFactory();
+        assertTrue(factory.verifier instanceof AnyHostnameVerifier);
+        assertEquals("TLS", factory.config.getProperty("protocol"));
+    }
+
+    public void testRejectsSslSettingsForCustomConnectionFactoryWithoutSslConstructor() throws Exception {
+        final Cas20ProxyReceivingTicketValidationFilter f = new Cas20ProxyReceivingTicketValidationFilter();
+        final MockFilterConfig config = new MockFilterConfig();
+        config.addInitParameter("casServerUrlPrefix", "https://cas.example.com");
+        config.addInitParameter("service", "http://www.jasig.org");
+        config.addInitParameter("urlConnectionFactoryClass", PlainConnectionFactory.class.getName());
+        config.addInitParameter("hostnameVerifier", AnyHostnameVerifier.class.getName());
+        try {
+            f.init(config);
+            fail("IllegalArgumentException expected since the factory cannot take the hostname verifier");
+        } catch (final IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains(PlainConnectionFactory.class.getName()));
+        }
+    }
+
+    public void testHoldsAttributeValuePoolPerValidator() throws Exception {
+        final AbstractUrlBasedTicketValidator small = newValidatorWithAttributePool("16");
+        final AbstractUrlBasedTicketValidator large = newValidatorWithAttributePool("64");
+        assertEquals(16, small.getAttributeValuePool().getCapacity());
+        assertEquals(64, large.getAttributeValuePool().getCapacity());
+        assertNull(AttributeValuePool.getDefault());
+    }
+
+    private AbstractUrlBasedTicketValidator newValidatorWithAttributePool(final String size) throws Exception {
+        final Cas20ProxyReceivingTicketValidationFilter f = new Cas20ProxyReceivingTicketValidationFilter();
+        final MockFilterConfig config = new MockFilterConfig();
+        config.addInitParameter("casServerUrlPrefix", "https://cas.example.com");
+        config.addInitParameter("service", "http://www.jasig.org");
+        config.addInitParameter("attributePoolSize", size);
+        f.init(config);
+        return (AbstractUrlBasedTicketValidator) f.getTicketValidator(config);
+    }
+
+    public static final class SslAwareConnectionFactory implements HttpURLConnectionFactory {
+
+        private static final long serialVersionUID = 1L;
+
+        private final HostnameVerifier verifier;
+
+        private final Properties config;
+
+        public SslAwareConnectionFactory(final HostnameVerifier verifier, final Properties config) {
+            this.verifier = verifier;
+            this.config = config;
+        }
+
+        @Override
+        public HttpURLConnection buildHttpURLConnection(final URLConnection url) {
+            return (HttpURLConnection) url;
+        }
+    }
+
+    public static final class PlainConnectionFactory implements HttpURLConnectionFactory {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public HttpURLConnection buildHttpURLConnection(final URLConnection url) {
+            return (HttpURLConnection) url;
+        }
+    }
+
     /**
      * construct a working {@link org.jasig.cas.client.validation.Cas20ProxyReceivingTicketValidationFilter}
      */
@@ -19,14 +19,31 @@
 package org.jasig.cas.client.validation;
 
 import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import org.jasig.cas.client.PublicTestHttpServer;
+import org.jasig.cas.client.authentication.AttributeFilter;
 import org.jasig.cas.client.authentication.AttributePrincipalImpl;
+import org.jasig.cas.client.authentication.AttributeValuePool;
+import org.jasig.cas.client.authentication.LazyAttributeMap;
 import org.jasig.cas.client.proxy.ProxyGrantingTicketStorage;
 import org.jasig.cas.client.proxy.ProxyGrantingTicketStorageImpl;
 import org.jasig.cas.client.proxy.ProxyRetriever;
+import org.jasig.cas.client.util.Deadline;
+import org.jasig.cas.client.util.ServerCallGuard;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -189,4 +206,297 @@ public final class Cas20ServiceTicketValidatorTests extends AbstractTicketValida
             // expected
         }
     }
+
+    @Test
+    public void testStreamedResponseWithAttributes() throws TicketValidationException, UnsupportedEncodingException, IllegalAccessException {
+        final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationSuccess><cas:user>"
+                + USERNAME
+                + "</cas:user><cas:proxyGrantingTicket>"
+                + PGTIOU
+                + "</cas:proxyGrantingTicket><cas:attributes><cas:password>test</cas:password><cas:multivaluedAttribute>value1</cas:multivaluedAttribute><cas:multivaluedAttribute>value2</cas:multivaluedAttribute></cas:attributes></cas:authenticationSuccess></cas:serviceResponse>";
+
+        server.content = RESPONSE.getBytes(server.encoding);
+        this.ticketValidator.setStreamResponse(true);
+        final Assertion assertion = this.ticketValidator.validate("test", "test");
+        final AttributePrincipalImpl principal = (AttributePrincipalImpl) assertion.getPrincipal();
+        assertEquals(USERNAME, principal.getName());
+        assertEquals("test", principal.getAttributes().get("password"));
+        assertArrayEquals(new String[] { "value1", "value2" },
+                ((List<?>) principal.getAttributes().get("multivaluedAttribute")).toArray());
+        assertEquals(PGT, proxyGrantingTicketField.get(principal));
+    }
+
+    @Test
+    public void testAttributesNamedLikeProtocolElements() throws TicketValidationException, UnsupportedEncodingException {
+        final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationSuccess><cas:user>"
+                + USERNAME
+                + "</cas:user><cas:attributes><cas:email>a@b.c</cas:email><cas:user>bob</cas:user><cas:proxy>p</cas:proxy>"
+                + "<cas:authenticationFailure>none</cas:authenticationFailure></cas:attributes></cas:authenticationSuccess></cas:serviceResponse>";
+
+        for (final boolean stream : new boolean[] { false, true }) {
+            server.content = RESPONSE.getBytes(server.encoding);
+            this.ticketValidator.setStreamResponse(stream);
+            final Assertion assertion = this.ticketValidator.validate("test", "test");
+            final Map<String, Object> attributes = assertion.getPrincipal().getAttributes();
+            assertEquals(USERNAME, assertion.getPrincipal().getName());
+            assertEquals("a@b.c", attributes.get("email"));
+            assertEquals("bob", attributes.get("user"));
+            assertEquals("p", attributes.get("proxy"));
+            assertEquals("none", attributes.get("authenticationFailure"));
+        }
+    }
+
+    @Test
+    public void testLazyAttributes() throws TicketValidationException, UnsupportedEncodingException, IllegalAccessException {
+        final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationSuccess><cas:user>"
+                + USERNAME
+                + "</cas:user><cas:attributes><cas:password>test</cas:password><cas:proxyGrantingTicket>"
+                + ENCRYPTED_PGT
+                + "</cas:proxyGrantingTicket><cas:multivaluedAttribute>value1</cas:multivaluedAttribute><cas:multivaluedAttribute>value2</cas:multivaluedAttribute></cas:attributes></cas:authenticationSuccess></cas:serviceResponse>";
+
+        server.content = RESPONSE.getBytes(server.encoding);
+        this.ticketValidator.setLazyAttributes(true);
+        final Assertion assertion = this.ticketValidator.validate("test", "test");
+        final AttributePrincipalImpl principal = (AttributePrincipalImpl) assertion.getPrincipal();
+        assertEquals(USERNAME, principal.getName());
+        assertEquals(PGT, proxyGrantingTicketField.get(principal));
+
+        final LazyAttributeMap attributes = (LazyAttributeMap) principal.getAttributes();
+        assertFalse(attributes.isDecoded());
+        assertEquals("test", attributes.get("password"));
+        assertTrue(attributes.isDecoded());
+        assertFalse(attributes.containsKey(Cas20ServiceTicketValidator.PGT_ATTRIBUTE));
+        assertArrayEquals(new String[] { "value1", "value2" },
+                ((List<?>) attributes.get("multivaluedAttribute")).toArray());
+    }
+
+    @Test
+    public void testAttributeFilter() throws TicketValidationException, UnsupportedEncodingException {
+        final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationSuccess><cas:user>"
+                + USERNAME
+                + "</cas:user><cas:attributes><cas:password>test</cas:password><cas:eduPersonId>id</cas:eduPersonId><cas:multivaluedAttribute>value1</cas:multivaluedAttribute><cas:multivaluedAttribute>value2</cas:multivaluedAttribute><cas:multivaluedAttribute>value3</cas:multivaluedAttribute></cas:attributes></cas:authenticationSuccess></cas:serviceResponse>";
+
+        server.content = RESPONSE.getBytes(server.encoding);
+        this.ticketValidator.setAttributeFilter(AttributeFilter.parse(null, "password", 2));
+        for (final boolean lazy : new boolean[] {false, true}) {
+            this.ticketValidator.setLazyAttributes(lazy);
+            final Map<String, Object> attributes = this.ticketValidator.validate("test", "test").getPrincipal()
+                    .getAttributes();
+            assertFalse(attributes.containsKey("password"));
+            assertEquals("id", attributes.get("eduPersonId"));
+            assertArrayEquals(new String[] { "value1", "value2" },
+                    ((List<?>) attributes.get("multivaluedAttribute")).toArray());
+        }
+    }
+
+    @Test
+    public void testStreamedFailureResponse() throws UnsupportedEncodingException {
+        final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationFailure code=\"INVALID_TICKET\">Ticket not recognized</cas:authenticationFailure></cas:serviceResponse>";
+        server.content = RESPONSE.getBytes(server.encoding);
+        this.ticketValidator.setStreamResponse(true);
+        try {
+            this.ticketValidator.validate("test", "test");
+            fail("ValidationException expected due to 'no' response");
+        } catch (final TicketValidationException e) {
+            assertEquals("Ticket not recognized", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testResponseExceedingMaxResponseSize() throws Exception {
+        final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationSuccess><cas:user>"
+                + USERNAME + "</cas:user></cas:authenticationSuccess></cas:serviceResponse>";
+        server.content = RESPONSE.getBytes(server.encoding);
+        this.ticketValidator.setMaxResponseSize(32);
+        try {
+            this.ticketValidator.validate("test", "test");
+            fail("Exception expected due to oversized response.");
+        } catch (final CasServerUnavailableException e) {
+            // expected
+        }
+
+        this.ticketValidator.setStreamResponse(true);
+        try {
+            this.ticketValidator.validate("test", "test");
+            fail("ValidationException expected due to oversized response.");
+        } catch (final CasServerUnavailableException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testExpiredDeadlineStillRetrievesProxyGrantingTicket() throws Exception {
+        final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationSuccess><cas:user>"
+                + USERNAME + "</cas:user><cas:proxyGrantingTicket>" + PGTIOU
+                + "</cas:proxyGrantingTicket></cas:authenticationSuccess></cas:serviceResponse>";
+        try {
+            // CAS has already answered and the lookup is local, so the deadline must not cost the PGT
+            Deadline.setCurrent(Deadline.after(0));
+            final Assertion assertion = this.ticketValidator.parseResponseFromServer(RESPONSE);
+            assertEquals(PGT, proxyGrantingTicketField.get(assertion.getPrincipal()));
+        } finally {
+            Deadline.setCurrent(null);
+        }
+    }
+
+    @Test
+    public void testCanonicalizesAttributesThroughValidatorPool() throws Exception {
+        final AttributeValuePool pool = new AttributeValuePool(64);
+        this.ticketValidator.setAttributeValuePool(pool);
+        final Object[] values = new Object[2];
+        for (int i = 0; i < 2; i++) {
+            this.ticketValidator.setLazyAttributes(i == 1);
+            final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationSuccess><cas:user>"
+                    + USERNAME + "</cas:user><cas:attributes><cas:group>" + new String("staff")
+                    + "</cas:group></cas:attributes></cas:authenticationSuccess></cas:serviceResponse>";
+            values[i] = this.ticketValidator.parseResponseFromServer(RESPONSE).getPrincipal().getAttributes().get("group");
+        }
+        assertEquals("staff", values[0]);
+        assertSame(values[0], values[1]);
+        assertSame(values[0], pool.canonicalize(new String("staff")));
+    }
+
+    @Test
+    public void testTimeoutsOpenServerCallGuard() throws Exception {
+        final HttpServer slowServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        slowServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(1000);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                exchange.sendResponseHeaders(500, -1);
+                exchange.close();
+            }
+        });
+        slowServer.start();
+        try {
+            final String prefix = "http://localhost:" + slowServer.getAddress().getPort() + "/cas/";
+            final Cas20ServiceTicketValidator validator = new Cas20ServiceTicketValidator(prefix);
+            final ServerCallGuard guard = new ServerCallGuard(0, 2);
+            validator.setServerCallGuard(guard);
+            for (int i = 0; i < 2; i++) {
+                Deadline.setCurrent(Deadline.after(100));
+                try {
+                    validator.validate("test", "test");
+                    fail("CasServerUnavailableException expected since the server is slower than the deadline");
+                } catch (final CasServerUnavailableException e) {
+                    // expected
+                }
+            }
+            assertEquals(ServerCallGuard.State.OPEN, guard.getState(prefix));
+            assertEquals(2, guard.getFailedCalls());
+
+            // the open circuit refuses the call as a validation failure rather than a RuntimeException
+            try {
+                validator.validate("test", "test");
+                fail("CasServerUnavailableException expected since the circuit is open");
+            } catch (final CasServerUnavailableException e) {
+                assertEquals(1, guard.getCircuitRejections());
+            }
+        } finally {
+            Deadline.setCurrent(null);
+            slowServer.stop(0);
+        }
+    }
+
+    @Test
+    public void testRejectionsKeepServerCallGuardClosed() throws Exception {
+        final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationFailure code=\"INVALID_TICKET\">Ticket not recognized</cas:authenticationFailure></cas:serviceResponse>";
+        server.content = RESPONSE.getBytes(server.encoding);
+        final ServerCallGuard guard = new ServerCallGuard(0, 1);
+        this.ticketValidator.setServerCallGuard(guard);
+        try {
+            this.ticketValidator.validate("test", "test");
+            fail("TicketValidationException expected");
+        } catch (final TicketValidationException e) {
+            assertFalse(e instanceof CasServerUnavailableException);
+        }
+        assertEquals(ServerCallGuard.State.CLOSED, guard.getState(CONST_CAS_SERVER_URL_PREFIX + "8088/"));
+        assertEquals(0, guard.getFailedCalls());
+    }
+
+    @Test
+    public void testCompressedResponse() throws Exception {
+        final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationSuccess><cas:user>"
+                + USERNAME + "</cas:user></cas:authenticationSuccess></cas:serviceResponse>";
+        final HttpServer compressingServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        compressingServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                assertEquals("gzip, deflate", acceptEncoding);
+                final boolean gzip = exchange.getRequestURI().getPath().startsWith("/gzip");
+                exchange.getResponseHeaders().add("Content-Encoding", gzip ? "gzip" : "deflate");
+                exchange.sendResponseHeaders(200, 0);
+                final OutputStream out = gzip ? new GZIPOutputStream(exchange.getResponseBody())
+                        : new DeflaterOutputStream(exchange.getResponseBody(), new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+                out.write(RESPONSE.getBytes("UTF-8"));
+                out.close();
+            }
+        });
+        compressingServer.start();
+        try {
+            final String prefix = "http://localhost:" + compressingServer.getAddress().getPort();
+            for (final String path : new String[] {"/gzip", "/deflate"}) {
+                final Cas20ServiceTicketValidator validator = new Cas20ServiceTicketValidator(prefix + path);
+                validator.setAcceptCompressedResponse(true);
+                assertEquals(USERNAME, validator.validate("test", "test").getPrincipal().getName());
+                validator.setStreamResponse(true);
+                assertEquals(USERNAME, validator.validate("test", "test").getPrincipal().getName());
+            }
+        } finally {
+            compressingServer.stop(0);
+        }
+    }
+
+    @Test
+    public void testTemplateMethodsShareOneParse() throws Exception {
+        final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationSuccess><cas:user>"
+                + USERNAME
+                + "</cas:user><cas:attributes><cas:password>test</cas:password></cas:attributes></cas:authenticationSuccess></cas:serviceResponse>";
+        final List<Cas20ServiceResponse> parses = new ArrayList<Cas20ServiceResponse>();
+        final Cas20ServiceTicketValidator validator = new Cas20ServiceTicketValidator(CONST_CAS_SERVER_URL_PREFIX + "8088") {
+            @Override
+            protected String parsePrincipalFromResponse(final String response) {
+                parses.add(getParsedResponse(response));
+                return super.parsePrincipalFromResponse(response).toUpperCase();
+            }
+
+            @Override
+            protected Map<String, Object> extractCustomAttributes(final String xml) {
+                parses.add(getParsedResponse(xml));
+                return super.extractCustomAttributes(xml);
+            }
+        };
+
+        final Assertion assertion = validator.parseResponseFromServer(RESPONSE);
+        assertEquals(USERNAME.toUpperCase(), assertion.getPrincipal().getName());
+        assertEquals("test", assertion.getPrincipal().getAttributes().get("password"));
+        assertEquals(2, parses.size());
+        assertSame(parses.get(0), parses.get(1));
+        assertNotSame(parses.get(0), validator.getParsedResponse(RESPONSE));
+    }
+
+    @Test
+    public void testValidationUrlKeepsConstantParametersFirst() {
+        final Cas20ServiceTicketValidator validator = new Cas20ServiceTicketValidator("https://cas.example.com/cas");
+        validator.setProxyCallbackUrl("https://example.com/proxy?a=b");
+        validator.setRenew(true);
+        validator.setCustomParameters(Collections.singletonMap("format", "JSON"));
+        assertEquals("https://cas.example.com/cas/serviceValidate?renew=true&pgtUrl=https%3A%2F%2Fexample.com%2Fproxy%3Fa%3Db"
+                + "&format=JSON&service=https%3A%2F%2Fexample.com%2F&ticket=ST-1",
+                validator.constructValidationUrl("ST-1", "https://example.com/"));
+
+        validator.setProxyCallbackUrl(null);
+        validator.setRenew(false);
+        assertEquals("https://cas.example.com/cas/serviceValidate?format=JSON&service=s&ticket=ST-2",
+                validator.constructValidationUrl("ST-2", "s"));
+
+        validator.setCustomParameters(null);
+        assertEquals("https://cas.example.com/cas/serviceValidate?service=s",
+                validator.constructValidationUrl(null, "s"));
+    }
 }
@@ -0,0 +1,245 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jasig.cas.client.util.Deadline;
+import org.jasig.cas.client.util.ServerCallGuard;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link CasServerPool} and the {@link ServerSelectionPolicy} implementations.
+ *
+ * @since 3.6.2
+ */
+public class CasServerPoolTests {
+
+    private static final List<String> PREFIXES = Arrays.asList("https://cas1.example.com/cas",
+            "https://cas2.example.com/cas/");
+
+    @Test
+    public void roundRobinAlternatesNodes() {
+        final CasServerPool pool = new CasServerPool(PREFIXES, new RoundRobinServerSelectionPolicy());
+        final CasServerNode first = pool.select();
+        final CasServerNode second = pool.select();
+        assertNotSame(first, second);
+        assertEquals("https://cas1.example.com/cas/", pool.getNodes().get(0).getUrlPrefix());
+        pool.release(first, 1, true);
+        pool.release(second, 1, true);
+    }
+
+    @Test
+    public void leastOutstandingAvoidsBusyNode() {
+        final CasServerPool pool = new CasServerPool(PREFIXES, new LeastOutstandingServerSelectionPolicy());
+        final CasServerNode busy = pool.select();
+        for (int i = 0; i < 4; i++) {
+            final CasServerNode node = pool.select();
+            assertNotSame(busy, node);
+            pool.release(node, 1, true);
+        }
+        assertEquals(1, busy.getOutstandingRequests());
+    }
+
+    @Test
+    public void ewmaLatencyPrefersFastNode() {
+        final CasServerPool pool = new CasServerPool(PREFIXES, new EwmaLatencyServerSelectionPolicy());
+        final CasServerNode slow = pool.getNodes().get(0);
+        final CasServerNode fast = pool.getNodes().get(1);
+        slow.begin();
+        pool.release(slow, 500, true);
+        fast.begin();
+        pool.release(fast, 20, true);
+        for (int i = 0; i < 4; i++) {
+            final CasServerNode node = pool.select();
+            assertSame(fast, node);
+            pool.release(node, 20, true);
+        }
+    }
+
+    @Test
+    public void ewmaLatencyAvoidsFastFailingNode() {
+        final CasServerPool pool = new CasServerPool(PREFIXES, new EwmaLatencyServerSelectionPolicy());
+        pool.setEjectionFailureThreshold(0);
+        final CasServerNode failing = pool.getNodes().get(0);
+        final CasServerNode healthy = pool.getNodes().get(1);
+        failing.begin();
+        pool.release(failing, 0, false);
+        healthy.begin();
+        pool.release(healthy, 50, true);
+        assertEquals(1, failing.getCompletedCalls());
+        for (int i = 0; i < 4; i++) {
+            final CasServerNode node = pool.select();
+            assertSame(healthy, node);
+            pool.release(node, 50, true);
+        }
+    }
+
+    @Test
+    public void ewmaLatencyProbesUnmeasuredNodeOnce() {
+        final CasServerPool pool = new CasServerPool(PREFIXES, new EwmaLatencyServerSelectionPolicy());
+        final CasServerNode measured = pool.getNodes().get(0);
+        final CasServerNode unmeasured = pool.getNodes().get(1);
+        measured.begin();
+        pool.release(measured, 50, true);
+        assertSame(unmeasured, pool.select());
+        // the first call to the unmeasured node is still in flight
+        for (int i = 0; i < 4; i++) {
+            final CasServerNode node = pool.select();
+            assertSame(measured, node);
+            pool.release(node, 50, true);
+        }
+    }
+
+    @Test
+    public void ejectsFailingAndSlowNodes() {
+        final CasServerPool pool = new CasServerPool(PREFIXES, new RoundRobinServerSelectionPolicy());
+        pool.setEjectionFailureThreshold(2);
+        pool.setSlowCallThreshold(100);
+        final CasServerNode bad = pool.getNodes().get(0);
+        bad.begin();
+        pool.release(bad, 10, false);
+        assertFalse(bad.isEjected(System.currentTimeMillis()));
+        bad.begin();
+        pool.release(bad, 1000, true);
+        assertTrue(bad.isEjected(System.currentTimeMillis()));
+
+        for (int i = 0; i < 4; i++) {
+            final CasServerNode node = pool.select();
+            assertNotSame(bad, node);
+            pool.release(node, 1, true);
+        }
+
+        // every node ejected: all become eligible again
+        final CasServerNode good = pool.getNodes().get(1);
+        for (int i = 0; i < 2; i++) {
+            good.begin();
+            pool.release(good, 1, false);
+        }
+        assertTrue(good.isEjected(System.currentTimeMillis()));
+        assertNotNull(pool.select());
+    }
+
+    @Test
+    public void validatorEjectsTimingOutNode() throws Exception {
+        final HttpServer slowServer = startServer(1000);
+        final HttpServer fastServer = startServer(0);
+        try {
+            final String slowPrefix = "http://localhost:" + slowServer.getAddress().getPort() + "/cas/";
+            final String fastPrefix = "http://localhost:" + fastServer.getAddress().getPort() + "/cas/";
+            final CasServerPool pool = new CasServerPool(Arrays.asList(slowPrefix, fastPrefix),
+                    new RoundRobinServerSelectionPolicy());
+            pool.setEjectionFailureThreshold(2);
+            final Cas20ServiceTicketValidator validator = new Cas20ServiceTicketValidator(slowPrefix);
+            validator.setCasServerPool(pool);
+            final CasServerNode slow = pool.getNodes().get(0);
+
+            int unavailable = 0;
+            for (int i = 0; i < 4; i++) {
+                Deadline.setCurrent(Deadline.after(100));
+                try {
+                    assertEquals("username", validator.validate("ST-1", "service").getPrincipal().getName());
+                } catch (final CasServerUnavailableException e) {
+                    unavailable++;
+                }
+            }
+            assertEquals(2, unavailable);
+            assertTrue(slow.isEjected(System.currentTimeMillis()));
+
+            for (int i = 0; i < 3; i++) {
+                Deadline.setCurrent(Deadline.after(1000));
+                assertEquals("username", validator.validate("ST-1", "service").getPrincipal().getName());
+            }
+        } finally {
+            Deadline.setCurrent(null);
+            slowServer.stop(0);
+            fastServer.stop(0);
+        }
+    }
+
+    @Test
+    public void validatorDoesNotEjectNodeRefusedByGuard() throws Exception {
+        final HttpServer first = startServer(0);
+        final HttpServer second = startServer(0);
+        try {
+            final String busyPrefix = "http://localhost:" + first.getAddress().getPort() + "/cas/";
+            final String freePrefix = "http://localhost:" + second.getAddress().getPort() + "/cas/";
+            final CasServerPool pool = new CasServerPool(Arrays.asList(busyPrefix, freePrefix),
+                    new RoundRobinServerSelectionPolicy());
+            pool.setEjectionFailureThreshold(1);
+            final ServerCallGuard guard = new ServerCallGuard(1, 0);
+            final Cas20ServiceTicketValidator validator = new Cas20ServiceTicketValidator(busyPrefix);
+            validator.setCasServerPool(pool);
+            validator.setServerCallGuard(guard);
+            final CasServerNode busy = pool.getNodes().get(0);
+
+            // the client itself is saturated: the bulkhead for the first node is full
+            final ServerCallGuard.Permit permit = guard.acquire(busyPrefix);
+            try {
+                int refused = 0;
+                for (int i = 0; i < 4; i++) {
+                    try {
+                        assertEquals("username", validator.validate("ST-1", "service").getPrincipal().getName());
+                    } catch (final CasServerUnavailableException e) {
+                        refused++;
+                    }
+                }
+                assertEquals(2, refused);
+            } finally {
+                permit.release(true);
+            }
+            assertFalse(busy.isEjected(System.currentTimeMillis()));
+            assertEquals(0, busy.getOutstandingRequests());
+            assertEquals(0, busy.getCompletedCalls());
+        } finally {
+            first.stop(0);
+            second.stop(0);
+        }
+    }
+
+    private static HttpServer startServer(final long delay) throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(delay);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                final byte[] body = ("<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'>"
+                        + "<cas:authenticationSuccess><cas:user>username</cas:user></cas:authenticationSuccess>"
+                        + "</cas:serviceResponse>").getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                final OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                out.close();
+            }
+        });
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jasig.cas.client.authentication.AttributePrincipalImpl;
+import org.jasig.cas.client.util.Deadline;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link SingleFlightTicketValidator}.
+ *
+ * @since 3.6.2
+ */
+public final class SingleFlightTicketValidatorTests {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final CountDownLatch entered = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    private final TicketValidator delegate = new TicketValidator() {
+        @Override
+        public Assertion validate(final String ticket, final String service) throws TicketValidationException {
+            calls.incrementAndGet();
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                throw new TicketValidationException(e);
+            }
+            if (ticket.startsWith("bad")) {
+                throw new TicketValidationException("INVALID_TICKET");
+            }
+            if (ticket.startsWith("down") && calls.get() == 1) {
+                throw new CasServerUnavailableException("Read timed out");
+            }
+            return new AssertionImpl(new AttributePrincipalImpl("user-" + calls.get()));
+        }
+    };
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentValidationsShareOneCall() throws Exception {
+        final SingleFlightTicketValidator validator = new SingleFlightTicketValidator(this.delegate);
+        final Future<Assertion> first = this.executor.submit(validation(validator, "ST-1"));
+        // the flight is registered before the delegate is entered
+        assertTrue(this.entered.await(5, TimeUnit.SECONDS));
+        final Future<Assertion> second = this.executor.submit(validation(validator, "ST-1"));
+        this.release.countDown();
+
+        assertSame(first.get(), second.get());
+        assertEquals(1, this.calls.get());
+
+        // retained for a request arriving just after the call completed
+        assertSame(first.get(), validator.validate("ST-1", "service"));
+        assertEquals(1, this.calls.get());
+    }
+
+    @Test
+    public void followerOutlivingDeadlineReportsUnavailableServer() throws Exception {
+        final SingleFlightTicketValidator validator = new SingleFlightTicketValidator(this.delegate);
+        final Future<Assertion> leader = this.executor.submit(validation(validator, "ST-1"));
+        assertTrue(this.entered.await(5, TimeUnit.SECONDS));
+        Deadline.setCurrent(Deadline.after(50));
+        try {
+            validator.validate("ST-1", "service");
+            fail("CasServerUnavailableException expected");
+        } catch (final CasServerUnavailableException e) {
+            // a slow CAS server is not an invalid ticket
+        } finally {
+            Deadline.setCurrent(null);
+            this.release.countDown();
+        }
+        assertNotNull(leader.get());
+        assertEquals(1, this.calls.get());
+    }
+
+    @Test
+    public void differentServicesAreNotCoalesced() throws Exception {
+        this.release.countDown();
+        final SingleFlightTicketValidator validator = new SingleFlightTicketValidator(this.delegate);
+        validator.validate("ST-1", "service");
+        validator.validate("ST-1", "other");
+        assertEquals(2, this.calls.get());
+    }
+
+    @Test
+    public void sharesFailures() throws Exception {
+        this.release.countDown();
+        final SingleFlightTicketValidator validator = new SingleFlightTicketValidator(this.delegate);
+        for (int i = 0; i < 2; i++) {
+            try {
+                validator.validate("bad-1", "service");
+                fail("TicketValidationException expected");
+            } catch (final TicketValidationException e) {
+                assertEquals("INVALID_TICKET", e.getMessage());
+            }
+        }
+        assertEquals(1, this.calls.get());
+    }
+
+    @Test
+    public void forgetsResultsAfterRetention() throws Exception {
+        this.release.countDown();
+        final SingleFlightTicketValidator validator = new SingleFlightTicketValidator(this.delegate, 50);
+        validator.validate("ST-1", "service");
+        Thread.sleep(100);
+        validator.validate("ST-1", "service");
+        assertEquals(2, this.calls.get());
+        assertEquals(1, validator.getFlightCount());
+    }
+
+    @Test
+    public void sweepsExpiredResultsOncePerRetentionWindow() throws Exception {
+        this.release.countDown();
+        final SingleFlightTicketValidator validator = new SingleFlightTicketValidator(this.delegate, 50);
+        validator.validate("ST-1", "service");
+        validator.validate("ST-2", "service");
+        assertEquals(2, validator.getFlightCount());
+        Thread.sleep(100);
+        validator.validate("ST-3", "service");
+        assertEquals(1, validator.getFlightCount());
+    }
+
+    @Test
+    public void asyncValidationsShareOneCall() throws Exception {
+        final SingleFlightTicketValidator validator = new SingleFlightTicketValidator(this.delegate, 0);
+        final CompletableFuture<Assertion> first = validator.validateAsync("ST-1", "service", this.executor);
+        final CompletableFuture<Assertion> second = validator.validateAsync("ST-1", "service", this.executor);
+        this.release.countDown();
+        assertSame(first.get(5, TimeUnit.SECONDS), second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, this.calls.get());
+        assertEquals(0, validator.getFlightCount());
+    }
+
+    @Test
+    public void doesNotRetainUnavailableServer() throws Exception {
+        this.release.countDown();
+        final SingleFlightTicketValidator validator = new SingleFlightTicketValidator(this.delegate);
+        try {
+            validator.validate("down-1", "service");
+            fail("CasServerUnavailableException expected");
+        } catch (final CasServerUnavailableException e) {
+            // expected
+        }
+        assertEquals(0, validator.getFlightCount());
+        assertNotNull(validator.validate("down-1", "service"));
+        assertEquals(2, this.calls.get());
+    }
+
+    @Test
+    public void doesNotRetainRejectedExecution() throws Exception {
+        this.release.countDown();
+        final SingleFlightTicketValidator validator = new SingleFlightTicketValidator(this.delegate);
+        final CompletableFuture<Assertion> rejected = validator.validateAsync("ST-1", "service", new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException("full");
+            }
+        });
+        try {
+            rejected.get(5, TimeUnit.SECONDS);
+            fail("ExecutionException expected");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof CasServerUnavailableException);
+        }
+        assertEquals(0, validator.getFlightCount());
+        assertNotNull(validator.validateAsync("ST-1", "service", this.executor).get(5, TimeUnit.SECONDS));
+        assertEquals(1, this.calls.get());
+    }
+
+    private static Callable<Assertion> validation(final TicketValidator validator, final String ticket) {
+        return new Callable<Assertion>() {
+            @Override
+            public Assertion call() throws Exception {
+                return validator.validate(ticket, "service");
+            }
+        };
+    }
+}
@@ -18,16 +18,19 @@
  */
 package org.jasig.cas.client.validation.json;
 
+import java.util.Arrays;
+import java.util.Map;
 import org.jasig.cas.client.PublicTestHttpServer;
+import org.jasig.cas.client.authentication.AttributeFilter;
 import org.jasig.cas.client.proxy.ProxyGrantingTicketStorage;
 import org.jasig.cas.client.proxy.ProxyGrantingTicketStorageImpl;
 import org.jasig.cas.client.proxy.ProxyRetriever;
 import org.jasig.cas.client.validation.AbstractTicketValidatorTests;
 import org.jasig.cas.client.validation.Assertion;
 import org.jasig.cas.client.validation.TicketValidationException;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
-import junit.framework.Assert;
 
 public class Cas30JsonServiceTicketValidatorTests extends AbstractTicketValidatorTests {
     private static final PublicTestHttpServer server = PublicTestHttpServer.instance(8088);
@@ -106,4 +109,67 @@ public class Cas30JsonServiceTicketValidatorTests extends AbstractTicketValidato
         server.content = RESPONSE.getBytes(server.encoding);
         ticketValidator.validate("test", "test");
     }
+
+    @Test
+    public void testStreamedJsonResponse() throws Exception {
+        final String RESPONSE = "\n  { " +
+            "\"serviceResponse\" : {  "  +
+                "\"authenticationSuccess\" : {   " +
+                    "\"user\" : \"casuser\",  " +
+                    "\"authenticationDate\" : [ 2020, 1, 1 ],  " +
+                    "\"proxies\" : [ \"https://proxy\" ],  " +
+                    "\"attributes\" : {      " +
+                        "\"cn\" : [ \"Name\" ], \"age\" : 42, \"nested\" : { \"a\" : \"b\" }  " +
+                    '}' +
+                '}' +
+            '}' +
+        '}';
+
+        server.content = RESPONSE.getBytes(server.encoding);
+        ticketValidator.setStreamResponse(true);
+        final Assertion assertion = ticketValidator.validate("test", "test");
+        Assert.assertEquals("casuser", assertion.getPrincipal().getName());
+        Assert.assertEquals(42, assertion.getPrincipal().getAttributes().get("age"));
+        Assert.assertTrue(assertion.getPrincipal().getAttributes().get("cn") instanceof java.util.List);
+        Assert.assertTrue(assertion.getPrincipal().getAttributes().get("nested") instanceof java.util.Map);
+    }
+
+    @Test(expected = TicketValidationException.class)
+    public void testStreamedFailingJsonResponse() throws Exception {
+        final String RESPONSE = "{ \"serviceResponse\" : { \"authenticationFailure\" : { " +
+                "\"code\" : \"INVALID_TICKET\", \"description\" : \"Description\" } } }";
+
+        server.content = RESPONSE.getBytes(server.encoding);
+        ticketValidator.setStreamResponse(true);
+        ticketValidator.validate("test", "test");
+    }
+
+    @Test(expected = TicketValidationException.class)
+    public void testMalformedJsonResponseIsNotParsedAsXml() throws Exception {
+        server.content = "{ \"serviceResponse\" : { \"authenticationSuccess\" : ".getBytes(server.encoding);
+        ticketValidator.validate("test", "test");
+    }
+
+    @Test
+    public void testStreamedXmlResponseWithJson() throws Exception {
+        final String RESPONSE = "<cas:serviceResponse xmlns:cas='http://www.yale.edu/tp/cas'><cas:authenticationSuccess><cas:user>"
+                + "test</cas:user></cas:authenticationSuccess></cas:serviceResponse>";
+        server.content = RESPONSE.getBytes(server.encoding);
+        ticketValidator.setStreamResponse(true);
+        Assert.assertEquals("test", ticketValidator.validate("test", "test").getPrincipal().getName());
+    }
+
+    @Test
+    public void testAttributeFilter() throws Exception {
+        final String RESPONSE = "{ \"serviceResponse\" : { \"authenticationSuccess\" : { \"user\" : \"casuser\", " +
+                "\"attributes\" : { \"cn\" : [ \"Name\" ], \"memberOf\" : [ \"a\", \"b\", { \"c\" : 1 } ], " +
+                "\"secret\" : { \"nested\" : [ 1, 2 ] } } } } }";
+
+        server.content = RESPONSE.getBytes(server.encoding);
+        ticketValidator.setAttributeFilter(new AttributeFilter(Arrays.asList("cn", "memberOf"), null, 2));
+        final Map<String, Object> attributes = ticketValidator.validate("test", "test").getPrincipal().getAttributes();
+        Assert.assertEquals(Arrays.asList("Name"), attributes.get("cn"));
+        Assert.assertEquals(Arrays.asList("a", "b"), attributes.get("memberOf"));
+        Assert.assertFalse(attributes.containsKey("secret"));
+    }
 }
@@ -0,0 +1,219 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jasig.cas.client.util.CommonUtils;
+
+/**
+ * {@link HttpURLConnection} adapter that sends its request through a shared {@link HttpClient}.
+ * <p>
+ * The request is sent when the response is first asked for.  A positive read timeout (or, failing that, connect
+ * timeout) bounds the time until the response headers arrive.  {@link #disconnect()} only closes the response
+ * body; the underlying connection stays with the client for reuse.
+ *
+ * @since 3.6.2
+ */
+final class Http2URLConnection extends HttpURLConnection {
+
+    /** Headers managed by {@link HttpClient} itself, which it refuses to accept from callers. */
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<String>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade", "keep-alive"));
+
+    private final HttpClient httpClient;
+
+    private ByteArrayOutputStream requestBody;
+
+    private HttpResponse<InputStream> response;
+
+    private List<Map.Entry<String, List<String>>> headerList;
+
+    Http2URLConnection(final URL url, final HttpClient httpClient) {
+        super(url);
+        this.httpClient = httpClient;
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (this.connected) {
+            return;
+        }
+
+        final HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(this.url.toURI());
+        } catch (final URISyntaxException e) {
+            throw new IOException("Invalid URL " + this.url, e);
+        }
+
+        final int timeout = getReadTimeout() > 0 ? getReadTimeout() : getConnectTimeout();
+        if (timeout > 0) {
+            builder.timeout(Duration.ofMillis(timeout));
+        }
+        for (final Map.Entry<String, List<String>> header : getRequestProperties().entrySet()) {
+            if (header.getKey() == null || RESTRICTED_HEADERS.contains(header.getKey().toLowerCase())) {
+                continue;
+            }
+            for (final String value : header.getValue()) {
+                builder.header(header.getKey(), value);
+            }
+        }
+        builder.method(this.method, this.requestBody == null ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(this.requestBody.toByteArray()));
+
+        try {
+            this.response = this.httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (final HttpTimeoutException e) {
+            final SocketTimeoutException timeoutException = new SocketTimeoutException(e.getMessage());
+            timeoutException.initCause(e);
+            throw timeoutException;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + this.url);
+        }
+        this.responseCode = this.response.statusCode();
+        this.connected = true;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        if (this.connected) {
+            throw new ProtocolException("Cannot write output after reading input.");
+        }
+        if (!getDoOutput()) {
+            throw new ProtocolException("cannot write to a URLConnection if doOutput=false - call setDoOutput(true)");
+        }
+        if ("GET".equals(this.method)) {
+            this.method = "POST";
+        }
+        if (this.requestBody == null) {
+            this.requestBody = new ByteArrayOutputStream();
+        }
+        return this.requestBody;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        connect();
+        if (this.responseCode >= HTTP_BAD_REQUEST) {
+            if (this.responseCode == HTTP_NOT_FOUND || this.responseCode == HTTP_GONE) {
+                throw new FileNotFoundException(this.url.toString());
+            }
+            throw new IOException("Server returned HTTP response code: " + this.responseCode + " for URL: "
+                    + this.url);
+        }
+        return this.response.body();
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return this.connected && this.responseCode >= HTTP_BAD_REQUEST ? this.response.body() : null;
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        connect();
+        return this.responseCode;
+    }
+
+    @Override
+    public String getResponseMessage() throws IOException {
+        connect();
+        // HTTP/2 has no reason phrase
+        return null;
+    }
+
+    @Override
+    public String getHeaderField(final String name) {
+        if (!connectQuietly() || name == null) {
+            return null;
+        }
+        return this.response.headers().firstValue(name).orElse(null);
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        if (!connectQuietly()) {
+            return super.getHeaderFields();
+        }
+        return this.response.headers().map();
+    }
+
+    @Override
+    public String getHeaderFieldKey(final int n) {
+        final List<Map.Entry<String, List<String>>> headers = getHeaderList();
+        return n >= 0 && n < headers.size() ? headers.get(n).getKey() : null;
+    }
+
+    @Override
+    public String getHeaderField(final int n) {
+        final List<Map.Entry<String, List<String>>> headers = getHeaderList();
+        return n >= 0 && n < headers.size() ? headers.get(n).getValue().get(0) : null;
+    }
+
+    private List<Map.Entry<String, List<String>>> getHeaderList() {
+        if (this.headerList == null) {
+            this.headerList = connectQuietly() ? new ArrayList<Map.Entry<String, List<String>>>(
+                    this.response.headers().map().entrySet()) : new ArrayList<Map.Entry<String, List<String>>>();
+        }
+        return this.headerList;
+    }
+
+    private boolean connectQuietly() {
+        try {
+            connect();
+            return true;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        if (this.response != null) {
+            CommonUtils.closeQuietly(this.response.body());
+        }
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return false;
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.http2;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.net.http.HttpClient;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.Properties;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import org.jasig.cas.client.ssl.HttpURLConnectionFactory;
+
+/**
+ * Connection factory that sends back-channel requests through a shared {@link HttpClient} instead of
+ * {@link HttpURLConnection}.  HTTPS requests negotiate HTTP/2, so concurrent validation and proxy requests to the
+ * same CAS server are multiplexed over a few connections; servers that do not speak HTTP/2 are reached over
+ * HTTP/1.1 with keep-alive.
+ * <p>
+ * The factory returns {@link HttpURLConnection} adapters, so it can be set on any validator or proxy retriever in
+ * place of {@link org.jasig.cas.client.ssl.HttpsURLConnectionFactory}, or selected in the validation filters with
+ * the <code>urlConnectionFactoryClass</code> init parameter.  TLS uses the default {@link SSLContext} unless an SSL
+ * configuration in the format of {@link org.jasig.cas.client.ssl.HttpsURLConnectionFactory} supplies a client key
+ * store.  {@link HttpClient} always verifies host names itself, so a custom {@link HostnameVerifier} is refused.
+ * <p>
+ * Like {@link HttpURLConnection}, the client follows redirects, except from HTTPS to HTTP.
+ *
+ * @since 3.6.2
+ */
+public final class Http2URLConnectionFactory implements HttpURLConnectionFactory {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final long DEFAULT_CONNECT_TIMEOUT = 10000L;
+
+    private final long connectTimeout;
+
+    private final Properties sslConfiguration;
+
+    private transient volatile HttpClient httpClient;
+
+    public Http2URLConnectionFactory() {
+        this(DEFAULT_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * Constructor used by the validation filters to pass on their SSL settings.
+     *
+     * @param verifier must be null: {@link HttpClient} cannot use a custom {@link HostnameVerifier}.
+     * @param config the SSL configuration, as accepted by {@link org.jasig.cas.client.ssl.HttpsURLConnectionFactory}.
+     * @throws IllegalArgumentException if a host name verifier is given.
+     */
+    public Http2URLConnectionFactory(final HostnameVerifier verifier, final Properties config) {
+        this(DEFAULT_CONNECT_TIMEOUT, config);
+        if (verifier != null) {
+            throw new IllegalArgumentException("Http2URLConnectionFactory cannot use the hostname verifier "
+                    + verifier.getClass().getName() + "; HttpClient always verifies host names.");
+        }
+    }
+
+    /**
+     * @param connectTimeout the time in milliseconds to wait for a new connection to be established.
+     */
+    public Http2URLConnectionFactory(final long connectTimeout) {
+        this(connectTimeout, new Properties());
+    }
+
+    /**
+     * @param connectTimeout the time in milliseconds to wait for a new connection to be established.
+     * @param config the SSL configuration, as accepted by {@link org.jasig.cas.client.ssl.HttpsURLConnectionFactory}.
+     */
+    public Http2URLConnectionFactory(final long connectTimeout, final Properties config) {
+        this.connectTimeout = connectTimeout;
+        this.sslConfiguration = config != null ? config : new Properties();
+    }
+
+    @Override
+    public HttpURLConnection buildHttpURLConnection(final URLConnection url) {
+        return new Http2URLConnection(url.getURL(), getHttpClient());
+    }
+
+    public long getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    /**
+     * @return the client shared by every connection built by this factory.
+     */
+    HttpClient getHttpClient() {
+        HttpClient client = this.httpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = this.httpClient;
+                if (client == null) {
+                    final HttpClient.Builder builder = HttpClient.newBuilder()
+                            .version(HttpClient.Version.HTTP_2)
+                            .followRedirects(HttpClient.Redirect.NORMAL)
+                            .connectTimeout(Duration.ofMillis(this.connectTimeout));
+                    final SSLContext sslContext = createSSLContext();
+                    if (sslContext != null) {
+                        builder.sslContext(sslContext);
+                    }
+                    client = builder.build();
+                    this.httpClient = client;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * @return the context holding the configured client key store, or null to use the default context.
+     */
+    private SSLContext createSSLContext() {
+        final String keyStoreType = this.sslConfiguration.getProperty("keyStoreType");
+        final String keyStorePath = this.sslConfiguration.getProperty("keyStorePath");
+        final String keyStorePass = this.sslConfiguration.getProperty("keyStorePass");
+        if (keyStoreType == null || keyStorePath == null || keyStorePass == null) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(keyStorePath)) {
+            final KeyStore keyStore = KeyStore.getInstance(keyStoreType);
+            keyStore.load(in, keyStorePass.toCharArray());
+            final KeyManagerFactory keyManager = KeyManagerFactory.getInstance(
+                    this.sslConfiguration.getProperty("keyManagerType", KeyManagerFactory.getDefaultAlgorithm()));
+            keyManager.init(keyStore, this.sslConfiguration.getProperty("certificatePassword", keyStorePass)
+                    .toCharArray());
+            final SSLContext sslContext = SSLContext.getInstance(this.sslConfiguration.getProperty("protocol", "TLS"));
+            sslContext.init(keyManager.getKeyManagers(), null, null);
+            return sslContext;
+        } catch (final Exception e) {
+            throw new IllegalStateException("Unable to load the client key store " + keyStorePath, e);
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final Http2URLConnectionFactory that = (Http2URLConnectionFactory) o;
+        return this.connectTimeout == that.connectTimeout && this.sslConfiguration.equals(that.sslConfiguration);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(this.connectTimeout) + this.sslConfiguration.hashCode();
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.http2;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jasig.cas.client.ssl.AnyHostnameVerifier;
+import org.jasig.cas.client.util.CommonUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link Http2URLConnectionFactory}.
+ *
+ * @since 3.6.2
+ */
+public final class Http2URLConnectionFactoryTests {
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/ok", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final byte[] body = ("yes\n" + exchange.getRequestURI().getQuery()).getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("X-Test", "value");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        this.server.createContext("/error", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final byte[] body = "failed".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(500, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        this.server.createContext("/moved", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().add("Location", "/ok?" + exchange.getRequestURI().getQuery());
+                exchange.sendResponseHeaders(302, -1);
+                exchange.close();
+            }
+        });
+        this.server.start();
+        this.baseUrl = "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        this.server.stop(0);
+    }
+
+    @Test
+    public void readsResponseThroughSharedClient() throws Exception {
+        final Http2URLConnectionFactory factory = new Http2URLConnectionFactory();
+        for (int i = 0; i < 3; i++) {
+            assertEquals("yes\nticket=ST-" + i, CommonUtils.getResponseFromServer(
+                    new URL(this.baseUrl + "/ok?ticket=ST-" + i), factory, "UTF-8"));
+        }
+    }
+
+    @Test
+    public void exposesStatusAndHeaders() throws Exception {
+        final URL url = new URL(this.baseUrl + "/ok?a=b");
+        final HttpURLConnection conn = new Http2URLConnectionFactory().buildHttpURLConnection(url.openConnection());
+        conn.setRequestProperty("Connection", "close");
+        assertEquals(200, conn.getResponseCode());
+        assertEquals("value", conn.getHeaderField("x-test"));
+        conn.disconnect();
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnErrorStatus() throws Exception {
+        final URL url = new URL(this.baseUrl + "/error");
+        final HttpURLConnection conn = new Http2URLConnectionFactory().buildHttpURLConnection(url.openConnection());
+        try {
+            assertEquals(500, conn.getResponseCode());
+            assertNotNull(conn.getErrorStream());
+            conn.getInputStream();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    @Test
+    public void followsRedirectsLikeHttpURLConnection() throws Exception {
+        assertEquals("yes\nticket=ST-1", CommonUtils.getResponseFromServer(
+                new URL(this.baseUrl + "/moved?ticket=ST-1"), new Http2URLConnectionFactory(), "UTF-8"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesHostnameVerifier() {
+        new Http2URLConnectionFactory(new AnyHostnameVerifier(), new Properties());
+    }
+
+    @Test
+    public void acceptsFilterSslSettingsWithoutVerifier() throws Exception {
+        final Http2URLConnectionFactory factory = new Http2URLConnectionFactory(null, new Properties());
+        assertEquals(new Http2URLConnectionFactory(), factory);
+        assertEquals("yes\nticket=ST-1", CommonUtils.getResponseFromServer(
+                new URL(this.baseUrl + "/ok?ticket=ST-1"), factory, "UTF-8"));
+    }
+
+    @Test
+    public void equalityDependsOnTimeout() {
+        assertEquals(new Http2URLConnectionFactory(), new Http2URLConnectionFactory());
+        assertNotEquals(new Http2URLConnectionFactory(), new Http2URLConnectionFactory(500));
+    }
+}
@@ -35,6 +35,9 @@ public final class SamlUtils {
 
     private static final DateTimeFormatter ISO_FORMAT = ISODateTimeFormat.dateTimeNoMillis();
 
+    /** The current time formatted by {@link #formatCurrentUtcTime()}, reused within the same second. */
+    private static volatile FormattedSecond currentSecond = new FormattedSecond(Long.MIN_VALUE, null);
+
     private SamlUtils() {
         // nothing to do
     }
@@ -43,10 +46,38 @@ public final class SamlUtils {
         return ISO_FORMAT.print(new DateTime(date).withZone(DateTimeZone.UTC));
     }
 
+    /**
+     * Formats the current time like {@link #formatForUtcTime(Date)}.  The format has second resolution, so the
+     * formatted value is cached and only recomputed when the second changes.
+     *
+     * @return the current UTC time in ISO 8601 format without milliseconds.
+     */
+    public static String formatCurrentUtcTime() {
+        final long second = System.currentTimeMillis() / 1000L;
+        FormattedSecond formatted = currentSecond;
+        if (formatted.second != second) {
+            formatted = new FormattedSecond(second, formatForUtcTime(new Date(second * 1000L)));
+            currentSecond = formatted;
+        }
+        return formatted.value;
+    }
+
     public static Date parseUtcDate(final String date) {
         if (CommonUtils.isEmpty(date)) {
             return null;
         }
         return ISODateTimeFormat.dateTimeParser().parseDateTime(date).toDate();
     }
+
+    private static final class FormattedSecond {
+
+        private final long second;
+
+        private final String value;
+
+        FormattedSecond(final long second, final String value) {
+            this.second = second;
+            this.value = value;
+        }
+    }
 }
@@ -0,0 +1,274 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.jasig.cas.client.authentication.AttributeFilter;
+import org.jasig.cas.client.authentication.AttributeValuePool;
+import org.jasig.cas.client.authentication.CompactAttributeMap;
+import org.jasig.cas.client.util.XmlUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The content of a SAML 1.1 <code>samlValidate</code> response, extracted in a single pass over the XML.
+ * <p>
+ * Each value is taken from the first element that the equivalent XPath expression would select:
+ * <code>sa:Assertion/sa:Conditions</code> for the validity dates,
+ * <code>sa:AuthenticationStatement/sa:Subject/sa:NameIdentifier</code> for the principal,
+ * <code>sa:AuthenticationStatement/@AuthenticationMethod</code> for the authentication method, and every
+ * <code>sa:AttributeStatement/sa:Attribute</code> for the attributes.
+ *
+ * @since 3.6.2
+ */
+public final class Saml11Response {
+
+    private static final String SAML_ASSERTION_NS = "urn:oasis:names:tc:SAML:1.0:assertion";
+
+    private final String notBefore;
+
+    private final String notOnOrAfter;
+
+    private final String nameIdentifier;
+
+    private final String authenticationMethod;
+
+    private final Map<String, Object> attributes;
+
+    private Saml11Response(final Handler handler) {
+        this.notBefore = handler.notBefore;
+        this.notOnOrAfter = handler.notOnOrAfter;
+        this.nameIdentifier = handler.nameIdentifier;
+        this.authenticationMethod = handler.authenticationMethod;
+        this.attributes = handler.attributes.build();
+    }
+
+    /**
+     * Parses a SAML 1.1 response. The input is read exactly once.
+     *
+     * @param source the XML to parse.
+     * @return the parsed response.
+     * @throws TicketValidationException if the XML cannot be parsed.
+     */
+    public static Saml11Response parse(final InputSource source) throws TicketValidationException {
+        return parse(source, AttributeFilter.ACCEPT_ALL, AttributeValuePool.getDefault());
+    }
+
+    /**
+     * Parses a SAML 1.1 response. The input is read exactly once.
+     *
+     * @param source the XML to parse.
+     * @param filter the attributes and values to keep; the text of the others is never turned into a String.
+     * @return the parsed response.
+     * @throws TicketValidationException if the XML cannot be parsed.
+     */
+    public static Saml11Response parse(final InputSource source, final AttributeFilter filter)
+            throws TicketValidationException {
+        return parse(source, filter, AttributeValuePool.getDefault());
+    }
+
+    /**
+     * Parses a SAML 1.1 response. The input is read exactly once.
+     *
+     * @param source the XML to parse.
+     * @param filter the attributes and values to keep; the text of the others is never turned into a String.
+     * @param pool the pool to canonicalise attribute names and values through; null not to pool them.
+     * @return the parsed response.
+     * @throws TicketValidationException if the XML cannot be parsed.
+     */
+    public static Saml11Response parse(final InputSource source, final AttributeFilter filter,
+                                       final AttributeValuePool pool) throws TicketValidationException {
+        final Handler handler = new Handler(filter, pool);
+        try {
+            XmlUtils.parse(source, handler);
+        } catch (final Exception e) {
+            throw new TicketValidationException("Error processing SAML response", e);
+        }
+        return new Saml11Response(handler);
+    }
+
+    /**
+     * @return the <code>NotBefore</code> attribute of the assertion conditions, or null.
+     */
+    public String getNotBefore() {
+        return this.notBefore;
+    }
+
+    /**
+     * @return the <code>NotOnOrAfter</code> attribute of the assertion conditions, or null.
+     */
+    public String getNotOnOrAfter() {
+        return this.notOnOrAfter;
+    }
+
+    /**
+     * @return the text of the authentication statement subject's <code>NameIdentifier</code>, or null if there is
+     * none.
+     */
+    public String getNameIdentifier() {
+        return this.nameIdentifier;
+    }
+
+    /**
+     * @return the <code>AuthenticationMethod</code> of the authentication statement, or an empty string.
+     */
+    public String getAuthenticationMethod() {
+        return this.authenticationMethod == null ? "" : this.authenticationMethod;
+    }
+
+    /**
+     * @return the attributes keyed by <code>AttributeName</code>. Single values are Strings, other values are
+     * collected into a {@link Collection}. The map is an immutable {@link CompactAttributeMap}.
+     */
+    public Map<String, Object> getAttributes() {
+        return this.attributes;
+    }
+
+    private static final class Handler extends DefaultHandler {
+
+        private String notBefore;
+
+        private String notOnOrAfter;
+
+        private String nameIdentifier;
+
+        private String authenticationMethod;
+
+        private final CompactAttributeMap.Builder attributes;
+
+        private final int maxValues;
+
+        /** Local names of the open elements in the SAML assertion namespace; null for other elements. */
+        private String[] path = new String[16];
+
+        private int depth;
+
+        private final StringBuilder text = new StringBuilder();
+
+        /** Depth of the element whose text is being captured, or 0. */
+        private int captureDepth;
+
+        private boolean capturingNameIdentifier;
+
+        private String attributeName;
+
+        private List<String> attributeValues;
+
+        Handler(final AttributeFilter filter, final AttributeValuePool pool) {
+            this.attributes = CompactAttributeMap.builder(pool).filter(filter);
+            this.maxValues = filter.getMaxValues();
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName,
+                                 final Attributes atts) throws SAXException {
+            final String samlName = SAML_ASSERTION_NS.equals(uri) ? localName : null;
+            push(samlName);
+            final String parent = parent(1);
+
+            if (this.captureDepth > 0 || samlName == null && !"AttributeValue".equals(localName)) {
+                return;
+            }
+
+            if ("Conditions".equals(samlName) && "Assertion".equals(parent)) {
+                if (this.notBefore == null) {
+                    this.notBefore = atts.getValue("NotBefore");
+                }
+                if (this.notOnOrAfter == null) {
+                    this.notOnOrAfter = atts.getValue("NotOnOrAfter");
+                }
+            } else if ("AuthenticationStatement".equals(samlName)) {
+                if (this.authenticationMethod == null) {
+                    this.authenticationMethod = atts.getValue("AuthenticationMethod");
+                }
+            } else if ("NameIdentifier".equals(samlName) && this.nameIdentifier == null && "Subject".equals(parent)
+                    && "AuthenticationStatement".equals(parent(2))) {
+                this.capturingNameIdentifier = true;
+                startCapture();
+            } else if ("Attribute".equals(samlName) && "AttributeStatement".equals(parent)) {
+                final String value = atts.getValue("AttributeName");
+                final String name = value == null ? "" : value;
+                if (this.attributes.accepts(name)) {
+                    this.attributeName = name;
+                    this.attributeValues = new ArrayList<String>(2);
+                }
+            } else if ("AttributeValue".equals(localName) && this.attributeValues != null
+                    && (this.maxValues == 0 || this.attributeValues.size() < this.maxValues)) {
+                startCapture();
+            }
+        }
+
+        @Override
+        public void characters(final char[] ch, final int start, final int length) throws SAXException {
+            if (this.captureDepth > 0) {
+                this.text.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+            if (this.captureDepth == this.depth) {
+                this.captureDepth = 0;
+                if (this.capturingNameIdentifier) {
+                    this.nameIdentifier = this.text.toString();
+                    this.capturingNameIdentifier = false;
+                } else {
+                    this.attributeValues.add(this.text.toString());
+                }
+            } else if (this.captureDepth == 0 && this.attributeValues != null && "Attribute".equals(parent(0))) {
+                if (this.attributeValues.size() == 1) {
+                    this.attributes.put(this.attributeName, this.attributeValues.get(0));
+                } else {
+                    this.attributes.put(this.attributeName, this.attributeValues);
+                }
+                this.attributeName = null;
+                this.attributeValues = null;
+            }
+            this.depth--;
+        }
+
+        private void startCapture() {
+            this.text.setLength(0);
+            this.captureDepth = this.depth;
+        }
+
+        private void push(final String samlName) {
+            if (this.depth == this.path.length) {
+                final String[] grown = new String[this.path.length * 2];
+                System.arraycopy(this.path, 0, grown, 0, this.path.length);
+                this.path = grown;
+            }
+            this.path[this.depth++] = samlName;
+        }
+
+        /**
+         * @param level 0 for the current element, 1 for its parent, and so on.
+         */
+        private String parent(final int level) {
+            final int index = this.depth - 1 - level;
+            return index >= 0 ? this.path[index] : null;
+        }
+    }
+}
@@ -22,8 +22,6 @@ import javax.servlet.FilterConfig;
 
 import org.jasig.cas.client.Protocol;
 import org.jasig.cas.client.configuration.ConfigurationKeys;
-import org.jasig.cas.client.ssl.HttpURLConnectionFactory;
-import org.jasig.cas.client.ssl.HttpsURLConnectionFactory;
 
 /**
  * Implementation of TicketValidationFilter that can instanciate a SAML 1.1 Ticket Validator.
@@ -49,10 +47,15 @@ public class Saml11TicketValidationFilter extends AbstractTicketValidationFilter
         validator.setTolerance(tolerance);
         validator.setRenew(getBoolean(ConfigurationKeys.RENEW));
 
-        final HttpURLConnectionFactory factory = new HttpsURLConnectionFactory(getHostnameVerifier(), getSSLConfig());
-        validator.setURLConnectionFactory(factory);
+        validator.setURLConnectionFactory(getURLConnectionFactory());
 
         validator.setEncoding(getString(ConfigurationKeys.ENCODING));
+        validator.setMaxResponseSize(getLong(ConfigurationKeys.MAX_RESPONSE_SIZE));
+        validator.setAcceptCompressedResponse(getBoolean(ConfigurationKeys.ACCEPT_COMPRESSED_RESPONSE));
+        validator.setAttributeFilter(getAttributeFilter());
+        validator.setAttributeValuePool(getAttributeValuePool());
+        validator.setServerCallGuard(getServerCallGuard());
+        validator.setCasServerPool(getCasServerPool());
         return validator;
     }
 }
@@ -30,11 +30,7 @@ import org.jasig.cas.client.util.*;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Interval;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-
-import javax.xml.namespace.NamespaceContext;
+import org.xml.sax.InputSource;
 
 /**
  * TicketValidator that can understand validating a SAML artifact.  This includes the SOAP request/response.
@@ -48,62 +44,52 @@ public final class Saml11TicketValidator extends AbstractUrlBasedTicketValidator
     /** Authentication attribute containing SAML AuthenticationMethod attribute value. */
     public static final String AUTH_METHOD_ATTRIBUTE = "samlAuthenticationStatement::authMethod";
 
-    /** SAML 1.1 request template. */
-    private static final String SAML_REQUEST_TEMPLATE;
-
-    /** SAML 1.1. namespace context. */
-    private static final NamespaceContext NS_CONTEXT = new MapNamespaceContext(
-            "soap->http://schemas.xmlsoap.org/soap/envelope/",
-            "sa->urn:oasis:names:tc:SAML:1.0:assertion",
-            "sp->urn:oasis:names:tc:SAML:1.0:protocol");
-
-    /** XPath expression to extract Assertion validity start date. */
-    private static final ThreadLocalXPathExpression XPATH_ASSERTION_DATE_START =
-            new ThreadLocalXPathExpression("//sa:Assertion/sa:Conditions/@NotBefore", NS_CONTEXT);
-
-    /** XPath expression to extract Assertion validity end date. */
-    private static final ThreadLocalXPathExpression XPATH_ASSERTION_DATE_END =
-            new ThreadLocalXPathExpression("//sa:Assertion/sa:Conditions/@NotOnOrAfter", NS_CONTEXT);
+    /**
+     * SAML 1.1 request template split around its three placeholders (request ID, issue instant and artifact),
+     * without the license comment that precedes the envelope.
+     */
+    private static final String[] SAML_REQUEST_LITERALS;
 
-    /** XPath expression to extract NameIdentifier. */
-    private static final ThreadLocalXPathExpression XPATH_NAME_ID =
-            new ThreadLocalXPathExpression("//sa:AuthenticationStatement/sa:Subject/sa:NameIdentifier", NS_CONTEXT);
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
 
-    /** XPath expression to extract authentication method. */
-    private static final ThreadLocalXPathExpression XPATH_AUTH_METHOD =
-            new ThreadLocalXPathExpression("//sa:AuthenticationStatement/@AuthenticationMethod", NS_CONTEXT);
-
-    /** XPath expression to extract attributes. */
-    private static final ThreadLocalXPathExpression XPATH_ATTRIBUTES =
-            new ThreadLocalXPathExpression("//sa:AttributeStatement/sa:Attribute", NS_CONTEXT);
-
-    private static final String HEX_CHARS = "0123456789abcdef";
+    /** Per-thread generators for request IDs, so that concurrent validations do not contend on one. */
+    private static final ThreadLocal<Random> RANDOM = new ThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            try {
+                return SecureRandom.getInstance("SHA1PRNG");
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException("Cannot find required SHA1PRNG algorithm");
+            }
+        }
+    };
 
     /** Time tolerance to allow for time drifting. */
     private long tolerance = 1000L;
 
-    private final Random random;
+    private volatile RequestTemplate requestTemplate = new RequestTemplate(IOUtils.UTF8);
 
 
     /** Class initializer. */
     static {
+        final String template;
         try {
-            SAML_REQUEST_TEMPLATE = IOUtils.readString(
+            template = IOUtils.readString(
                     Saml11TicketValidator.class.getResourceAsStream("/META-INF/cas/samlRequestTemplate.xml"));
         } catch (final IOException e) {
             throw new IllegalStateException("Cannot load SAML request template from classpath", e);
         }
-
+        final int envelope = template.indexOf("<soap:Envelope");
+        SAML_REQUEST_LITERALS = (envelope > 0 ? template.substring(envelope) : template).split("%s", -1);
+        if (SAML_REQUEST_LITERALS.length != 4) {
+            throw new IllegalStateException("SAML request template must contain exactly three placeholders");
+        }
     }
 
     public Saml11TicketValidator(final String casServerUrlPrefix) {
         super(casServerUrlPrefix);
-
-        try {
-            random = SecureRandom.getInstance("SHA1PRNG");
-        } catch (final NoSuchAlgorithmException e) {
-            throw new IllegalStateException("Cannot find required SHA1PRNG algorithm");
-        }
+        // fail fast if request IDs cannot be generated
+        RANDOM.get();
     }
 
     @Override
@@ -121,46 +107,24 @@ public final class Saml11TicketValidator extends AbstractUrlBasedTicketValidator
 
     @Override
     protected Assertion parseResponseFromServer(final String response) throws TicketValidationException {
+        final Saml11Response saml = Saml11Response.parse(new InputSource(new StringReader(response)),
+                getAttributeFilter(), getAttributeValuePool());
         try {
-            final Document document = XmlUtils.newDocument(response);
-            final Date assertionValidityStart = SamlUtils.parseUtcDate(
-                    XPATH_ASSERTION_DATE_START.evaluateAsString(document));
-            final Date assertionValidityEnd = SamlUtils.parseUtcDate(
-                    XPATH_ASSERTION_DATE_END.evaluateAsString(document));
+            final Date assertionValidityStart = SamlUtils.parseUtcDate(saml.getNotBefore());
+            final Date assertionValidityEnd = SamlUtils.parseUtcDate(saml.getNotOnOrAfter());
             if (!isValidAssertion(assertionValidityStart, assertionValidityEnd)) {
                 throw new TicketValidationException("Invalid SAML assertion");
             }
-            final String nameId = XPATH_NAME_ID.evaluateAsString(document);
+            final String nameId = saml.getNameIdentifier();
             if (nameId == null) {
                 throw new TicketValidationException("SAML assertion does not contain NameIdentifier element");
             }
-            final String authMethod = XPATH_AUTH_METHOD.evaluateAsString(document);
-            final NodeList attributes = XPATH_ATTRIBUTES.evaluateAsNodeList(document);
-            final Map<String, Object> principalAttributes = new HashMap<String, Object>(attributes.getLength());
-            Element attribute;
-            NodeList values;
-            String name;
-            for (int i = 0; i < attributes.getLength(); i++) {
-                attribute = (Element) attributes.item(i);
-                name = attribute.getAttribute("AttributeName");
-                logger.trace("Processing attribute {}", name);
-                values = attribute.getElementsByTagNameNS("*", "AttributeValue");
-                if (values.getLength() == 1) {
-                    principalAttributes.put(name, values.item(0).getTextContent());
-                } else {
-                    final Collection<Object> items = new ArrayList<Object>(values.getLength());
-                    for (int j = 0; j < values.getLength(); j++) {
-                        items.add(values.item(j).getTextContent());
-                    }
-                    principalAttributes.put(name, items);
-                }
-            }
             return new AssertionImpl(
-                    new AttributePrincipalImpl(nameId, principalAttributes),
+                    new AttributePrincipalImpl(nameId, saml.getAttributes()),
                     assertionValidityStart,
                     assertionValidityEnd,
                     new Date(),
-                    Collections.singletonMap(AUTH_METHOD_ATTRIBUTE, (Object) authMethod));
+                    Collections.singletonMap(AUTH_METHOD_ATTRIBUTE, (Object) saml.getAuthenticationMethod()));
         } catch (final Exception e) {
             throw new TicketValidationException("Error processing SAML response", e);
         }
@@ -192,17 +156,17 @@ public final class Saml11TicketValidator extends AbstractUrlBasedTicketValidator
 
     @Override
     protected String retrieveResponseFromServer(final URL validationUrl, final String ticket) {
-        final String request = String.format(
-                SAML_REQUEST_TEMPLATE,
-                generateId(),
-                SamlUtils.formatForUtcTime(new Date()),
-                ticket);
         HttpURLConnection conn = null;
         try {
+            Deadline.check();
             conn = this.getURLConnectionFactory().buildHttpURLConnection(validationUrl.openConnection());
+            Deadline.applyTo(conn);
             conn.setRequestMethod("POST");
             conn.setRequestProperty("Content-Type", "text/xml");
             conn.setRequestProperty("SOAPAction", "http://www.oasis-open.org/committees/security");
+            if (isAcceptCompressedResponse()) {
+                CommonUtils.acceptCompressedResponse(conn);
+            }
             conn.setUseCaches(false);
             conn.setDoInput(true);
             conn.setDoOutput(true);
@@ -210,8 +174,21 @@ public final class Saml11TicketValidator extends AbstractUrlBasedTicketValidator
 
             final Charset charset = CommonUtils.isNotBlank(getEncoding()) ?
                     Charset.forName(getEncoding()) : IOUtils.UTF8;
-            conn.getOutputStream().write(request.getBytes(charset));
-            return IOUtils.readString(conn.getInputStream(), charset);
+            final byte[][] request = getRequestTemplate(charset).fill(
+                    generateId(),
+                    SamlUtils.formatCurrentUtcTime(),
+                    ticket);
+            int length = 0;
+            for (final byte[] part : request) {
+                length += part.length;
+            }
+            conn.setFixedLengthStreamingMode(length);
+            final OutputStream out = conn.getOutputStream();
+            for (final byte[] part : request) {
+                out.write(part);
+            }
+            return IOUtils.readString(new LimitedInputStream(CommonUtils.getDecodedInputStream(conn),
+                    getMaxResponseSize()), charset);
         } catch (final IOException e) {
             throw new RuntimeException("IO error sending HTTP request to /samlValidate", e);
         } finally {
@@ -221,19 +198,59 @@ public final class Saml11TicketValidator extends AbstractUrlBasedTicketValidator
         }
     }
 
+    private RequestTemplate getRequestTemplate(final Charset charset) {
+        RequestTemplate template = this.requestTemplate;
+        if (!template.charset.equals(charset)) {
+            template = new RequestTemplate(charset);
+            this.requestTemplate = template;
+        }
+        return template;
+    }
+
     public void setTolerance(final long tolerance) {
         this.tolerance = tolerance;
     }
 
-    private String generateId() {
+    private static String generateId() {
         final byte[] data = new byte[16];
-        random.nextBytes(data);
-        final StringBuilder id = new StringBuilder(33);
-        id.append('_');
+        RANDOM.get().nextBytes(data);
+        final char[] id = new char[33];
+        id[0] = '_';
         for (int i = 0; i < data.length; i++) {
-            id.append(HEX_CHARS.charAt((data[i] & 0xF0) >> 4));
-            id.append(HEX_CHARS.charAt(data[i] & 0x0F));
+            id[2 * i + 1] = HEX_CHARS[(data[i] & 0xF0) >> 4];
+            id[2 * i + 2] = HEX_CHARS[data[i] & 0x0F];
+        }
+        return new String(id);
+    }
+
+    /**
+     * The SAML request template split around its placeholders, with the literal parts encoded once.
+     */
+    private static final class RequestTemplate {
+
+        private final Charset charset;
+
+        private final byte[][] literals;
+
+        RequestTemplate(final Charset charset) {
+            this.charset = charset;
+            this.literals = new byte[SAML_REQUEST_LITERALS.length][];
+            for (int i = 0; i < SAML_REQUEST_LITERALS.length; i++) {
+                this.literals[i] = SAML_REQUEST_LITERALS[i].getBytes(charset);
+            }
+        }
+
+        /**
+         * @return the request as the encoded literal parts interleaved with the encoded values.
+         */
+        byte[][] fill(final String... values) {
+            final byte[][] parts = new byte[this.literals.length + values.length][];
+            for (int i = 0; i < values.length; i++) {
+                parts[2 * i] = this.literals[i];
+                parts[2 * i + 1] = values[i].getBytes(this.charset);
+            }
+            parts[parts.length - 1] = this.literals[this.literals.length - 1];
+            return parts;
         }
-        return id.toString();
     }
 }
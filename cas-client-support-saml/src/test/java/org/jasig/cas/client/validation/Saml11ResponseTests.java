@@ -0,0 +1,89 @@
+/**
+ * Licensed to Apereo under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work
+ * for additional information regarding copyright ownership.
+ * Apereo licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License.  You may obtain a
+ * copy of the License at the following location:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.jasig.cas.client.validation;
+
+import static org.junit.Assert.*;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import org.jasig.cas.client.authentication.AttributeFilter;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+/**
+ * Unit test for {@link Saml11Response}.
+ *
+ * @since 3.6.2
+ */
+public final class Saml11ResponseTests {
+
+    private static final String RESPONSE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<soap11:Envelope xmlns:soap11=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap11:Body>"
+            + "<saml1p:Response xmlns:saml1p=\"urn:oasis:names:tc:SAML:1.0:protocol\">"
+            + "<saml1p:Status><saml1p:StatusCode Value=\"saml1p:Success\"/></saml1p:Status>"
+            + "<saml1:Assertion xmlns:saml1=\"urn:oasis:names:tc:SAML:1.0:assertion\">"
+            + "<saml1:Conditions NotBefore=\"2020-01-01T00:00:00Z\" NotOnOrAfter=\"2030-01-01T00:00:00Z\">"
+            + "<saml1:AudienceRestrictionCondition><saml1:Audience>https://example.com/</saml1:Audience>"
+            + "</saml1:AudienceRestrictionCondition></saml1:Conditions>"
+            + "<saml1:AuthenticationStatement AuthenticationMethod=\"urn:oasis:names:tc:SAML:1.0:am:password\">"
+            + "<saml1:Subject><saml1:NameIdentifier>testPrincipal</saml1:NameIdentifier></saml1:Subject>"
+            + "</saml1:AuthenticationStatement>"
+            + "<saml1:AttributeStatement><saml1:Subject><saml1:NameIdentifier>other</saml1:NameIdentifier></saml1:Subject>"
+            + "<saml1:Attribute AttributeName=\"uid\"><saml1:AttributeValue>12345</saml1:AttributeValue></saml1:Attribute>"
+            + "<saml1:Attribute AttributeName=\"eduPersonAffiliation\"><saml1:AttributeValue>employee</saml1:AttributeValue>"
+            + "<saml1:AttributeValue>staff</saml1:AttributeValue></saml1:Attribute>"
+            + "<saml1:Attribute AttributeName=\"empty\"></saml1:Attribute>"
+            + "</saml1:AttributeStatement></saml1:Assertion></saml1p:Response></soap11:Body></soap11:Envelope>";
+
+    @Test
+    public void extractsAssertionInOnePass() throws Exception {
+        final Saml11Response response = Saml11Response.parse(new InputSource(new StringReader(RESPONSE)));
+        assertEquals("2020-01-01T00:00:00Z", response.getNotBefore());
+        assertEquals("2030-01-01T00:00:00Z", response.getNotOnOrAfter());
+        assertEquals("testPrincipal", response.getNameIdentifier());
+        assertEquals("urn:oasis:names:tc:SAML:1.0:am:password", response.getAuthenticationMethod());
+        assertEquals("12345", response.getAttributes().get("uid"));
+        assertEquals(Arrays.asList("employee", "staff"), response.getAttributes().get("eduPersonAffiliation"));
+        assertEquals(Collections.emptyList(), response.getAttributes().get("empty"));
+    }
+
+    @Test
+    public void appliesAttributeFilterWhileParsing() throws Exception {
+        final Saml11Response response = Saml11Response.parse(new InputSource(new StringReader(RESPONSE)),
+                AttributeFilter.parse(null, "uid", 1));
+        assertFalse(response.getAttributes().containsKey("uid"));
+        assertEquals("employee", response.getAttributes().get("eduPersonAffiliation"));
+        assertEquals("testPrincipal", response.getNameIdentifier());
+    }
+
+    @Test
+    public void failureResponseHasNoAssertion() throws Exception {
+        final Saml11Response response = Saml11Response.parse(new InputSource(new StringReader(
+                "<Envelope><Body><Response><Status/></Response></Body></Envelope>")));
+        assertNull(response.getNotBefore());
+        assertNull(response.getNameIdentifier());
+        assertEquals("", response.getAuthenticationMethod());
+        assertTrue(response.getAttributes().isEmpty());
+    }
+
+    @Test(expected = TicketValidationException.class)
+    public void rejectsMalformedResponse() throws Exception {
+        Saml11Response.parse(new InputSource(new StringReader("<Envelope><Body>")));
+    }
+}